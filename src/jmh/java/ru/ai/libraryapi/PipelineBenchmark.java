@@ -0,0 +1,189 @@
+package ru.ai.libraryapi;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the EPUB pipeline, stage by stage and end to end.
+ * <p>
+ * Every stage works on the output of the previous one prepared during setup, so a result
+ * measures that stage alone. The page cache and the page index are disabled, so
+ * {@link #getPagesWholeBook()} runs the complete pipeline on every invocation.
+ * <p>
+ * Run with {@code mvn -Pjmh test-compile exec:exec}; see the {@code jmh} profile in pom.xml.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+    private static final String LIBRARY_DIR = "target/jmh-library";
+    private static final int MAX_LENGTH = 1000;
+
+    @Param({"SMALL", "HUGE_SINGLE_CHAPTER", "MANY_TINY_CHAPTERS", "CALIBRE"})
+    public SyntheticEpub.Shape shape;
+
+    @Param({"1"})
+    public int cleanParallelism;
+
+    private BookCfg bookCfg;
+    private EpubExtractor epubExtractor;
+    private CleanPool cleanPool;
+    private PipelineMetrics metrics;
+    private BookServ bookServ;
+
+    private String bookPath;
+    private String epubFile;
+    private List<String> rawChapters;
+    private List<Chapter> cleanedChapters;
+    private List<String> cleanedHtml;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        bookPath = shape.name().toLowerCase(Locale.ROOT) + ".epub";
+        Path file = Paths.get(System.getProperty("user.dir"), LIBRARY_DIR, bookPath);
+        SyntheticEpub.write(shape, file);
+        epubFile = file.toString();
+
+        bookCfg = benchmarkCfg(cleanParallelism);
+        epubExtractor = new EpubExtractor(bookCfg);
+        cleanPool = new CleanPool(bookCfg);
+        metrics = new PipelineMetrics(new SimpleMeterRegistry());
+        bookServ = newBookServ(bookCfg, epubExtractor, cleanPool, metrics);
+
+        rawChapters = epubExtractor.extractChaptersInReadingOrder(epubFile);
+        cleanedChapters = bookServ.cleanPages(rawChapters);
+        cleanedHtml = new ArrayList<>(cleanedChapters.size());
+        for (Chapter chapter : cleanedChapters) {
+            cleanedHtml.add(chapter.html());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cleanPool.shutdown();
+    }
+
+    /**
+     * Unzips the spine and decodes every chapter.
+     */
+    @Benchmark
+    public List<String> extract() {
+        return epubExtractor.extractChaptersInReadingOrder(epubFile);
+    }
+
+    /**
+     * Cleans the raw chapters with Jsoup and builds their block models.
+     */
+    @Benchmark
+    public List<Chapter> clean() {
+        return bookServ.cleanPages(rawChapters);
+    }
+
+    /**
+     * Builds the block model from already cleaned HTML.
+     */
+    @Benchmark
+    public List<Chapter> parseChapters() {
+        List<Chapter> chapters = new ArrayList<>(cleanedHtml.size());
+        for (String html : cleanedHtml) {
+            chapters.add(Chapter.parse(html));
+        }
+        return chapters;
+    }
+
+    /**
+     * Merges header chapters, splits pages and large chapters.
+     */
+    @Benchmark
+    public List<String> paginate() {
+        Paginator paginator = new Paginator(MAX_LENGTH);
+        for (Chapter chapter : cleanedChapters) {
+            paginator.accept(chapter);
+        }
+        paginator.finish();
+        return paginator.pages();
+    }
+
+    /**
+     * Full request for the whole book.
+     */
+    @Benchmark
+    public ResDTO getPagesWholeBook() {
+        return bookServ.getPages(new ReqDTO(bookPath, 0, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Full request for the first pages of a book opened for the first time.
+     */
+    @Benchmark
+    public ResDTO getPagesFirstPages(FreshService fresh) {
+        return fresh.bookServ.getPages(new ReqDTO(bookPath, 0, 5));
+    }
+
+    /**
+     * Service without pagination checkpoints, recreated before every invocation.
+     */
+    @State(Scope.Thread)
+    public static class FreshService {
+        private BookServ bookServ;
+
+        @Setup(Level.Invocation)
+        public void setUp(PipelineBenchmark benchmark) {
+            bookServ = newBookServ(benchmark.bookCfg, benchmark.epubExtractor, benchmark.cleanPool,
+                    benchmark.metrics);
+        }
+    }
+
+    private static BookCfg benchmarkCfg(int cleanParallelism) {
+        BookCfg cfg = new BookCfg();
+        cfg.LIBRARY_DIR = LIBRARY_DIR;
+        cfg.LIBRARY_MAX_LENGTH = MAX_LENGTH;
+        cfg.CACHE_MAX_BYTES = 0;
+        cfg.INDEX_DIR = "";
+        cfg.CURSOR_MAX_COUNT = 16;
+        cfg.CURSOR_TTL_MINUTES = 1;
+        cfg.CLEAN_PARALLELISM = cleanParallelism;
+        cfg.CLEAN_REMOVE_SELECTORS = "img, svg, meta, link, style";
+        cfg.CLEAN_UNWRAP_SELECTORS = "span, a, b, strong, i, em";
+        cfg.PACKAGE_CACHE_MAX_ENTRIES = 16;
+        cfg.ARCHIVE_CACHE_MAX_ENTRIES = 16;
+        cfg.MAX_ENTRY_BYTES = 0;
+        cfg.MAX_BOOK_BYTES = 0;
+        cfg.MAX_INFLIGHT_BYTES = 0;
+        cfg.LAYOUT_CACHE_MAX_BYTES = 0;
+        cfg.CHAPTER_CACHE_MAX_BYTES = 0;
+        cfg.PREFETCH_WINDOWS = 0;
+        return cfg;
+    }
+
+    private static BookServ newBookServ(BookCfg cfg, EpubExtractor epubExtractor, CleanPool cleanPool,
+                                        PipelineMetrics metrics) {
+        PageIndex pageIndex = new PageIndex(cfg);
+        return new BookServ(cfg, epubExtractor, new PageCache(cfg), pageIndex, new StoreWriter(pageIndex),
+                new PageCursors(cfg), cleanPool, new DecodeBudget(cfg), new LayoutCache(cfg),
+                new ChapterCache(cfg), new Prefetcher(cfg, metrics), new BatchPool(cfg), metrics);
+    }
+}
@@ -0,0 +1,400 @@
+package ru.ai.libraryapi;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * Load test of {@code POST /epub/pages}.
+ * <p>
+ * Generates a library of synthetic books, starts the application on a random port and drives
+ * the endpoint from a fixed number of closed-loop clients, one access pattern at a time, each
+ * against a freshly started application with an empty page index:
+ * <ul>
+ *     <li>{@code HOT} — every client reads random windows of the same book;</li>
+ *     <li>{@code UNIFORM} — random windows of random books;</li>
+ *     <li>{@code SEQUENTIAL} — every client reads a book of its own window by window from the start,
+ *     like a reader turning pages.</li>
+ * </ul>
+ * Requests of the warm-up period are not measured. Throughput, latency percentiles, errors and
+ * GC and heap statistics of each pattern are written to a JSON report. The server and the
+ * clients share the JVM, so GC figures include both; the clients allocate little.
+ * <p>
+ * Options are {@code name=value} arguments, see {@link Options}. If a threshold is given and
+ * a pattern violates it, the process exits with status 1, which fails the Maven build.
+ * Run with {@code mvn -Pload test-compile exec:exec}; see the {@code load} profile in pom.xml.
+ */
+public final class LoadTest {
+    private static final String LIBRARY_DIR = "target/load-library";
+    private static final String INDEX_DIR = "target/load-index";
+
+    /**
+     * Access patterns.
+     */
+    enum Pattern {
+        HOT, UNIFORM, SEQUENTIAL
+    }
+
+    /**
+     * Options of a run.
+     *
+     * @param patterns      Patterns to run, {@code patterns=HOT,UNIFORM,SEQUENTIAL}.
+     * @param concurrency   Number of concurrent clients, {@code concurrency=16}.
+     * @param warmupSeconds Unmeasured period before each measurement, {@code warmup=10}.
+     * @param seconds       Measured period of each pattern, {@code duration=30}.
+     * @param books         Number of books in the generated library, {@code books=32}.
+     * @param window        Pages per request, {@code window=5}.
+     * @param maxPage       Highest first page of random windows, {@code max-page=100}.
+     * @param report        Report file, {@code report=target/load-report.json}.
+     * @param minThroughput Minimal requests per second of every pattern, {@code min-throughput=0} (off).
+     * @param maxP99Millis  Maximal p99 latency of every pattern, {@code max-p99-ms=0} (off).
+     * @param maxErrorRate  Maximal share of failed requests, {@code max-error-rate=0.01}.
+     */
+    record Options(List<Pattern> patterns, int concurrency, int warmupSeconds, int seconds, int books,
+                   int window, int maxPage, Path report, double minThroughput, double maxP99Millis,
+                   double maxErrorRate) {
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new LinkedHashMap<>();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq <= 0) {
+                    throw new IllegalArgumentException("Expected name=value, got: " + arg);
+                }
+                values.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+
+            List<Pattern> patterns = new ArrayList<>();
+            for (String name : values.getOrDefault("patterns", "HOT,UNIFORM,SEQUENTIAL").split(",")) {
+                patterns.add(Pattern.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+            }
+            return new Options(patterns,
+                    Integer.parseInt(values.getOrDefault("concurrency", "16")),
+                    Integer.parseInt(values.getOrDefault("warmup", "10")),
+                    Integer.parseInt(values.getOrDefault("duration", "30")),
+                    Integer.parseInt(values.getOrDefault("books", "32")),
+                    Integer.parseInt(values.getOrDefault("window", "5")),
+                    Integer.parseInt(values.getOrDefault("max-page", "100")),
+                    Paths.get(values.getOrDefault("report", "target/load-report.json")),
+                    Double.parseDouble(values.getOrDefault("min-throughput", "0")),
+                    Double.parseDouble(values.getOrDefault("max-p99-ms", "0")),
+                    Double.parseDouble(values.getOrDefault("max-error-rate", "0.01")));
+        }
+    }
+
+    /**
+     * Latencies and errors recorded by one client.
+     */
+    private static final class Recorder {
+        private long[] latencies = new long[1024];
+        private int count;
+        private int errors;
+
+        void record(long nanos, boolean ok) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+            if (!ok) {
+                errors++;
+            }
+        }
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        List<String> books = generateLibrary(options.books());
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        boolean passed = true;
+        for (Pattern pattern : options.patterns()) {
+            Map<String, Object> result = run(pattern, options, books);
+            passed &= (Boolean) result.get("passed");
+            results.add(result);
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("concurrency", options.concurrency());
+        report.put("warmupSeconds", options.warmupSeconds());
+        report.put("durationSeconds", options.seconds());
+        report.put("books", options.books());
+        report.put("window", options.window());
+        report.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        report.put("javaVersion", System.getProperty("java.version"));
+        report.put("patterns", results);
+        report.put("passed", passed);
+
+        Files.createDirectories(options.report().toAbsolutePath().getParent());
+        MAPPER.writeValue(options.report().toFile(), report);
+        System.out.println(MAPPER.writeValueAsString(report));
+        System.out.println("Report written to " + options.report().toAbsolutePath());
+
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Writes the library: variants of every shape in turn, so books do not share chapters.
+     *
+     * @return Paths of the books relative to the library.
+     */
+    private static List<String> generateLibrary(int count) throws IOException {
+        SyntheticEpub.Shape[] shapes = SyntheticEpub.Shape.values();
+        List<String> books = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            SyntheticEpub.Shape shape = shapes[i % shapes.length];
+            String path = "book-" + i + "-" + shape.name().toLowerCase(Locale.ROOT) + ".epub";
+            Path file = Paths.get(LIBRARY_DIR, path);
+            if (!Files.exists(file)) {
+                SyntheticEpub.write(shape, i / shapes.length, file);
+            }
+            books.add(path);
+        }
+        return books;
+    }
+
+    private static Map<String, Object> run(Pattern pattern, Options options, List<String> books) throws Exception {
+        Path indexDir = Paths.get(INDEX_DIR, pattern.name().toLowerCase(Locale.ROOT));
+        deleteRecursively(indexDir);
+
+        ConfigurableApplicationContext context = SpringApplication.run(LibraryApiApplication.class,
+                "--server.port=0",
+                "--app.library.dir=" + LIBRARY_DIR,
+                "--app.library.index.dir=" + indexDir,
+                "--logging.level.ru.ai.libraryapi=WARN");
+        try {
+            int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            String contextPath = context.getEnvironment().getProperty("server.servlet.context-path", "");
+            URI uri = URI.create("http://localhost:" + port + contextPath + "/epub/pages");
+            System.out.printf("Running %s with %d clients against %s%n", pattern, options.concurrency(), uri);
+
+            long warmupEnd = System.nanoTime() + Duration.ofSeconds(options.warmupSeconds()).toNanos();
+            long end = warmupEnd + Duration.ofSeconds(options.seconds()).toNanos();
+
+            GcSnapshot gcBefore = null;
+            List<Future<Recorder>> futures = new ArrayList<>(options.concurrency());
+            try (HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+                 ExecutorService clients = Executors.newFixedThreadPool(options.concurrency())) {
+                for (int c = 0; c < options.concurrency(); c++) {
+                    int clientId = c;
+                    futures.add(clients.submit(() -> drive(pattern, options, books, client, uri, clientId,
+                            warmupEnd, end)));
+                }
+
+                long untilWarm = warmupEnd - System.nanoTime();
+                if (untilWarm > 0) {
+                    Thread.sleep(Duration.ofNanos(untilWarm));
+                }
+                gcBefore = GcSnapshot.take();
+            }
+            GcSnapshot gcAfter = GcSnapshot.take();
+
+            List<Recorder> recorders = new ArrayList<>(futures.size());
+            for (Future<Recorder> future : futures) {
+                recorders.add(future.get());
+            }
+            return summarize(pattern, options, recorders, gcBefore, gcAfter);
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * Closed-loop client: sends the next request as soon as the previous one is answered.
+     */
+    private static Recorder drive(Pattern pattern, Options options, List<String> books, HttpClient client, URI uri,
+                                  int clientId, long warmupEnd, long end) {
+        Recorder recorder = new Recorder();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String ownBook = books.get(clientId % books.size());
+        int next = 0;
+
+        while (true) {
+            long started = System.nanoTime();
+            if (started >= end) {
+                return recorder;
+            }
+
+            String book;
+            int from;
+            switch (pattern) {
+                case HOT -> {
+                    book = books.get(0);
+                    from = random.nextInt(options.maxPage() + 1);
+                }
+                case UNIFORM -> {
+                    book = books.get(random.nextInt(books.size()));
+                    from = random.nextInt(options.maxPage() + 1);
+                }
+                default -> {
+                    book = ownBook;
+                    from = next;
+                }
+            }
+
+            boolean ok;
+            int pages = 0;
+            try {
+                String body = MAPPER.writeValueAsString(Map.of(
+                        "path", book, "from", from, "to", from + options.window()));
+                HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri)
+                                .header("Content-Type", "application/json")
+                                .POST(HttpRequest.BodyPublishers.ofString(body))
+                                .build(),
+                        HttpResponse.BodyHandlers.ofString());
+                ok = response.statusCode() == 200;
+                if (ok && pattern == Pattern.SEQUENTIAL) {
+                    JsonNode pagesNode = MAPPER.readTree(response.body()).path("pages");
+                    pages = pagesNode.size();
+                }
+            } catch (Exception e) {
+                ok = false;
+            }
+            long finished = System.nanoTime();
+
+            if (started >= warmupEnd) {
+                recorder.record(finished - started, ok);
+            }
+            if (pattern == Pattern.SEQUENTIAL) {
+                // At the end of the book the reader starts it over
+                next = pages > 0 ? from + options.window() : 0;
+            }
+        }
+    }
+
+    private static Map<String, Object> summarize(Pattern pattern, Options options, List<Recorder> recorders,
+                                                 GcSnapshot gcBefore, GcSnapshot gcAfter) {
+        int total = 0;
+        int errors = 0;
+        for (Recorder recorder : recorders) {
+            total += recorder.count;
+            errors += recorder.errors;
+        }
+        long[] latencies = new long[total];
+        int offset = 0;
+        for (Recorder recorder : recorders) {
+            System.arraycopy(recorder.latencies, 0, latencies, offset, recorder.count);
+            offset += recorder.count;
+        }
+        Arrays.sort(latencies);
+
+        double throughput = (double) total / options.seconds();
+        double errorRate = total > 0 ? (double) errors / total : 1;
+        double p99 = percentileMillis(latencies, 99);
+
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("mean", total > 0 ? Arrays.stream(latencies).average().orElse(0) / 1e6 : 0);
+        latency.put("p50", percentileMillis(latencies, 50));
+        latency.put("p95", percentileMillis(latencies, 95));
+        latency.put("p99", p99);
+        latency.put("p999", percentileMillis(latencies, 99.9));
+        latency.put("max", total > 0 ? latencies[total - 1] / 1e6 : 0);
+
+        List<String> violations = new ArrayList<>();
+        if (options.minThroughput() > 0 && throughput < options.minThroughput()) {
+            violations.add("throughput %.1f < %.1f".formatted(throughput, options.minThroughput()));
+        }
+        if (options.maxP99Millis() > 0 && p99 > options.maxP99Millis()) {
+            violations.add("p99 %.1f ms > %.1f ms".formatted(p99, options.maxP99Millis()));
+        }
+        if (errorRate > options.maxErrorRate()) {
+            violations.add("error rate %.4f > %.4f".formatted(errorRate, options.maxErrorRate()));
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("pattern", pattern.name());
+        result.put("requests", total);
+        result.put("errors", errors);
+        result.put("throughput", throughput);
+        result.put("latencyMs", latency);
+        result.put("gc", gcAfter.minus(gcBefore));
+        result.put("heap", GcSnapshot.heap());
+        result.put("violations", violations);
+        result.put("passed", violations.isEmpty());
+        return result;
+    }
+
+    /**
+     * Nearest-rank percentile of sorted latencies in milliseconds.
+     */
+    private static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.clamp(rank - 1, 0, sorted.length - 1)] / 1e6;
+    }
+
+    /**
+     * Collection counts and times of all collectors at one moment.
+     */
+    private record GcSnapshot(long collections, long millis) {
+
+        static GcSnapshot take() {
+            long collections = 0;
+            long millis = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                collections += Math.max(gc.getCollectionCount(), 0);
+                millis += Math.max(gc.getCollectionTime(), 0);
+            }
+            return new GcSnapshot(collections, millis);
+        }
+
+        Map<String, Object> minus(GcSnapshot before) {
+            Map<String, Object> gc = new LinkedHashMap<>();
+            gc.put("collections", collections - before.collections);
+            gc.put("timeMs", millis - before.millis);
+            return gc;
+        }
+
+        static Map<String, Object> heap() {
+            MemoryUsage usage = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+            Map<String, Object> heap = new LinkedHashMap<>();
+            heap.put("usedMb", usage.getUsed() / (1024 * 1024));
+            heap.put("committedMb", usage.getCommitted() / (1024 * 1024));
+            heap.put("maxMb", usage.getMax() / (1024 * 1024));
+            return heap;
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted((a, b) -> b.compareTo(a)).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
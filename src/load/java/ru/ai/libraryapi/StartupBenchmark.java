@@ -0,0 +1,188 @@
+package ru.ai.libraryapi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup benchmark: time from launching the JVM to the first successful {@code POST /epub/pages}.
+ * <p>
+ * Every run starts the application as a new process on a free port and polls the endpoint for
+ * the first pages of a small book until they arrive, then stops the process. Modes:
+ * <ul>
+ *     <li>{@code plain} — {@code java -jar} on the executable JAR of a regular build;</li>
+ *     <li>{@code fast} — the extracted JAR of the {@code fast-start} build with its AppCDS archive
+ *     and Spring AOT, started the way the Docker image starts it.</li>
+ * </ul>
+ * Options are {@code name=value} arguments: {@code modes=plain,fast}, {@code runs=5},
+ * {@code plain-jar=target/library-api-0.1.0.jar}, {@code fast-dir=target/fast-start},
+ * {@code report=target/startup-report.json} and the optional threshold {@code max-median-ms}.
+ * If a mode exceeds the threshold, the process exits with status 1.
+ * Run with {@code mvn -Pload test-compile exec:exec -Dload.main=ru.ai.libraryapi.StartupBenchmark}.
+ */
+public final class StartupBenchmark {
+    private static final String LIBRARY_DIR = "target/startup-library";
+    private static final String BOOK = "small-0.epub";
+    private static final Duration TIMEOUT = Duration.ofMinutes(2);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected name=value, got: " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        List<String> modes = Arrays.asList(options.getOrDefault("modes", "plain,fast").split(","));
+        int runs = Integer.parseInt(options.getOrDefault("runs", "5"));
+        Path plainJar = Paths.get(options.getOrDefault("plain-jar", "target/library-api-0.1.0.jar"));
+        Path fastDir = Paths.get(options.getOrDefault("fast-dir", "target/fast-start"));
+        Path reportFile = Paths.get(options.getOrDefault("report", "target/startup-report.json"));
+        double maxMedianMillis = Double.parseDouble(options.getOrDefault("max-median-ms", "0"));
+
+        Path library = Paths.get(LIBRARY_DIR).toAbsolutePath();
+        if (!Files.exists(library.resolve(BOOK))) {
+            SyntheticEpub.write(SyntheticEpub.Shape.SMALL, 0, library.resolve(BOOK));
+        }
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        boolean passed = true;
+        for (String mode : modes) {
+            Launch launch = switch (mode.trim().toLowerCase(Locale.ROOT)) {
+                case "plain" -> new Launch(Paths.get("").toAbsolutePath(),
+                        List.of("-jar", plainJar.toAbsolutePath().toString()));
+                case "fast" -> fastLaunch(fastDir.toAbsolutePath());
+                default -> throw new IllegalArgumentException("Unknown mode: " + mode);
+            };
+
+            long[] millis = new long[runs];
+            for (int run = 0; run < runs; run++) {
+                millis[run] = measure(launch, library, Paths.get("target", "startup-" + mode + "-" + run + ".log"));
+                System.out.printf("%s run %d: first page after %d ms%n", mode, run + 1, millis[run]);
+            }
+            Arrays.sort(millis);
+
+            double median = runs % 2 == 1 ? millis[runs / 2] : (millis[runs / 2 - 1] + millis[runs / 2]) / 2.0;
+            boolean ok = maxMedianMillis <= 0 || median <= maxMedianMillis;
+            passed &= ok;
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("mode", mode);
+            result.put("runs", runs);
+            result.put("firstPageMs", Map.of(
+                    "min", millis[0], "median", median, "max", millis[runs - 1],
+                    "mean", Arrays.stream(millis).average().orElse(0)));
+            result.put("passed", ok);
+            results.add(result);
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        report.put("javaVersion", System.getProperty("java.version"));
+        report.put("modes", results);
+        report.put("passed", passed);
+
+        Files.createDirectories(reportFile.toAbsolutePath().getParent());
+        MAPPER.writeValue(reportFile.toFile(), report);
+        System.out.println(MAPPER.writeValueAsString(report));
+        System.out.println("Report written to " + reportFile.toAbsolutePath());
+
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * How to start the application: working directory and JVM arguments up to the JAR.
+     */
+    private record Launch(Path workDir, List<String> jvmArgs) {
+    }
+
+    private static Launch fastLaunch(Path dir) throws IOException {
+        Path archive = dir.resolve("app.jsa");
+        if (!Files.isRegularFile(archive)) {
+            throw new IllegalStateException("No AppCDS archive in " + dir + ", see README: fast start");
+        }
+        Path jar;
+        try (var files = Files.list(dir)) {
+            jar = files.filter(file -> file.toString().endsWith(".jar")).findFirst()
+                    .orElseThrow(() -> new IllegalStateException("No extracted JAR in " + dir));
+        }
+        return new Launch(dir, List.of("-XX:SharedArchiveFile=" + archive, "-Dspring.aot.enabled=true",
+                "-jar", jar.toString()));
+    }
+
+    private static long measure(Launch launch, Path library, Path log) throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(launch.jvmArgs());
+        command.add("--server.port=" + port);
+        // The library path is resolved against the working directory of the application
+        command.add("--app.library.dir=" + launch.workDir().relativize(library));
+        command.add("--app.library.index.dir=");
+        command.add("--app.library.catalog.enabled=false");
+
+        Files.createDirectories(log.toAbsolutePath().getParent());
+        URI uri = URI.create("http://localhost:" + port + "/api/epub/pages");
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(MAPPER.writeValueAsBytes(new ReqDTO(BOOK, 0, 5))))
+                .timeout(Duration.ofSeconds(10))
+                .build();
+
+        long started = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .directory(launch.workDir().toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        try (HttpClient client = HttpClient.newHttpClient()) {
+            while (System.nanoTime() - started < TIMEOUT.toNanos()) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Application exited with " + process.exitValue() + ", see " + log);
+                }
+                try {
+                    HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                    if (response.statusCode() == 200 && MAPPER.readTree(response.body()).path("pages").size() > 0) {
+                        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+                    }
+                } catch (IOException e) {
+                    // Not listening yet
+                }
+                Thread.sleep(10);
+            }
+            throw new IllegalStateException("No pages within " + TIMEOUT + ", see " + log);
+        } finally {
+            process.destroy();
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package ru.ai.libraryapi;
+
+/**
+ * Результат одного элемента пакетного запроса страниц.
+ *
+ * Ровно одно из полей {@code result} и {@code error} не равно null:
+ * ошибка одного элемента не влияет на остальные.
+ *
+ * @param path   Путь к EPUB файлу из запроса.
+ * @param result Страницы, как в ответе POST /epub/pages, или null при ошибке.
+ * @param error  Описание ошибки или null.
+ */
+public record BatchItemDTO(
+        String path,
+        ResDTO result,
+        String error
+) {
+}
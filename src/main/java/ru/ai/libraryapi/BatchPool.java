@@ -0,0 +1,93 @@
+package ru.ai.libraryapi;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Shared helper threads that let a batch request work on several books at once.
+ * <p>
+ * The calling thread always takes part in its own batch: it and up to {@code parallelism - 1}
+ * helpers pull the next book from the batch until none is left. Helpers come from one pool of
+ * {@code parallelism} threads for the whole service, so concurrent batches share them instead
+ * of each starting threads of its own. When every helper is busy the batch is simply served by
+ * fewer threads, down to the caller alone, and never waits for a helper to become free.
+ */
+@Component
+public class BatchPool {
+    private static final Logger logger = LoggerFactory.getLogger(BatchPool.class);
+
+    private final int parallelism;
+    private final ThreadPoolExecutor executor;
+
+    public BatchPool(BookCfg bookCfg) {
+        this.parallelism = Math.max(bookCfg.BATCH_PARALLELISM, 1);
+        if (parallelism > 1) {
+            this.executor = new ThreadPoolExecutor(parallelism, parallelism, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(parallelism),
+                    Thread.ofPlatform().name("pages-batch-", 0).daemon(true).factory(),
+                    new ThreadPoolExecutor.AbortPolicy());
+            logger.info("Batch requests on up to {} threads each", parallelism);
+        } else {
+            this.executor = null;
+            logger.info("Batch requests processed sequentially");
+        }
+    }
+
+    /**
+     * Processes every item, several at a time, and returns once all of them are done.
+     *
+     * @param items  Items to process.
+     * @param action Action applied to every item; must handle its own errors.
+     * @throws InterruptedException If interrupted while waiting for the helpers.
+     */
+    public <T> void forEach(List<T> items, Consumer<T> action) throws InterruptedException {
+        int helpers = executor != null ? Math.min(items.size(), parallelism) - 1 : 0;
+        if (helpers <= 0) {
+            items.forEach(action);
+            return;
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(items.size());
+        Runnable worker = () -> {
+            int i;
+            while ((i = next.getAndIncrement()) < items.size()) {
+                try {
+                    action.accept(items.get(i));
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+
+        for (int i = 0; i < helpers; i++) {
+            try {
+                executor.execute(worker);
+            } catch (RejectedExecutionException e) {
+                // Every helper is busy with other batches: the remaining items are ours
+                break;
+            }
+        }
+        worker.run();
+        done.await();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package ru.ai.libraryapi;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+/**
+ * DTO для пакетного запроса страниц.
+ *
+ * Содержит несколько запросов страниц, в том числе разных диапазонов одной книги.
+ * Каждая книга разбирается один раз, разные книги обрабатываются параллельно.
+ */
+public record BatchReqDTO(
+        /**
+         * Запросы страниц в порядке, в котором нужны ответы.
+         * Не может быть пустым.
+         */
+        @NotEmpty(message = "Список запросов не должен быть пустым")
+        List<@Valid ReqDTO> items
+) {}
@@ -0,0 +1,13 @@
+package ru.ai.libraryapi;
+
+import java.util.List;
+
+/**
+ * DTO для ответа на пакетный запрос страниц.
+ *
+ * Результаты идут в том же порядке, что и элементы запроса.
+ */
+public record BatchResDTO(
+        List<BatchItemDTO> items
+) {
+}
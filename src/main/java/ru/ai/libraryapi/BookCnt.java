@@ -1,5 +1,6 @@
 package ru.ai.libraryapi;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -9,8 +10,23 @@ import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springdoc.core.annotations.ParameterObject;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 /**
  * REST контроллер для работы с EPUB книгами.
@@ -25,14 +41,25 @@ public class BookCnt {
     private static final Logger logger = LoggerFactory.getLogger(BookCnt.class);
     
     private final BookServ bookServ;
+    private final Catalog catalog;
+    private final ObjectMapper objectMapper;
+    private final BookCfg bookCfg;
+    private final PageEncoder pageEncoder;
+    private final RequestPool requestPool;
 
     /**
      * Получение страниц из EPUB файла.
      * Принимает путь к EPUB файлу и диапазон страниц для возврата.
      * Разбирает EPUB файл, очищает HTML контент и возвращает страницы
      * в удобном для чтения формате.
+     * Формат ответа выбирается по заголовкам Accept (JSON или двоичный)
+     * и Accept-Encoding (gzip).
+     * Запрос обрабатывается в пуле запросов страниц; при перегрузке
+     * возвращается 503 с заголовком Retry-After.
      * 
-     * @param reqDTO запрос с путем к файлу и диапазоном страниц
+     * @param reqDTO         запрос с путем к файлу и диапазоном страниц
+     * @param accept         значение заголовка Accept
+     * @param acceptEncoding значение заголовка Accept-Encoding
      * @return список страниц книги
      */
     @Operation(
@@ -43,26 +70,444 @@ public class BookCnt {
                     @ApiResponse(
                             responseCode = "200",
                             description = "Успешный ответ. Пустой список означает ошибку при разборе EPUB",
-                            content = @Content(
-                                    mediaType = "application/json", 
-                                    schema = @Schema(implementation = ResDTO.class)
-                            )
+                            content = {
+                                    @Content(
+                                            mediaType = "application/json",
+                                            schema = @Schema(implementation = ResDTO.class)
+                                    ),
+                                    @Content(mediaType = "application/x-library-pages")
+                            }
                     ),
                     @ApiResponse(
                             responseCode = "400",
                             description = "Некорректные параметры запроса"
+                    ),
+                    @ApiResponse(
+                            responseCode = "503",
+                            description = "Сервис перегружен или истёк срок ответа, см. Retry-After"
                     )
             }
     )
     @PostMapping("pages")
-    public ResponseEntity<ResDTO> getPages(@Valid @RequestBody ReqDTO reqDTO) {
+    public CompletableFuture<ResponseEntity<?>> getPages(
+            @Valid @RequestBody ReqDTO reqDTO,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        checkPageSize(reqDTO.maxLength());
         logger.info("Получен запрос на разбор EPUB: {}", reqDTO.path());
-        
-        ResDTO response = bookServ.getPages(reqDTO);
-        
-        logger.info("Возвращено {} страниц для файла: {}",
-                response.pages().size(), reqDTO.path());
-        
+        catalog.recordRequest(reqDTO.path());
+
+        PageEncoder.Variant variant = pageEncoder.negotiate(accept, acceptEncoding);
+        return requestPool.submit(() -> {
+            if (variant.isPlainJson()) {
+                ResDTO response = bookServ.getPages(reqDTO);
+
+                logger.info("Возвращено {} страниц для файла: {}",
+                        response.pages().size(), reqDTO.path());
+
+                // Тип задан явно: JSON отдаётся и при некорректном заголовке Accept
+                return ResponseEntity.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(response);
+            }
+
+            return encodedPages(reqDTO, etagOf(reqDTO), variant, false);
+        });
+    }
+
+    /**
+     * Пакетное получение страниц из нескольких EPUB файлов.
+     * Элементы группируются по книге, каждая книга разбирается один раз,
+     * разные книги обрабатываются параллельно. Результаты возвращаются
+     * в порядке элементов запроса, ошибка элемента описывается в его результате.
+     *
+     * @param batchReqDTO список запросов страниц
+     * @return результаты в порядке запросов
+     */
+    @Operation(
+            summary = "Пакетное получение страниц EPUB",
+            description = "Принимает список запросов страниц, в том числе разных диапазонов одной книги, " +
+                    "и возвращает результаты в том же порядке. Ошибка одного элемента не влияет на остальные: " +
+                    "у такого элемента result равен null, а error содержит описание ошибки.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Результаты в порядке запросов",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(implementation = BatchResDTO.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "400",
+                            description = "Некорректные параметры запроса или слишком много элементов"
+                    ),
+                    @ApiResponse(
+                            responseCode = "503",
+                            description = "Сервис перегружен или истёк срок ответа, см. Retry-After"
+                    )
+            }
+    )
+    @PostMapping("pages/batch")
+    public CompletableFuture<ResponseEntity<BatchResDTO>> getPagesBatch(@Valid @RequestBody BatchReqDTO batchReqDTO) {
+        List<ReqDTO> items = batchReqDTO.items();
+        if (items.size() > bookCfg.BATCH_MAX_ITEMS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Не более " + bookCfg.BATCH_MAX_ITEMS + " элементов в пакетном запросе");
+        }
+        for (ReqDTO item : items) {
+            checkPageSize(item.maxLength());
+        }
+
+        logger.info("Получен пакетный запрос на {} диапазонов", items.size());
+        for (ReqDTO item : items) {
+            catalog.recordRequest(item.path());
+        }
+
+        return requestPool.submit(() -> {
+            List<BatchItemDTO> results = bookServ.getPagesBatch(items);
+
+            logger.info("Возвращено {} результатов, ошибок: {}", results.size(),
+                    results.stream().filter(item -> item.error() != null).count());
+
+            return ResponseEntity.ok(new BatchResDTO(results));
+        });
+    }
+
+    /**
+     * Получение страниц из EPUB файла с поддержкой HTTP кэширования.
+     * Ответ помечается сильным ETag, вычисляемым по версии файла, размеру страницы
+     * и диапазону. Если клиент уже имеет эту версию (If-None-Match), возвращается
+     * 304 без разбора книги.
+     *
+     * @param reqDTO         путь к файлу и диапазон страниц в параметрах запроса
+     * @param ifNoneMatch    значение заголовка If-None-Match
+     * @param accept         значение заголовка Accept
+     * @param acceptEncoding значение заголовка Accept-Encoding
+     * @return список страниц книги или 304
+     */
+    @Operation(
+            summary = "Получение страниц EPUB (кэшируемое)",
+            description = "То же, что POST /epub/pages, но параметры передаются в строке запроса, " +
+                    "а ответ можно кэшировать в браузере, CDN и обратном прокси. " +
+                    "Ответы с оценочным числом страниц не кэшируются.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Успешный ответ с заголовками ETag и Cache-Control",
+                            content = {
+                                    @Content(
+                                            mediaType = "application/json",
+                                            schema = @Schema(implementation = ResDTO.class)
+                                    ),
+                                    @Content(mediaType = "application/x-library-pages")
+                            }
+                    ),
+                    @ApiResponse(
+                            responseCode = "304",
+                            description = "Версия клиента актуальна"
+                    ),
+                    @ApiResponse(
+                            responseCode = "400",
+                            description = "Некорректные параметры запроса"
+                    ),
+                    @ApiResponse(
+                            responseCode = "503",
+                            description = "Сервис перегружен или истёк срок ответа, см. Retry-After"
+                    )
+            }
+    )
+    @GetMapping("pages")
+    public CompletableFuture<ResponseEntity<?>> getCachedPages(
+            @Valid @ParameterObject @ModelAttribute ReqDTO reqDTO,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        checkPageSize(reqDTO.maxLength());
+        logger.info("Получен GET запрос на разбор EPUB: {}", reqDTO.path());
+
+        String etag = etagOf(reqDTO);
+        PageEncoder.Variant variant = pageEncoder.negotiate(accept, acceptEncoding);
+
+        if (etag != null && matches(ifNoneMatch, variant.etag(etag))) {
+            logger.info("Версия клиента актуальна для файла: {}", reqDTO.path());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(variant.etag(etag))
+                    .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+                    .cacheControl(cacheControl())
+                    .build());
+        }
+
+        catalog.recordRequest(reqDTO.path());
+        return requestPool.submit(() -> {
+            if (!variant.isPlainJson()) {
+                return encodedPages(reqDTO, etag, variant, true);
+            }
+
+            ResDTO response = bookServ.getPages(reqDTO);
+
+            logger.info("Возвращено {} страниц для файла: {}",
+                    response.pages().size(), reqDTO.path());
+
+            if (!isReusable(etag, response)) {
+                return ResponseEntity.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+                        .cacheControl(CacheControl.noStore())
+                        .body(response);
+            }
+
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .eTag(etag)
+                    .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+                    .cacheControl(cacheControl())
+                    .body(response);
+        });
+    }
+
+    /**
+     * Отдаёт страницы в двоичном и/или сжатом виде. Закодированное тело точного ответа
+     * сохраняется по ETag, поэтому повторный запрос того же диапазона не разбирает книгу,
+     * не сериализует и не сжимает ответ заново.
+     */
+    private ResponseEntity<?> encodedPages(ReqDTO reqDTO, String etag, PageEncoder.Variant variant,
+                                           boolean httpCache) {
+        byte[] body = etag != null ? pageEncoder.cached(etag, variant) : null;
+        boolean reusable = body != null;
+
+        if (body == null) {
+            ResDTO response = bookServ.getPages(reqDTO);
+            reusable = isReusable(etag, response);
+            try {
+                body = pageEncoder.encode(response, variant, reusable ? etag : null);
+            } catch (IOException e) {
+                logger.error("Ошибка кодирования ответа для файла {}: {}", reqDTO.path(), e.getMessage(), e);
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            }
+        } else {
+            logger.info("Использован закодированный ответ для файла: {}", reqDTO.path());
+        }
+
+        logger.info("Возвращено {} байт ({}) для файла: {}", body.length, variant, reqDTO.path());
+
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .contentType(variant.contentType())
+                .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING);
+        if (variant.gzip()) {
+            builder.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        if (httpCache) {
+            if (reusable) {
+                builder.eTag(variant.etag(etag)).cacheControl(cacheControl());
+            } else {
+                builder.cacheControl(CacheControl.noStore());
+            }
+        }
+        return builder.body(body);
+    }
+
+    private String etagOf(ReqDTO reqDTO) {
+        try {
+            return bookServ.etag(reqDTO);
+        } catch (IOException e) {
+            logger.warn("Не удалось вычислить ETag для файла {}: {}", reqDTO.path(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Оценочный total и пустой ответ при ошибке меняются со временем: их не кэшируем.
+     */
+    private static boolean isReusable(String etag, ResDTO response) {
+        return etag != null && !response.totalEstimated() && response.total() > 0;
+    }
+
+    /**
+     * Отклоняет размер страницы, не входящий в app.library.page-sizes: книга разбирается
+     * и хранится отдельно для каждого размера, поэтому произвольные размеры не принимаются.
+     */
+    private void checkPageSize(Integer maxLength) {
+        if (!bookCfg.isAllowedPageSize(maxLength)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Размер страницы " + maxLength
+                    + " не поддерживается, допустимые размеры: " + bookCfg.getPageSizes().stream()
+                    .map(String::valueOf)
+                    .collect(Collectors.joining(", ")));
+        }
+    }
+
+    private CacheControl cacheControl() {
+        return CacheControl.maxAge(Duration.ofSeconds(bookCfg.HTTP_MAX_AGE_SECONDS)).cachePublic();
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Потоковое получение страниц из EPUB файла.
+     * Каждая страница записывается в ответ отдельной строкой NDJSON сразу,
+     * как только она готова. Запись блокируется, пока медленный клиент
+     * не примет предыдущие данные, поэтому разбор идёт в его темпе.
+     * Поток занимает место в пуле запросов страниц до своего завершения;
+     * при перегрузке возвращается 503 с заголовком Retry-After.
+     *
+     * @param reqDTO запрос с путем к файлу и диапазоном страниц
+     * @return поток страниц в формате NDJSON
+     */
+    @Operation(
+            summary = "Потоковое получение страниц EPUB",
+            description = "Возвращает страницы диапазона в формате application/x-ndjson: " +
+                    "по одной странице на строку, по мере разбора книги. " +
+                    "Диапазон за концом книги даёт одну строку с пустой страницей и точным total. " +
+                    "При ошибке разбора поток завершается досрочно.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Поток страниц",
+                            content = @Content(
+                                    mediaType = "application/x-ndjson",
+                                    schema = @Schema(implementation = PageDTO.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "400",
+                            description = "Некорректные параметры запроса"
+                    ),
+                    @ApiResponse(
+                            responseCode = "503",
+                            description = "Сервис перегружен, см. Retry-After"
+                    )
+            }
+    )
+    @PostMapping(path = "pages/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamPages(@Valid @RequestBody ReqDTO reqDTO) {
+        checkPageSize(reqDTO.maxLength());
+        logger.info("Получен запрос на потоковый разбор EPUB: {}", reqDTO.path());
+        RequestPool.Admission admission = requestPool.admit();
+        catalog.recordRequest(reqDTO.path());
+
+        StreamingResponseBody body = out -> {
+            int[] sent = {0};
+            try (admission) {
+                bookServ.streamPages(reqDTO, page -> {
+                    out.write(objectMapper.writeValueAsBytes(page));
+                    out.write('\n');
+                    out.flush();
+                    sent[0]++;
+                });
+            } catch (Exception e) {
+                logger.warn("Потоковая выдача прервана для файла {}: {}", reqDTO.path(), e.getMessage());
+            }
+            logger.info("Передано {} страниц для файла: {}", sent[0], reqDTO.path());
+        };
+
+        return ResponseEntity.ok(body);
+    }
+
+    /**
+     * Получение оглавления EPUB файла.
+     * Для каждого раздела оглавления и каждого документа книги возвращает
+     * страницу, с которой он начинается. Если книга ещё не разобрана,
+     * она разбирается целиком.
+     *
+     * @param path      путь к EPUB файлу относительно библиотеки
+     * @param maxLength размер страницы, к которому относятся номера страниц (по умолчанию app.library.max-length)
+     * @return оглавление книги
+     */
+    @Operation(
+            summary = "Оглавление EPUB",
+            description = "Возвращает оглавление из навигационного документа EPUB 3 или NCX EPUB 2 " +
+                    "с номером начальной страницы каждого раздела, а также начальные страницы всех " +
+                    "документов в порядке чтения. Разделы, указывающие на место внутри документа, " +
+                    "начинаются со страницы этого документа.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Оглавление книги",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(implementation = TocDTO.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "400",
+                            description = "Некорректные параметры запроса"
+                    ),
+                    @ApiResponse(
+                            responseCode = "404",
+                            description = "Книга не найдена"
+                    )
+            }
+    )
+    @GetMapping("toc")
+    public ResponseEntity<TocDTO> getToc(@RequestParam String path,
+                                         @RequestParam(required = false) Integer maxLength) {
+        if (path.isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+        checkPageSize(maxLength);
+        logger.info("Получен запрос оглавления EPUB: {}", path);
+
+        try {
+            TocDTO response = bookServ.getToc(path, maxLength);
+
+            logger.info("Возвращено {} разделов оглавления для файла: {}", response.entries().size(), path);
+
+            return ResponseEntity.ok(response);
+        } catch (NoSuchFileException e) {
+            logger.warn("Книга не найдена: {}", path);
+            return ResponseEntity.notFound().build();
+        } catch (Exception e) {
+            logger.error("Ошибка получения оглавления для файла {}: {}", path, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Получение каталога библиотеки.
+     * Возвращает книги из директории библиотеки с метаданными OPF,
+     * отсортированные по пути, постранично.
+     *
+     * @param page номер страницы каталога, начиная с 0
+     * @param size число книг на странице (не более 500)
+     * @return страница каталога
+     */
+    @Operation(
+            summary = "Каталог библиотеки",
+            description = "Возвращает список EPUB-файлов библиотеки с названием, автором и числом глав. " +
+                    "Каталог строится в фоне при старте и обновляется при изменении файлов; " +
+                    "пока сканирование не завершено, поле complete равно false.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Страница каталога",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(implementation = CatalogDTO.class)
+                            )
+                    )
+            }
+    )
+    @GetMapping("catalog")
+    public ResponseEntity<CatalogDTO> getCatalog(@RequestParam(defaultValue = "0") int page,
+                                                 @RequestParam(defaultValue = "50") int size) {
+        CatalogDTO response = catalog.list(page, size);
+
+        logger.info("Возвращено {} книг каталога из {}", response.books().size(), response.total());
+
         return ResponseEntity.ok(response);
     }
 }
\ No newline at end of file
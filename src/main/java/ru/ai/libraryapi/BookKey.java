@@ -0,0 +1,43 @@
+package ru.ai.libraryapi;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Identity of a paginated book: the resolved file, its version on disk, the page size used and
+ * the chapter cleaning rules. Any change of the file (mtime or size), of the page size or of the
+ * cleaning rules produces a different key.
+ *
+ * @param path      Real path of the EPUB file.
+ * @param modified  Last modification time in milliseconds.
+ * @param size      File size in bytes.
+ * @param maxLength Maximum page length the book was split with.
+ * @param rules     Fingerprint of the cleaning rules the chapters were cleaned with.
+ */
+public record BookKey(String path, long modified, long size, int maxLength, long rules) {
+
+    /**
+     * Builds a key for the given file by reading its attributes.
+     *
+     * @param file      EPUB file.
+     * @param maxLength Maximum page length.
+     * @param rules     Fingerprint of the cleaning rules.
+     * @return Key describing the current version of the file.
+     * @throws IOException If the file does not exist or cannot be read.
+     */
+    public static BookKey of(Path file, int maxLength, long rules) throws IOException {
+        Path real = file.toRealPath();
+        BasicFileAttributes attrs = Files.readAttributes(real, BasicFileAttributes.class);
+        return new BookKey(real.toString(), attrs.lastModifiedTime().toMillis(), attrs.size(), maxLength,
+                rules);
+    }
+
+    /**
+     * @return Key of the same file version that does not depend on the page size.
+     */
+    public BookKey source() {
+        return maxLength == 0 ? this : new BookKey(path, modified, size, 0, rules);
+    }
+}
@@ -10,11 +10,20 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import ru.ai.libraryapi.config.BookCfg;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
 
 /**
  * Service for processing EPUB books: extraction, cleaning, and splitting into pages.
@@ -24,305 +33,796 @@ import java.util.regex.Pattern;
 public class BookServ {
     private static final Logger logger = LoggerFactory.getLogger(BookServ.class);
 
-    private static final Pattern BODY_PATTERN = Pattern.compile("(?is)<body[^>]*>(.*?)</body>");
-
-    // Example selectors from config (can be List<String> in BookCfg)
-    private static final String REMOVE_SELECTORS = "img, svg, meta, link, style";
-    private static final String UNWRAP_SELECTORS = "span, a, b, strong, i, em";
+    // Pages decoded from the page store at a time while streaming
+    private static final int STREAM_CHUNK = 16;
 
     private final BookCfg bookCfg;
     private final EpubExtractor epubExtractor;
+    private final PageCache pageCache;
+    private final PageStore pageStore;
+    private final StoreWriter storeWriter;
+    private final PageCursors pageCursors;
+    private final CleanPool cleanPool;
+    private final DecodeBudget decodeBudget;
+    private final LayoutCache layoutCache;
+    private final ChapterCache chapterCache;
+    private final Prefetcher prefetcher;
+    private final BatchPool batchPool;
+    private final PipelineMetrics metrics;
+
+    private final SingleFlight<BookKey, Progress> flights = new SingleFlight<>();
+    // Whole-book pagination for the table of contents, kept apart from page requests
+    private final SingleFlight<BookKey, PageStore.ChapterStarts> tocFlights = new SingleFlight<>();
+
+    /**
+     * Pages of a book produced so far, copied out of its checkpoint.
+     *
+     * @param pages    Completed pages.
+     * @param total    Exact or estimated page count.
+     * @param complete Whether the whole book has been paginated.
+     */
+    private record Progress(List<String> pages, int total, boolean complete) {
+    }
 
     /**
      * Retrieves paginated content from an EPUB file.
+     * <p>
+     * Books that are neither cached nor stored are paginated lazily: only the chapters needed
+     * to produce page {@code to} are read, and the checkpoint is kept for later ranges.
+     * Until the whole book is paginated the total page count is an estimate.
+     * <p>
+     * Concurrent requests for the same book are coalesced: one of them paginates and the others
+     * wait for its result, repeating the lookup only if it stopped short of their range.
+     * When a book is read window by window, the following windows are paginated in the background.
      *
      * @param req Request DTO with path and page range.
      * @return Response DTO with pages and metadata.
      */
     public ResDTO getPages(ReqDTO req) {
+        long started = System.nanoTime();
         try {
-            String epubFilePath = Paths.get(bookCfg.getLibraryPath(), req.path()).toString();
-            logger.info("Reading EPUB file: {}", epubFilePath);
+            return pages(keyOf(req), req, started);
+        } catch (Exception e) {
+            logger.error("Error opening EPUB: {}", e.getMessage(), e);
+            metrics.recordRequest(PipelineMetrics.Source.ERROR, System.nanoTime() - started);
+            return new ResDTO(new ArrayList<>(), req.from(), req.to(), 0, false);
+        }
+    }
 
-            List<List<String>> pages = new ArrayList<>();
+    /**
+     * Retrieves several page ranges, possibly of different books, in one call.
+     * <p>
+     * Items are grouped by book and page size. Each group is served by one worker, starting with
+     * its furthest range: that item paginates the book once and the remaining ranges are then
+     * answered from the checkpoint, the page cache or the page store. Distinct groups are
+     * processed concurrently on the calling thread and the shared {@link BatchPool}, at most
+     * {@code app.library.batch.parallelism} at a time.
+     * <p>
+     * Unlike {@link #getPages(ReqDTO)}, a failing item is reported with its error instead of
+     * an empty page list, and does not affect the other items.
+     *
+     * @param items Requests in the order the results are needed.
+     * @return Results in the order of the requests.
+     */
+    public List<BatchItemDTO> getPagesBatch(List<ReqDTO> items) {
+        Map<String, List<Integer>> books = new LinkedHashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            ReqDTO item = items.get(i);
+            books.computeIfAbsent(item.path() + '\0' + item.maxLength(), book -> new ArrayList<>()).add(i);
+        }
 
-            for (String page: splitEpubByPages(epubFilePath)) {
-                pages.add(List.of(page));
-            }
+        BatchItemDTO[] results = new BatchItemDTO[items.size()];
+        try {
+            batchPool.forEach(List.copyOf(books.values()), book -> pagesOfBook(items, book, results));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while serving a batch", e);
+        }
 
-            int from = req.from();
-            int to = Math.min(req.to(), pages.size());
+        return Arrays.asList(results);
+    }
 
-            logger.info("Returning pages {}–{} (total pages: {})", from, to, pages.size());
-            return new ResDTO(pages.subList(from, to), from, to, pages.size());
+    /**
+     * Serves the items of one book, furthest range first.
+     */
+    private void pagesOfBook(List<ReqDTO> items, List<Integer> positions, BatchItemDTO[] results) {
+        List<Integer> order = new ArrayList<>(positions);
+        order.sort(Comparator.comparingInt((Integer i) -> items.get(i).to()).reversed());
 
+        ReqDTO first = items.get(order.get(0));
+        String path = first.path();
+        BookKey key;
+        try {
+            key = keyOf(first);
         } catch (Exception e) {
-            logger.error("Error opening EPUB: {}", e.getMessage(), e);
-            return new ResDTO(new ArrayList<>(), req.from(), req.to(), 0);
+            logger.warn("Batch item failed for EPUB file {}: {}", path, e.toString());
+            for (int i : order) {
+                metrics.recordRequest(PipelineMetrics.Source.ERROR, 0);
+                results[i] = new BatchItemDTO(path, null, errorOf(e));
+            }
+            return;
+        }
+
+        for (int i : order) {
+            ReqDTO req = items.get(i);
+            long started = System.nanoTime();
+            try {
+                results[i] = new BatchItemDTO(path, pages(key, req, started), null);
+            } catch (Exception e) {
+                logger.warn("Batch item failed for EPUB file {}: {}", path, e.toString());
+                metrics.recordRequest(PipelineMetrics.Source.ERROR, System.nanoTime() - started);
+                results[i] = new BatchItemDTO(path, null, errorOf(e));
+            }
         }
     }
 
-    private List<String> splitEpubByPages(String epubPath) {
+    private static String errorOf(Exception e) {
+        if (e instanceof NoSuchFileException) {
+            return "Book not found";
+        }
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+
+    /**
+     * Serves a range from the page cache, the page store or the pipeline, in this order.
+     */
+    private ResDTO pages(BookKey key, ReqDTO req, long started) throws Exception {
+        while (true) {
+            List<String> bookPages = pageCache.get(key);
+            if (bookPages != null) {
+                logger.info("Using cached pages for EPUB file: {}", key.path());
+                ResDTO res = toResDTO(bookPages, req.from(), req.to(), bookPages.size(), false);
+                metrics.recordRequest(PipelineMetrics.Source.CACHE, System.nanoTime() - started);
+                return res;
+            }
+
+            PageStore.Range indexed = pageStore.read(key, req.from(), req.to());
+            if (indexed != null) {
+                logger.info("Using page store for EPUB file: {}", key.path());
+                ResDTO res = toResDTO(indexed.pages(), Math.min(req.from(), indexed.total()), indexed.total(),
+                        false);
+                metrics.recordRequest(PipelineMetrics.Source.INDEX, System.nanoTime() - started);
+                return res;
+            }
+
+            Progress progress = flights.run(key, () -> paginate(key, req.to()));
+            if (progress.complete() || progress.pages().size() >= req.to()) {
+                ResDTO res = toResDTO(progress.pages(), req.from(), req.to(), progress.total(),
+                        !progress.complete());
+                metrics.recordRequest(PipelineMetrics.Source.PIPELINE, System.nanoTime() - started);
+                if (!progress.complete()) {
+                    prefetcher.observe(key, req.from(), req.to(), target -> prefetch(key, target));
+                }
+                return res;
+            }
+            logger.info("Joined pagination stopped before page {}, retrying: {}", req.to(), key.path());
+        }
+    }
+
+    /**
+     * Paginates a book in the background ahead of a sequential reader.
+     * <p>
+     * Prefetching continues the checkpoint the reader's requests left behind, one spine item
+     * per lock hold, and does not join or lead the single-flight of foreground requests. A
+     * reader's next request therefore waits for at most one chapter before it takes over the
+     * checkpoint with its own, smaller target. Books that are no longer being paginated, for
+     * example because they were completed in the meantime, are left alone.
+     */
+    private void prefetch(BookKey key, int to) {
         try {
-            List<String> rawChapters = epubExtractor.extractChaptersInReadingOrder(epubPath);
-            int rawSize = rawChapters.size();
-            List<String> cleanedChapters = cleanPages(rawChapters);
-            int cleanedSize = cleanedChapters.size();
-            List<String> mergedChapters = mergeHeaders(cleanedChapters);
-            List<String> splitPages = splitPages(mergedChapters);
-            int splitSize = splitPages.size();
-
-            logger.info("Processed EPUB: raw chapters={}, cleaned={}, split pages={}", rawSize, cleanedSize, splitSize);
-            return splitPages;
+            PageCursor cursor;
+            while ((cursor = pageCursors.find(key)) != null) {
+                cursor.lock().lock();
+                try {
+                    if (cursor.isComplete() || cursor.pages().size() >= to) {
+                        return;
+                    }
+                    advance(cursor, to, true);
+                    if (cursor.isComplete()) {
+                        publish(cursor);
+                        return;
+                    }
+                } finally {
+                    cursor.lock().unlock();
+                }
+            }
         } catch (Exception e) {
-            logger.error("Failed to split EPUB: {}", e.getMessage(), e);
-            return new ArrayList<>();
+            logger.warn("Prefetch failed for EPUB file {}: {}", key.path(), e.toString());
         }
     }
 
     /**
-     * Cleans raw chapters from EPUB.
+     * Consumer of streamed pages.
+     */
+    @FunctionalInterface
+    public interface PageSink {
+        /**
+         * Receives the next page. May block while a slow client catches up.
+         *
+         * @param page Page with its index and the current page count of the book.
+         * @throws IOException If the page cannot be delivered.
+         */
+        void send(PageDTO page) throws IOException;
+    }
+
+    /**
+     * Streams pages of a range in order, each as soon as it is available.
+     * <p>
+     * Cached and stored books are streamed directly, the store in chunks so only a few pages
+     * are decoded at a time. Other books are paginated from their checkpoint a batch at a time
+     * and the new pages are sent before the next batch is read, so the first page does not wait
+     * for the rest of the range. A sink that blocks slows pagination down to its pace.
+     * <p>
+     * A range that starts at or past the end of the book produces a single frame without
+     * a page, indexed by the page count, so the client still learns the total.
      *
-     * @param rawChapters List of raw HTML strings.
-     * @return List of cleaned HTML strings.
+     * @param req  Request DTO with path and page range.
+     * @param sink Consumer of the pages.
+     * @throws Exception If the EPUB cannot be read or a page cannot be delivered.
      */
-    public List<String> cleanPages(List<String> rawChapters) {
-        List<String> cleanedChapters = new ArrayList<>();
+    public void streamPages(ReqDTO req, PageSink sink) throws Exception {
+        BookKey key = keyOf(req);
+
+        int next = req.from();
+        int total = 0;
+        while (next < req.to()) {
+            List<String> bookPages = pageCache.get(key);
+            if (bookPages != null) {
+                logger.info("Streaming cached pages for EPUB file: {}", key.path());
+                total = bookPages.size();
+                send(sink, bookPages, next, req.to(), total, false);
+                next = Math.max(next, Math.min(req.to(), total));
+                break;
+            }
 
-        for (int index = 0; index < rawChapters.size(); index++) {
-            try {
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Cleaning chapter #{}", index);
-                }
-                String cleaned = cleanChapter(rawChapters.get(index));
-                if (!cleaned.isBlank()) {
-                    cleanedChapters.add(cleaned);
-                } else {
-                    logger.warn("Cleaned chapter #{} is blank", index);
+            PageStore.Range indexed = pageStore.read(key, next, Math.min(req.to(), next + STREAM_CHUNK));
+            if (indexed != null) {
+                total = indexed.total();
+                send(sink, indexed.pages(), 0, indexed.pages().size(), next, total, false);
+                next += indexed.pages().size();
+                if (indexed.pages().isEmpty()) {
+                    break;
                 }
-            } catch (Exception e) {
-                logger.error("Error cleaning chapter #{}: {}", index, e.getMessage());
+                continue;
+            }
+
+            int target = next + 1;
+            Progress progress = flights.run(key, () -> paginate(key, target));
+            total = progress.total();
+            int end = Math.min(req.to(), progress.pages().size());
+            send(sink, progress.pages(), next, end, total, !progress.complete());
+            next = Math.max(next, end);
+
+            if (progress.complete()) {
+                break;
             }
         }
 
-        return cleanedChapters;
+        if (next == req.from() && req.from() < req.to()) {
+            sink.send(new PageDTO(Math.min(req.from(), total), List.of(), total, false));
+        }
     }
 
-    private String cleanChapter(String html) {
-        // Remove BOM
-        html = html.replace("\uFEFF", "");
+    private void send(PageSink sink, List<String> bookPages, int from, int to, int total, boolean estimated)
+            throws IOException {
+        send(sink, bookPages, from, Math.min(to, bookPages.size()), from, total, estimated);
+    }
 
-        // Extract body content
-        String body;
-        Matcher bodyMatcher = BODY_PATTERN.matcher(html);
-        if (bodyMatcher.find()) {
-            body = bodyMatcher.group(1);
-        } else {
-            body = html;
-            logger.warn("Body not found; using full content");
+    private void send(PageSink sink, List<String> pages, int start, int end, int firstIndex, int total,
+                      boolean estimated) throws IOException {
+        for (int i = start; i < end; i++) {
+            sink.send(new PageDTO(firstIndex + i - start, List.of(pages.get(i)), total, estimated));
         }
-
-        // Clean with JSoup
-        return cleanHtml(body);
     }
 
-    private String cleanHtml(String html) {
-        Document doc = Jsoup.parse(html);
+    /**
+     * Paginates a whole book ahead of requests, so that later ranges are served from the page
+     * cache or the page store. Does nothing if the book is already there.
+     * <p>
+     * Like prefetching, warm-up works in the background mode of the pipeline: it continues the
+     * checkpoint one spine item per lock hold, cleans on the calling thread rather than the
+     * shared cleaning pool, and stays out of the single-flight of foreground requests. A reader
+     * who opens the book meanwhile waits for at most one chapter and then takes over.
+     *
+     * @param path Path to the EPUB file relative to the library.
+     * @throws Exception If the EPUB cannot be opened or read.
+     */
+    public void preload(String path) throws Exception {
+        BookKey key = keyOf(path, null);
 
-        // Remove unwanted elements
-        doc.select(REMOVE_SELECTORS).remove();
+        if (pageCache.get(key) != null || pageStore.read(key, 0, 0) != null) {
+            return;
+        }
 
-        // Unwrap inline elements
-        doc.select(UNWRAP_SELECTORS).unwrap();
+        logger.info("Preloading EPUB file: {}", key.path());
+        PageCursor cursor = pageCursors.get(key);
+        do {
+            cursor.lock().lock();
+            try {
+                if (cursor.isComplete()) {
+                    return;
+                }
+                advance(cursor, Integer.MAX_VALUE, true);
+                if (cursor.isComplete()) {
+                    publish(cursor);
+                    return;
+                }
+            } finally {
+                cursor.lock().unlock();
+            }
+        } while ((cursor = pageCursors.find(key)) != null);
+    }
 
-        // Remove style attributes from all elements
-        doc.select("[style]").removeAttr("style");
+    /**
+     * Returns the table of contents of a book together with the page on which every spine item
+     * and every TOC entry begins, so a client can jump to a chapter with a single range request.
+     * <p>
+     * Start pages are recorded while the book is paginated and stored with its pages in the page
+     * cache and the page store. A book that is in neither is paginated completely first, under a
+     * single-flight of its own and one batch of chapters per lock hold, so page requests for
+     * the book are not queued behind the whole book. TOC entries pointing into the middle of
+     * a document begin on the page of that document.
+     *
+     * @param path      Path to the EPUB file relative to the library.
+     * @param maxLength Page size the start pages refer to or null for the configured default.
+     * @return Table of contents.
+     * @throws Exception If the EPUB cannot be opened or read.
+     */
+    public TocDTO getToc(String path, Integer maxLength) throws Exception {
+        BookKey key = keyOf(path, maxLength);
+
+        int[] starts;
+        int total;
+        while (true) {
+            List<String> bookPages = pageCache.get(key);
+            int[] cachedStarts = pageCache.chapterStarts(key);
+            if (bookPages != null && cachedStarts != null) {
+                starts = cachedStarts;
+                total = bookPages.size();
+                break;
+            }
 
-        // Remove Calibre-specific navigation (TOC-like ul and hr)
-        doc.select("ul[class^=calibre], hr[class^=calibre]").remove();
+            PageStore.ChapterStarts indexed = pageStore.readChapterStarts(key);
+            if (indexed != null) {
+                starts = indexed.starts();
+                total = indexed.total();
+                break;
+            }
 
-        // Remove duplicate headings (e.g., repeated titles)
-        removeDuplicateHeadings(doc);
+            PageStore.ChapterStarts paginated = tocFlights.run(key, () -> paginateInSteps(key));
+            if (paginated != null) {
+                starts = paginated.starts();
+                total = paginated.total();
+                break;
+            }
+            logger.info("Book was completed by another request, retrying: {}", key.path());
+        }
 
-        // Remove empty divs and ps (including those with &nbsp; after cleanup)
-        doc.select("div:empty, p:empty").remove();
+        try (EpubBook book = epubExtractor.open(key.path())) {
+            List<TocEntryDTO> entries = new ArrayList<>(book.toc().size());
+            for (EpubBook.TocEntry entry : book.toc()) {
+                if (entry.chapter() < starts.length) {
+                    entries.add(new TocEntryDTO(entry.title(), entry.depth(), entry.chapter(),
+                            starts[entry.chapter()]));
+                }
+            }
 
-        // Normalize whitespace and remove excessive empty lines
-        String cleaned = doc.body().html().trim();
-        cleaned = cleaned.replaceAll("\\s{2,}", " ");  // Multiple spaces to single
-        cleaned = cleaned.replaceAll("(<br\\s*/?>\\s*){2,}", "<br><br>");  // Max 1 empty line equivalent
-        cleaned = cleaned.replaceAll("(\\n{3,})", "\n\n");  // Max 2 newlines
+            List<Integer> chapters = new ArrayList<>(starts.length);
+            for (int start : starts) {
+                chapters.add(start);
+            }
 
-        if (logger.isDebugEnabled()) {
-            logger.debug("Cleaned HTML length: {}", cleaned.length());
+            logger.info("Returning table of contents: {} entries, {} chapters, {} pages",
+                    entries.size(), chapters.size(), total);
+            return new TocDTO(book.title(), total, chapters, entries);
         }
-        return cleaned;
     }
 
-    private void removeDuplicateHeadings(Document doc) {
-        Elements headings = doc.select("h1, h2, h3, h4, h5, h6");
-        String prevText = null;
-        for (Element heading : headings) {
-            String text = heading.text().trim();
-            if (text.equals(prevText)) {
-                heading.remove();
-            } else {
-                prevText = text;
-            }
+    /**
+     * Returns a strong entity tag of a page range. It depends only on the identity of the book
+     * file, the page size, the cleaning rules and the range, so it is computed without reading
+     * the book.
+     *
+     * @param req Request DTO with path and page range.
+     * @return Quoted entity tag.
+     * @throws IOException If the file does not exist or cannot be read.
+     */
+    public String etag(ReqDTO req) throws IOException {
+        BookKey key = keyOf(req);
+        String identity = key.path() + '\0' + key.modified() + ':' + key.size() + ':' + key.maxLength()
+                + ':' + key.rules() + ':' + req.from() + ':' + req.to();
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(identity.getBytes(StandardCharsets.UTF_8));
+            return '"' + HexFormat.of().formatHex(hash, 0, 16) + '"';
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
         }
     }
 
-    private List<String> mergeHeaders(List<String> chapters) {
-        List<String> merged = new ArrayList<>();
-        StringBuilder pendingHeader = new StringBuilder();
+    private BookKey keyOf(ReqDTO req) throws IOException {
+        return keyOf(req.path(), req.maxLength());
+    }
 
-        for (String chapter : chapters) {
-            if (isPrimarilyHeader(chapter)) {
-                pendingHeader.append(chapter);
-            } else {
-                if (!pendingHeader.isEmpty()) {
-                    merged.add("<div>" + pendingHeader + "</div>" + chapter);
-                    pendingHeader = new StringBuilder();
-                } else {
-                    merged.add(chapter);
-                }
-            }
-        }
+    /**
+     * @param maxLength Page size requested by the client or null for the configured default.
+     */
+    private BookKey keyOf(String path, Integer maxLength) throws IOException {
+        Path epubFile = Paths.get(bookCfg.getLibraryPath(), path);
+        return BookKey.of(epubFile, maxLength != null ? maxLength : bookCfg.LIBRARY_MAX_LENGTH,
+                bookCfg.getCleanRulesFingerprint());
+    }
 
-        if (!pendingHeader.isEmpty()) {
-            merged.add("<div>" + pendingHeader + "</div>");
+    private ResDTO toResDTO(List<String> bookPages, int from, int to, int total, boolean estimated) {
+        int start = Math.min(from, bookPages.size());
+        int end = Math.max(start, Math.min(to, bookPages.size()));
+        return toResDTO(bookPages.subList(start, end), start, total, estimated);
+    }
+
+    private ResDTO toResDTO(List<String> rangePages, int from, int total, boolean estimated) {
+        List<List<String>> pages = new ArrayList<>(rangePages.size());
+
+        for (String page: rangePages) {
+            pages.add(List.of(page));
         }
 
-        return merged;
+        int to = from + pages.size();
+
+        logger.info("Returning pages {}–{} (total pages: {}{})", from, to, total, estimated ? ", estimated" : "");
+        return new ResDTO(pages, from, to, total, estimated);
     }
 
     /**
-     * Splits cleaned chapters into pages based on max length.
+     * Paginates a book from its checkpoint up to page {@code to}, publishing it once complete.
      *
-     * @param chapters List of cleaned HTML strings.
-     * @return List of page strings.
+     * @param key Book identity.
+     * @param to  Number of pages that must be available.
+     * @return Snapshot of the pages produced so far.
+     * @throws Exception If the EPUB cannot be opened or read.
      */
-    private List<String> splitPages(List<String> chapters) {
-        List<String> pages = new ArrayList<>();
-        StringBuilder currentPage = new StringBuilder();
+    private Progress paginate(BookKey key, int to) throws Exception {
+        PageCursor cursor = pageCursors.get(key);
+        cursor.lock().lock();
+        try {
+            logger.info("Reading EPUB file: {}", key.path());
+            advance(cursor, to, false);
 
-        for (String chapter : chapters) {
-            String trimmedChapter = chapter.trim();
-            if (trimmedChapter.isEmpty()) {
-                continue;
+            Progress progress = new Progress(List.copyOf(cursor.pages()), cursor.total(), cursor.isComplete());
+            if (cursor.isComplete()) {
+                publish(cursor);
             }
+            return progress;
+        } finally {
+            cursor.lock().unlock();
+        }
+    }
 
-            int minPageLength = getMinPageLength(chapter);  // Dynamic min length
-
-            if (chapter.length() > bookCfg.LIBRARY_MAX_LENGTH) {
-                if (!currentPage.isEmpty()) {
-                    pages.add(currentPage.toString());
-                    currentPage = new StringBuilder();
+    /**
+     * Paginates a whole book from its checkpoint, releasing the checkpoint after every batch of
+     * chapters so that page requests for the book can go in between, and publishes it.
+     *
+     * @param key Book identity.
+     * @return Start pages of the complete book, or null if another request completed it meanwhile.
+     * @throws Exception If the EPUB cannot be opened or read.
+     */
+    private PageStore.ChapterStarts paginateInSteps(BookKey key) throws Exception {
+        PageCursor cursor = pageCursors.get(key);
+        logger.info("Reading EPUB file: {}", key.path());
+        do {
+            cursor.lock().lock();
+            try {
+                if (cursor.isComplete()) {
+                    return null;
                 }
-                pages.addAll(splitLargeChapter(chapter));
-                continue;
+                advance(cursor, cursor.pages().size() + 1, false);
+                if (cursor.isComplete()) {
+                    publish(cursor);
+                    return new PageStore.ChapterStarts(cursor.paginator().chapterStarts(), cursor.total());
+                }
+            } finally {
+                cursor.lock().unlock();
             }
+        } while ((cursor = pageCursors.find(key)) != null);
+        return null;
+    }
 
-            boolean isHeader = isPrimarilyHeader(chapter);
+    /**
+     * Continues pagination of a book until page {@code to} is complete or the spine is exhausted.
+     * <p>
+     * Spine items are read in batches of the cleaning parallelism and cleaned concurrently;
+     * the whole batch is then paginated in spine order, so a request may run up to one batch
+     * ahead of page {@code to}. The time spent in each stage is recorded once per call.
+     * <p>
+     * If the book has already been cleaned for another page size, its layout is paginated
+     * in one pass instead, without opening the EPUB. Otherwise the cleaned chapters are
+     * collected so that the completed layout can serve other page sizes later, unless they
+     * outgrow {@code app.library.layout.max-book-bytes}.
+     * <p>
+     * In the background a single spine item is read and cleaned on the calling thread instead
+     * of the shared cleaning pool, and the call returns after it, so prefetching holds the
+     * checkpoint and a core for one chapter at a time.
+     *
+     * @param cursor     Checkpoint of the book, locked by the caller.
+     * @param to         Number of pages that must be available.
+     * @param background Whether this is a prefetch rather than a reader's request.
+     * @throws Exception If the EPUB cannot be opened or read.
+     */
+    private void advance(PageCursor cursor, int to, boolean background) throws Exception {
+        Paginator paginator = cursor.paginator();
+        if (paginator.isFinished() || paginator.pages().size() >= to) {
+            return;
+        }
 
-            if (chapter.length() < minPageLength || isHeader) {
-                // Merge with current or next by appending to current
-                currentPage.append(chapter);
-                continue;
+        long extractNanos = 0;
+        long cleanNanos = 0;
+        long paginateNanos = 0;
+        int unsplittable = paginator.unsplittableChapters();
+
+        if (cursor.nextChapter() == 0) {
+            List<Chapter> layout = layoutCache.get(cursor.key());
+            if (layout != null) {
+                repaginate(cursor, layout);
+                return;
             }
+            if (layoutCache.isEnabled()) {
+                cursor.keepLayout(Math.min(bookCfg.LAYOUT_MAX_BOOK_BYTES, bookCfg.LAYOUT_CACHE_MAX_BYTES));
+            }
+        }
+
+        long stageStart = System.nanoTime();
+        try (EpubBook book = epubExtractor.open(cursor.key().path())) {
+            int spineSize = book.spineSize();
+            cursor.setSpineSize(spineSize);
+
+            while (paginator.pages().size() < to && cursor.nextChapter() < spineSize) {
+                int first = cursor.nextChapter();
+
+                // As many chapters as there are workers, but no more than the decode budget holds
+                int limit = background ? 1 : Math.min(cleanPool.parallelism(), spineSize - first);
+                int count = 0;
+                long batchBytes = 0;
+                while (count < limit) {
+                    long size = Math.max(book.chapterSize(first + count), 0);
+                    if (count > 0 && batchBytes + size > decodeBudget.capacity()) {
+                        break;
+                    }
+                    batchBytes += size;
+                    count++;
+                }
+                if (bookCfg.MAX_BOOK_BYTES > 0 && cursor.decodedBytes() + batchBytes > bookCfg.MAX_BOOK_BYTES) {
+                    throw new SizeLimitException("Book " + cursor.key().path() + " exceeds " + bookCfg.MAX_BOOK_BYTES
+                            + " decoded bytes");
+                }
+
+                int reservation = decodeBudget.acquire(batchBytes);
+                try {
+                    List<String> raws = new ArrayList<>(count);
+                    long[] sizes = new long[count];
+                    for (int i = 0; i < count; i++) {
+                        long before = book.bytesRead();
+                        String raw = book.readChapter(first + i);
+                        if (raw != null) {
+                            sizes[i] = book.bytesRead() - before;
+                            metrics.chapterRead(sizes[i]);
+                        }
+                        raws.add(raw);
+                    }
+
+                    long cleanStart = System.nanoTime();
+                    extractNanos += cleanStart - stageStart;
+
+                    List<Chapter> cleaned;
+                    if (background) {
+                        String raw = raws.get(0);
+                        cleaned = new ArrayList<>(1);
+                        cleaned.add(raw != null ? cleanChapter(first, raw) : null);
+                    } else {
+                        cleaned = cleanPool.map(raws, (i, raw) -> raw != null ? cleanChapter(first + i, raw) : null);
+                    }
+
+                    // Raw text is not needed past cleaning: let it go before pagination
+                    boolean[] read = new boolean[count];
+                    for (int i = 0; i < count; i++) {
+                        read[i] = raws.get(i) != null;
+                    }
+                    raws.clear();
+
+                    long paginateStart = System.nanoTime();
+                    cleanNanos += paginateStart - cleanStart;
+
+                    for (int i = 0; i < count; i++) {
+                        Chapter chapter = cleaned.set(i, null);
+                        if (chapter != null) {
+                            paginator.accept(chapter);
+                        } else {
+                            paginator.skip();
+                        }
+                        cursor.chapterRead(sizes[i]);
+                        cursor.chapterDone(read[i], chapter != null);
+                        cursor.addToLayout(chapter);
+                    }
+
+                    stageStart = System.nanoTime();
+                    paginateNanos += stageStart - paginateStart;
+                } finally {
+                    decodeBudget.release(reservation);
+                }
 
-            if (currentPage.length() + chapter.length() > bookCfg.LIBRARY_MAX_LENGTH) {
-                if (!currentPage.isEmpty()) {
-                    pages.add(currentPage.toString());
+                if (background) {
+                    break;
                 }
-                currentPage = new StringBuilder();
             }
 
-            currentPage.append(chapter);
+            if (cursor.nextChapter() >= spineSize) {
+                paginator.finish();
+                paginateNanos += System.nanoTime() - stageStart;
+                metrics.bookPaginated(paginator.pages().size());
+                logger.info("Processed EPUB: raw chapters={}, cleaned={}, split pages={}",
+                        cursor.rawChapters(), cursor.cleanedChapters(), paginator.pages().size());
+            }
+        } finally {
+            metrics.recordStage(PipelineMetrics.Stage.EXTRACT, extractNanos);
+            metrics.recordStage(PipelineMetrics.Stage.CLEAN, cleanNanos);
+            metrics.recordStage(PipelineMetrics.Stage.PAGINATE, paginateNanos);
+            metrics.chaptersUnsplittable(paginator.unsplittableChapters() - unsplittable);
         }
+    }
 
-        if (!currentPage.isEmpty()) {
-            pages.add(currentPage.toString());
+    /**
+     * Paginates a whole book from its cached layout: one linear pass over the cleaned chapters.
+     */
+    private void repaginate(PageCursor cursor, List<Chapter> layout) {
+        logger.info("Paginating cached layout of EPUB file: {} (max length {})",
+                cursor.key().path(), cursor.key().maxLength());
+        long started = System.nanoTime();
+        Paginator paginator = cursor.paginator();
+        int unsplittable = paginator.unsplittableChapters();
+
+        cursor.setSpineSize(layout.size());
+        for (Chapter chapter : layout) {
+            if (chapter != null) {
+                paginator.accept(chapter);
+            } else {
+                paginator.skip();
+            }
+            cursor.chapterDone(chapter != null, chapter != null);
         }
+        paginator.finish();
 
-        return pages;
+        metrics.recordStage(PipelineMetrics.Stage.PAGINATE, System.nanoTime() - started);
+        metrics.chaptersUnsplittable(paginator.unsplittableChapters() - unsplittable);
+        metrics.bookPaginated(paginator.pages().size());
     }
 
-    private int getMinPageLength(String chapter) {
-        // Check if there's clear division: parse and see if multiple children
-        Document doc = Jsoup.parseBodyFragment(chapter);
-        Elements children = doc.body().children();
-        if (children.size() <= 1) {
-            return 500;  // No clear division - increase min to 500
-        } else {
-            return 60;  // Default min
+    /**
+     * Moves a completely paginated book from its checkpoint to the cache and its layout, if it
+     * was collected, to the layout cache. The book is written to the page store in the
+     * background, so the checkpoint lock held by the caller is not kept for the disk.
+     */
+    private void publish(PageCursor cursor) {
+        if (cursor.layout() != null) {
+            layoutCache.put(cursor.key(), cursor.layout());
+        }
+        List<String> pages = cursor.pages();
+        if (!pages.isEmpty()) {
+            int[] chapterStarts = cursor.paginator().chapterStarts();
+            pageCache.put(cursor.key(), pages, chapterStarts);
+            storeWriter.write(cursor.key(), pages, chapterStarts);
         }
+        pageCursors.remove(cursor.key());
     }
 
-    private boolean isPrimarilyHeader(String chapter) {
-        Document doc = Jsoup.parseBodyFragment(chapter);
-        Elements children = doc.body().children();
-        if (children.size() <= 2) {
-            Element first = children.first();
-            if (first != null) {
-                String tag = first.tagName();
-                String className = first.attr("class");
-                String id = first.attr("id");
-                String text = first.text().trim();
-                return tag.matches("h[1-6]") ||
-                        (tag.equals("div") && className.matches(".*(title|head).*")) ||
-                        (!id.isEmpty() && id.matches(".*toc.*")) ||
-                        (text.length() < 200 && children.size() == 1);
+    /**
+     * Cleans raw chapters from EPUB in parallel on the shared cleaning pool.
+     * Spine order is kept and a failing chapter is dropped without affecting the others.
+     *
+     * @param rawChapters List of raw HTML strings.
+     * @return List of cleaned chapters with their block models.
+     */
+    public List<Chapter> cleanPages(List<String> rawChapters) {
+        List<Chapter> cleanedChapters = new ArrayList<>();
+
+        for (Chapter cleaned : cleanPool.map(rawChapters, this::cleanChapter)) {
+            if (cleaned != null) {
+                cleanedChapters.add(cleaned);
             }
         }
-        return false;
+
+        return cleanedChapters;
     }
 
-    private List<String> splitLargeChapter(String chapter) {
-        List<String> subPages = new ArrayList<>();
+    /**
+     * Cleans a single chapter and builds its block model, isolating failures.
+     * The cleaned HTML is parsed here once; pagination works on the model only.
+     * Chapters whose raw text has been cleaned before, in any book, come from the chapter cache.
+     *
+     * @return Cleaned chapter or null if the chapter is blank or could not be cleaned.
+     */
+    private Chapter cleanChapter(int index, String raw) {
+        try {
+            ChapterCache.Key key = chapterCache.keyOf(raw);
+            Chapter cached = chapterCache.get(key);
+            if (cached != null) {
+                metrics.chapterReused();
+                return cached;
+            }
 
-        // Parse fragment for efficiency
-        Document doc = Jsoup.parseBodyFragment(chapter);
-        Elements children = doc.body().children();
+            if (logger.isDebugEnabled()) {
+                logger.debug("Cleaning chapter #{}", index);
+            }
+            String cleaned = cleanChapter(raw);
+            if (!cleaned.isBlank()) {
+                Chapter chapter = Chapter.parse(cleaned);
+                chapterCache.put(key, chapter);
+                return chapter;
+            }
+            logger.warn("Cleaned chapter #{} is blank", index);
+            metrics.chapterBlank();
+        } catch (Exception e) {
+            logger.error("Error cleaning chapter #{}: {}", index, e.getMessage());
+            metrics.chapterFailed();
+        }
+        return null;
+    }
 
-        StringBuilder current = new StringBuilder();
+    private String cleanChapter(String html) {
+        // Remove BOM
+        html = HtmlNormalizer.stripBom(html);
 
-        for (Element el : children) {
-            String subBlock = el.outerHtml();
+        // Extract body content
+        String body = HtmlNormalizer.extractBody(html);
+        if (body == null) {
+            body = html;
+            logger.warn("Body not found; using full content");
+        }
 
-            if (current.length() + subBlock.length() > bookCfg.LIBRARY_MAX_LENGTH) {
-                String candidate = current.toString().trim();
-                if (!candidate.isEmpty()) {
-                    subPages.add(candidate);
-                }
-                current = new StringBuilder();
-            }
+        // Clean with JSoup
+        return cleanHtml(body);
+    }
+
+    private String cleanHtml(String html) {
+        Document doc = Jsoup.parse(html);
 
-            current.append(subBlock);
+        // Remove unwanted elements
+        if (!bookCfg.CLEAN_REMOVE_SELECTORS.isBlank()) {
+            doc.select(bookCfg.CLEAN_REMOVE_SELECTORS).remove();
         }
 
-        if (!current.isEmpty()) {
-            String candidate = current.toString().trim();
-            if (!candidate.isEmpty()) {
-                subPages.add(candidate);
-            }
+        // Unwrap inline elements
+        if (!bookCfg.CLEAN_UNWRAP_SELECTORS.isBlank()) {
+            doc.select(bookCfg.CLEAN_UNWRAP_SELECTORS).unwrap();
         }
 
-        // Fallback for unsplittable large elements
-        if (subPages.isEmpty() && !chapter.trim().isEmpty()) {
-            subPages.add(chapter.trim());
-            logger.warn("Added unsplittable large chapter (length: {})", chapter.length());
+        // Remove style attributes from all elements
+        doc.select("[style]").removeAttr("style");
+
+        // Remove Calibre-specific navigation (TOC-like ul and hr)
+        doc.select("ul[class^=calibre], hr[class^=calibre]").remove();
+
+        // Remove duplicate headings (e.g., repeated titles)
+        removeDuplicateHeadings(doc);
+
+        // Remove empty divs and ps (including those with &nbsp; after cleanup)
+        doc.select("div:empty, p:empty").remove();
+
+        // Normalize whitespace and remove excessive empty lines
+        String cleaned = HtmlNormalizer.normalize(doc.body().html());
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Cleaned HTML length: {}", cleaned.length());
         }
+        return cleaned;
+    }
 
-        // Post-process to merge standalone headers
-        for (int i = 0; i < subPages.size() - 1; i++) {
-            if (isPrimarilyHeader(subPages.get(i))) {
-                subPages.set(i, subPages.get(i) + subPages.get(i + 1));
-                subPages.remove(i + 1);
-                i--;  // Re-check the new merged subpage if needed
+    private void removeDuplicateHeadings(Document doc) {
+        Elements headings = doc.select("h1, h2, h3, h4, h5, h6");
+        String prevText = null;
+        for (Element heading : headings) {
+            String text = heading.text().trim();
+            if (text.equals(prevText)) {
+                heading.remove();
+            } else {
+                prevText = text;
             }
         }
-
-        return subPages;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,277 @@
+package ru.ai.libraryapi;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Catalog of the EPUB files in the library directory.
+ * <p>
+ * After startup the library is scanned on a background thread: every EPUB is opened to read its
+ * OPF metadata and spine size, without reading any chapter and without going through the caches
+ * of {@link EpubExtractor}. The same thread then keeps the catalog current with a
+ * {@link WatchService} over the library and all its subdirectories. A symbolic link as the
+ * library directory is resolved first. Pages of the catalog are cut from a snapshot sorted by
+ * path, which is rebuilt on the first request after a change.
+ * The catalog also counts requests per book, so the most read books can be paginated ahead.
+ */
+@Component
+public class Catalog {
+    private static final Logger logger = LoggerFactory.getLogger(Catalog.class);
+
+    private static final int MAX_PAGE_SIZE = 500;
+
+    private final BookCfg bookCfg;
+    private final EpubExtractor epubExtractor;
+
+    private final Map<String, CatalogEntry> entries = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+
+    // Entries sorted by path; rebuilt by list() when a change has marked it stale
+    private volatile List<CatalogEntry> sorted = List.of();
+    private volatile boolean stale;
+
+    private volatile boolean complete;
+    private Thread watcher;
+
+    public Catalog(BookCfg bookCfg, EpubExtractor epubExtractor) {
+        this.bookCfg = bookCfg;
+        this.epubExtractor = epubExtractor;
+    }
+
+    /**
+     * Starts the scan once the application is ready to serve requests.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!bookCfg.CATALOG_ENABLED) {
+            logger.info("Library catalog disabled");
+            return;
+        }
+        watcher = Thread.ofPlatform().name("library-catalog").daemon().start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (watcher != null) {
+            watcher.interrupt();
+        }
+    }
+
+    /**
+     * Returns one page of the catalog, ordered by path.
+     *
+     * @param page Page number, starting from 0.
+     * @param size Number of books per page, clamped to 1..500.
+     * @return Page of the catalog.
+     */
+    public CatalogDTO list(int page, int size) {
+        int safePage = Math.max(page, 0);
+        int safeSize = Math.clamp(size, 1, MAX_PAGE_SIZE);
+
+        List<CatalogEntry> snapshot = snapshot();
+        int from = (int) Math.min((long) safePage * safeSize, snapshot.size());
+        int to = Math.min(from + safeSize, snapshot.size());
+
+        return new CatalogDTO(List.copyOf(snapshot.subList(from, to)), safePage, safeSize, snapshot.size(), complete);
+    }
+
+    private List<CatalogEntry> snapshot() {
+        if (!stale) {
+            return sorted;
+        }
+        synchronized (this) {
+            if (stale) {
+                // Cleared before reading the entries: a change made meanwhile marks it stale again
+                stale = false;
+                sorted = entries.values().stream()
+                        .sorted(Comparator.comparing(CatalogEntry::path))
+                        .toList();
+            }
+            return sorted;
+        }
+    }
+
+    /**
+     * Counts a request for a book. Paths that are not in the catalog are ignored.
+     *
+     * @param path Path relative to the library.
+     */
+    public void recordRequest(String path) {
+        if (entries.containsKey(path)) {
+            requests.computeIfAbsent(path, p -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * @param limit Maximum number of books.
+     * @return Paths of the most requested books still in the catalog, most requested first.
+     */
+    public List<String> mostRequested(int limit) {
+        return requests.entrySet().stream()
+                .filter(e -> entries.containsKey(e.getKey()))
+                .sorted(Comparator.comparingLong((Map.Entry<String, LongAdder> e) -> e.getValue().sum()).reversed())
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    private void run() {
+        Path root = libraryRoot();
+        if (root == null) {
+            logger.warn("Library directory not found, catalog is empty: {}", bookCfg.getLibraryPath());
+            complete = true;
+            return;
+        }
+
+        try (WatchService watchService = root.getFileSystem().newWatchService()) {
+            Map<WatchKey, Path> dirs = new HashMap<>();
+            scan(root, root, watchService, dirs);
+            complete = true;
+            logger.info("Library catalog scanned: {} books", entries.size());
+
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                Path dir = dirs.get(key);
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        logger.warn("Library watch overflow, rescanning");
+                        if (entries.keySet().removeIf(path -> !Files.isRegularFile(root.resolve(path)))) {
+                            stale = true;
+                        }
+                        scan(root, root, watchService, dirs);
+                        continue;
+                    }
+                    if (dir == null) {
+                        continue;
+                    }
+
+                    Path child = dir.resolve((Path) event.context());
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                        remove(root, child);
+                    } else if (Files.isDirectory(child)) {
+                        scan(root, child, watchService, dirs);
+                    } else {
+                        update(root, child);
+                    }
+                }
+
+                if (!key.reset()) {
+                    dirs.remove(key);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.error("Library catalog stopped: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return Real path of the library directory, with symbolic links resolved, or null if
+     *         there is no such directory.
+     */
+    private Path libraryRoot() {
+        try {
+            Path root = Paths.get(bookCfg.getLibraryPath()).toRealPath();
+            return Files.isDirectory(root) ? root : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Registers a directory tree with the watch service and adds every EPUB in it.
+     */
+    private void scan(Path root, Path start, WatchService watchService, Map<WatchKey, Path> dirs) {
+        try (Stream<Path> paths = Files.walk(start)) {
+            paths.forEach(path -> {
+                if (Files.isDirectory(path)) {
+                    try {
+                        dirs.put(path.register(watchService,
+                                StandardWatchEventKinds.ENTRY_CREATE,
+                                StandardWatchEventKinds.ENTRY_DELETE,
+                                StandardWatchEventKinds.ENTRY_MODIFY), path);
+                    } catch (IOException e) {
+                        logger.warn("Cannot watch directory {}: {}", path, e.getMessage());
+                    }
+                } else {
+                    update(root, path);
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Cannot scan {}: {}", start, e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the metadata of an EPUB unless the catalog already has its current version.
+     */
+    private void update(Path root, Path file) {
+        if (!file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".epub")) {
+            return;
+        }
+
+        String path = relativePath(root, file);
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            if (!attrs.isRegularFile()) {
+                return;
+            }
+            long modified = attrs.lastModifiedTime().toMillis();
+
+            CatalogEntry known = entries.get(path);
+            if (known != null && known.modified() == modified && known.size() == attrs.size()) {
+                return;
+            }
+
+            EpubExtractor.Metadata metadata = epubExtractor.readMetadata(file.toString());
+            entries.put(path, new CatalogEntry(path, metadata.title(), metadata.author(), metadata.spineSize(),
+                    attrs.size(), modified));
+            stale = true;
+        } catch (Exception e) {
+            // Also happens while a file is still being copied; the next modify event retries
+            logger.warn("Cannot read EPUB metadata {}: {}", path, e.getMessage());
+            if (entries.remove(path) != null) {
+                stale = true;
+            }
+        }
+    }
+
+    private void remove(Path root, Path child) {
+        String path = relativePath(root, child);
+        if (entries.keySet().removeIf(p -> p.equals(path) || p.startsWith(path + "/"))) {
+            stale = true;
+        }
+        requests.keySet().removeIf(p -> p.equals(path) || p.startsWith(path + "/"));
+    }
+
+    private static String relativePath(Path root, Path file) {
+        return root.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+}
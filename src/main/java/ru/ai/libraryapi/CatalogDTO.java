@@ -0,0 +1,18 @@
+package ru.ai.libraryapi;
+
+import java.util.List;
+
+/**
+ * DTO для ответа со страницей каталога библиотеки.
+ *
+ * Книги отсортированы по пути. Пока начальное сканирование библиотеки
+ * не завершено, {@code complete} равен false и каталог может быть неполным.
+ */
+public record CatalogDTO(
+        List<CatalogEntry> books,
+        int page,
+        int size,
+        int total,
+        boolean complete
+) {
+}
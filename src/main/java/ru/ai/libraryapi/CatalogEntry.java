@@ -0,0 +1,21 @@
+package ru.ai.libraryapi;
+
+/**
+ * Книга в каталоге библиотеки.
+ *
+ * @param path      Путь к EPUB файлу относительно библиотеки, как в {@link ReqDTO#path()}.
+ * @param title     Название из метаданных OPF или null.
+ * @param author    Автор из метаданных OPF или null.
+ * @param spineSize Число глав в порядке чтения.
+ * @param size      Размер файла в байтах.
+ * @param modified  Время последнего изменения файла в миллисекундах.
+ */
+public record CatalogEntry(
+        String path,
+        String title,
+        String author,
+        int spineSize,
+        long size,
+        long modified
+) {
+}
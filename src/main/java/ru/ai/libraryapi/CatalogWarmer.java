@@ -0,0 +1,104 @@
+package ru.ai.libraryapi;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically paginates the most requested books of the catalog in the background,
+ * so their pages are already in the page cache or the page store when readers open them.
+ * <p>
+ * At most {@code app.library.catalog.warm-concurrency} books are paginated at a time, each on
+ * a warm-up thread of its own that reads and cleans one chapter at a time, so warm-up never
+ * takes more cores than that from requests. It runs only when there is somewhere to keep
+ * the result.
+ */
+@Component
+public class CatalogWarmer {
+    private static final Logger logger = LoggerFactory.getLogger(CatalogWarmer.class);
+
+    private final BookCfg bookCfg;
+    private final Catalog catalog;
+    private final BookServ bookServ;
+    private final PageStore pageStore;
+
+    private ScheduledExecutorService scheduler;
+    private ExecutorService workers;
+
+    public CatalogWarmer(BookCfg bookCfg, Catalog catalog, BookServ bookServ, PageStore pageStore) {
+        this.bookCfg = bookCfg;
+        this.catalog = catalog;
+        this.bookServ = bookServ;
+        this.pageStore = pageStore;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!bookCfg.CATALOG_ENABLED || bookCfg.CATALOG_WARM_TOP <= 0) {
+            return;
+        }
+        if (bookCfg.CACHE_MAX_BYTES <= 0 && !pageStore.persists()) {
+            logger.warn("Catalog warm-up needs the page cache or the page store, skipping");
+            return;
+        }
+
+        int concurrency = Math.max(bookCfg.CATALOG_WARM_CONCURRENCY, 1);
+        workers = Executors.newFixedThreadPool(concurrency, Thread.ofPlatform()
+                .name("catalog-warmer-", 0)
+                .daemon()
+                .factory());
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("catalog-warmer")
+                .daemon()
+                .factory());
+        int interval = Math.max(bookCfg.CATALOG_WARM_INTERVAL_MINUTES, 1);
+        scheduler.scheduleWithFixedDelay(this::warm, interval, interval, TimeUnit.MINUTES);
+        logger.info("Catalog warm-up of top {} books every {} min, {} at a time",
+                bookCfg.CATALOG_WARM_TOP, interval, concurrency);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Warms the current top books and returns once all of them are done, so that rounds
+     * never overlap.
+     */
+    private void warm() {
+        List<Callable<Void>> books = new ArrayList<>();
+        for (String path : catalog.mostRequested(bookCfg.CATALOG_WARM_TOP)) {
+            books.add(() -> {
+                try {
+                    bookServ.preload(path);
+                } catch (Exception e) {
+                    logger.warn("Catalog warm-up failed for {}: {}", path, e.getMessage());
+                }
+                return null;
+            });
+        }
+        try {
+            workers.invokeAll(books);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
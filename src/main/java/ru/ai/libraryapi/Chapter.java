@@ -0,0 +1,197 @@
+package ru.ai.libraryapi;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cleaned chapter together with its block-level model.
+ * <p>
+ * The chapter HTML is parsed once and described as the list of its top-level elements
+ * ({@link Block}s). Header detection, minimal page length and splitting of large chapters
+ * work on this model and give the same answers as re-parsing the HTML each time.
+ * <p>
+ * A merged chapter is {@code <div>headers</div>} followed by a regular chapter; its wrapper
+ * block is parsed lazily, only when its serialized form or text is actually needed.
+ */
+public final class Chapter {
+
+    /**
+     * Top-level element of a chapter.
+     *
+     * @param tag        Tag name.
+     * @param className  Value of the class attribute.
+     * @param id         Value of the id attribute.
+     * @param textLength Length of the trimmed element text.
+     * @param html       Serialized element (outer HTML).
+     */
+    public record Block(String tag, String className, String id, int textLength, String html) {
+
+        static Block of(Element element) {
+            return new Block(element.tagName(), element.attr("class"), element.attr("id"),
+                    element.text().trim().length(), element.outerHtml());
+        }
+
+        /**
+         * Whether a fragment starting with this block looks like a standalone header.
+         *
+         * @param siblings Number of top-level elements in the fragment.
+         */
+        boolean startsHeader(int siblings) {
+            return tag.matches("h[1-6]") ||
+                    (tag.equals("div") && className.matches(".*(title|head).*")) ||
+                    (!id.isEmpty() && id.matches(".*toc.*")) ||
+                    (textLength < 200 && siblings == 1);
+        }
+    }
+
+    // Approximate per-block overhead: record, strings and list slot
+    private static final int BLOCK_OVERHEAD = 96;
+
+    private final String html;
+    private final List<Block> blocks;
+    private final String headerHtml;
+
+    private Block headerBlock;
+    private Boolean primarilyHeader;
+
+    private Chapter(String html, List<Block> blocks, String headerHtml) {
+        this.html = html;
+        this.blocks = blocks;
+        this.headerHtml = headerHtml;
+    }
+
+    /**
+     * Builds the model of a cleaned chapter.
+     *
+     * @param html Cleaned chapter HTML.
+     * @return Chapter with its top-level blocks.
+     */
+    public static Chapter parse(String html) {
+        Elements children = Jsoup.parseBodyFragment(html).body().children();
+        List<Block> blocks = new ArrayList<>(children.size());
+        for (Element child : children) {
+            blocks.add(Block.of(child));
+        }
+        return new Chapter(html, List.copyOf(blocks), null);
+    }
+
+    /**
+     * Wraps accumulated header chapters into a div and prepends them to a chapter.
+     *
+     * @param headerHtml Concatenated HTML of the header chapters.
+     * @param chapter    Chapter following the headers, or null at the end of the book.
+     * @return Merged chapter.
+     */
+    public static Chapter merge(String headerHtml, Chapter chapter) {
+        String wrapped = "<div>" + headerHtml + "</div>";
+        if (chapter == null) {
+            return new Chapter(wrapped, List.of(), headerHtml);
+        }
+        return new Chapter(wrapped + chapter.html, chapter.blocks, headerHtml);
+    }
+
+    /**
+     * @return Chapter HTML.
+     */
+    public String html() {
+        return html;
+    }
+
+    /**
+     * @return Length of the chapter HTML.
+     */
+    public int length() {
+        return html.length();
+    }
+
+    /**
+     * @return Approximate heap size of the chapter and its blocks in bytes, for cache weighing.
+     */
+    public long footprint() {
+        // Worst case UTF-16 storage of the chapter and of its blocks
+        long bytes = 2L * html.length();
+        for (Block block : blocks) {
+            bytes += BLOCK_OVERHEAD + 2L * block.html().length();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return Number of top-level elements.
+     */
+    public int blockCount() {
+        return blocks.size() + (headerHtml != null ? 1 : 0);
+    }
+
+    /**
+     * @param index Position among top-level elements.
+     * @return Block at the position.
+     */
+    public Block block(int index) {
+        if (headerHtml == null) {
+            return blocks.get(index);
+        }
+        return index == 0 ? headerBlock() : blocks.get(index - 1);
+    }
+
+    /**
+     * Whether the chapter is only a title: a heading, a title/head div, a TOC anchor
+     * or a single short element.
+     */
+    public boolean isPrimarilyHeader() {
+        if (primarilyHeader == null) {
+            primarilyHeader = detectHeader();
+        }
+        return primarilyHeader;
+    }
+
+    /**
+     * Minimal length of a standalone page: chapters without a clear division into
+     * several elements need more content before they get a page of their own.
+     */
+    public int minPageLength() {
+        if (blockCount() <= 1) {
+            return 500;  // No clear division - increase min to 500
+        } else {
+            return 60;  // Default min
+        }
+    }
+
+    /**
+     * Whether the blocks in {@code [from, to)}, taken as a fragment of their own, are only a title.
+     *
+     * @param from First block (inclusive).
+     * @param to   Last block (exclusive).
+     */
+    public boolean isPrimarilyHeader(int from, int to) {
+        int children = to - from;
+        if (children <= 0 || children > 2) {
+            return false;
+        }
+        return block(from).startsHeader(children);
+    }
+
+    private boolean detectHeader() {
+        int children = blockCount();
+        if (children == 0 || children > 2) {
+            return false;
+        }
+        if (headerHtml != null) {
+            // The wrapper div has neither class nor id: only a lone short wrapper qualifies
+            return children == 1 && headerBlock().textLength() < 200;
+        }
+        return blocks.get(0).startsHeader(children);
+    }
+
+    private Block headerBlock() {
+        if (headerBlock == null) {
+            Element wrapper = Jsoup.parseBodyFragment("<div>" + headerHtml + "</div>").body().child(0);
+            headerBlock = Block.of(wrapper);
+        }
+        return headerBlock;
+    }
+}
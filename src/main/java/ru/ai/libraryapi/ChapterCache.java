@@ -0,0 +1,109 @@
+package ru.ai.libraryapi;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * In-memory cache of cleaned chapters addressed by the content of their raw spine entry.
+ * <p>
+ * Re-issued editions and bundles share most of their chapter XHTML, so the same raw text is
+ * cleaned once, whatever book, file version or page size it is read for. A small edit of a book
+ * changes the hashes of the edited chapters only; the rest are still found here.
+ * <p>
+ * Keys are SHA-256 digests of the raw text together with its length, as for the page index and
+ * ETags, so a chapter of one book is never served for another one. Hashing is still far cheaper
+ * than cleaning. Blank and failing chapters are not cached.
+ * Entries are weighted by the approximate heap size of their HTML.
+ */
+@Component
+public class ChapterCache {
+    private static final Logger logger = LoggerFactory.getLogger(ChapterCache.class);
+
+    // Characters are fed to the digest in chunks of this many UTF-16 code units
+    private static final int CHUNK_CHARS = 4096;
+
+    /**
+     * Content address of a raw chapter.
+     *
+     * @param h0     Bits 0-63 of the SHA-256 digest.
+     * @param h1     Bits 64-127 of the digest.
+     * @param h2     Bits 128-191 of the digest.
+     * @param h3     Bits 192-255 of the digest.
+     * @param length Length of the raw text.
+     */
+    public record Key(long h0, long h1, long h2, long h3, int length) {
+    }
+
+    private final Cache<Key, Chapter> cache;
+
+    public ChapterCache(BookCfg bookCfg) {
+        if (bookCfg.CHAPTER_CACHE_MAX_BYTES > 0) {
+            this.cache = Caffeine.newBuilder()
+                    .maximumWeight(bookCfg.CHAPTER_CACHE_MAX_BYTES)
+                    .weigher((Key key, Chapter chapter) -> (int) Math.min(chapter.footprint(), Integer.MAX_VALUE))
+                    .build();
+            logger.info("Chapter cache enabled, budget {} bytes", bookCfg.CHAPTER_CACHE_MAX_BYTES);
+        } else {
+            this.cache = null;
+            logger.info("Chapter cache disabled");
+        }
+    }
+
+    /**
+     * Hashes a raw chapter.
+     *
+     * @param raw Raw chapter text as read from the archive.
+     * @return Content address, or null if the cache is disabled.
+     */
+    public Key keyOf(String raw) {
+        if (cache == null) {
+            return null;
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+
+        // UTF-16 code units, so that the digest covers the text exactly without encoding it whole
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_CHARS * Character.BYTES);
+        for (int start = 0; start < raw.length(); start += CHUNK_CHARS) {
+            int end = Math.min(start + CHUNK_CHARS, raw.length());
+            chunk.clear();
+            for (int i = start; i < end; i++) {
+                chunk.putChar(raw.charAt(i));
+            }
+            digest.update(chunk.array(), 0, chunk.position());
+        }
+
+        ByteBuffer hash = ByteBuffer.wrap(digest.digest());
+        return new Key(hash.getLong(), hash.getLong(), hash.getLong(), hash.getLong(), raw.length());
+    }
+
+    /**
+     * @param key Content address from {@link #keyOf(String)}, may be null.
+     * @return Cleaned chapter or null if it is not cached.
+     */
+    public Chapter get(Key key) {
+        return key != null ? cache.getIfPresent(key) : null;
+    }
+
+    /**
+     * @param key     Content address from {@link #keyOf(String)}, may be null.
+     * @param chapter Cleaned chapter.
+     */
+    public void put(Key key, Chapter chapter) {
+        if (key != null) {
+            cache.put(key, chapter);
+        }
+    }
+}
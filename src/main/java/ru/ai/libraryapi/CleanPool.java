@@ -0,0 +1,88 @@
+package ru.ai.libraryapi;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+
+/**
+ * Shared worker pool for cleaning chapters in parallel.
+ * <p>
+ * The pool is bounded by the configured parallelism for the whole service: concurrent requests
+ * queue their chapters on the same workers instead of each starting threads of its own, so
+ * a burst of large books cannot oversubscribe the CPU. With parallelism 1 work runs inline.
+ */
+@Component
+public class CleanPool {
+    private static final Logger logger = LoggerFactory.getLogger(CleanPool.class);
+
+    private final int parallelism;
+    private final ForkJoinPool pool;
+
+    public CleanPool(BookCfg bookCfg) {
+        this.parallelism = bookCfg.CLEAN_PARALLELISM > 0
+                ? bookCfg.CLEAN_PARALLELISM
+                : Runtime.getRuntime().availableProcessors();
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        logger.info("Chapter cleaning parallelism: {}", parallelism);
+    }
+
+    /**
+     * @return Number of items worth submitting at once to keep every worker busy.
+     */
+    public int parallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Applies a function to every item, preserving the order of the results.
+     *
+     * @param items    Items to process.
+     * @param function Function receiving the position and the item; must handle its own errors.
+     * @return Results in the order of the items.
+     */
+    public <T, R> List<R> map(List<T> items, BiFunction<Integer, T, R> function) {
+        List<R> results = new ArrayList<>(items.size());
+
+        if (pool == null || items.size() <= 1) {
+            for (int i = 0; i < items.size(); i++) {
+                results.add(function.apply(i, items.get(i)));
+            }
+            return results;
+        }
+
+        List<Callable<R>> tasks = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            int index = i;
+            tasks.add(() -> function.apply(index, items.get(index)));
+        }
+
+        try {
+            for (Future<R> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while cleaning chapters", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Chapter cleaning failed", e.getCause());
+        }
+        return results;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+}
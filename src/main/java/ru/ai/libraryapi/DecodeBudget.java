@@ -0,0 +1,73 @@
+package ru.ai.libraryapi;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Service-wide budget of decoded chapter text being cleaned at the same time.
+ * <p>
+ * Raw chapters, their Jsoup documents and block models are the largest transient allocations of
+ * the pipeline. Every batch reserves the uncompressed size of its chapters before reading them and
+ * returns it once they are paginated, so concurrent requests for large books wait for each other
+ * instead of adding up on the heap. A batch larger than the whole budget reserves all of it.
+ */
+@Component
+public class DecodeBudget {
+    private static final Logger logger = LoggerFactory.getLogger(DecodeBudget.class);
+
+    // Permits are counted in KiB so that budgets above 2 GB fit into a semaphore
+    private static final int UNIT = 1024;
+
+    private final Semaphore permits;
+    private final int capacity;
+
+    public DecodeBudget(BookCfg bookCfg) {
+        if (bookCfg.MAX_INFLIGHT_BYTES > 0) {
+            this.capacity = Math.clamp(bookCfg.MAX_INFLIGHT_BYTES / UNIT, 1, Integer.MAX_VALUE);
+            this.permits = new Semaphore(capacity, true);
+            logger.info("Decode budget {} bytes", bookCfg.MAX_INFLIGHT_BYTES);
+        } else {
+            this.capacity = 0;
+            this.permits = null;
+            logger.info("Decode budget disabled");
+        }
+    }
+
+    /**
+     * @return Size of the whole budget in bytes, or {@link Long#MAX_VALUE} if it is disabled.
+     */
+    public long capacity() {
+        return permits != null ? (long) capacity * UNIT : Long.MAX_VALUE;
+    }
+
+    /**
+     * Waits until the given amount of decoded text can be held and reserves it.
+     *
+     * @param bytes Uncompressed size of the chapters about to be read.
+     * @return Reservation to pass to {@link #release(int)}.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public int acquire(long bytes) throws InterruptedException {
+        if (permits == null) {
+            return 0;
+        }
+        int units = Math.clamp((bytes + UNIT - 1) / UNIT, 1, capacity);
+        permits.acquire(units);
+        return units;
+    }
+
+    /**
+     * Returns a reservation.
+     *
+     * @param reservation Value returned by {@link #acquire(long)}.
+     */
+    public void release(int reservation) {
+        if (permits != null && reservation > 0) {
+            permits.release(reservation);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package ru.ai.libraryapi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Random access to the entries of an EPUB container.
+ */
+interface EpubArchive extends Closeable {
+
+    /**
+     * @param name Entry name.
+     * @return Uncompressed size of the entry or -1 if there is no such entry.
+     */
+    long size(String name);
+
+    /**
+     * Reads an entry as UTF-8 text.
+     *
+     * @param name Entry name.
+     * @return Entry content or null if there is no such entry.
+     * @throws IOException If the entry cannot be read.
+     */
+    String readText(String name) throws IOException;
+
+    /**
+     * Opens an entry as a stream.
+     *
+     * @param name Entry name.
+     * @return Stream of the entry content or null if there is no such entry.
+     * @throws IOException If the entry cannot be read.
+     */
+    InputStream open(String name) throws IOException;
+}
@@ -0,0 +1,110 @@
+package ru.ai.libraryapi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Opened EPUB archive with a resolved spine. Chapters are read lazily in any order,
+ * which lets the pagination pipeline pull only as many of them as it needs.
+ */
+public class EpubBook implements Closeable {
+    private final EpubArchive archive;
+    private final List<String> spinePaths;
+    private final String title;
+    private final String author;
+    private final List<TocEntry> toc;
+    private final long maxEntryBytes;
+
+    private long bytesRead;
+
+    /**
+     * Entry of the table of contents.
+     *
+     * @param title   Label of the entry.
+     * @param depth   Nesting level, 0 for top-level entries.
+     * @param chapter Position in the spine of the document the entry points to.
+     */
+    public record TocEntry(String title, int depth, int chapter) {
+    }
+
+    EpubBook(EpubArchive archive, List<String> spinePaths, String title, String author, List<TocEntry> toc,
+             long maxEntryBytes) {
+        this.archive = archive;
+        this.spinePaths = List.copyOf(spinePaths);
+        this.title = title;
+        this.author = author;
+        this.toc = List.copyOf(toc);
+        this.maxEntryBytes = maxEntryBytes;
+    }
+
+    /**
+     * @return Title from the OPF metadata ({@code dc:title}) or null if absent.
+     */
+    public String title() {
+        return title;
+    }
+
+    /**
+     * @return First author from the OPF metadata ({@code dc:creator}) or null if absent.
+     */
+    public String author() {
+        return author;
+    }
+
+    /**
+     * @return Table of contents from the EPUB 3 navigation document or the EPUB 2 NCX, in reading
+     * order; entries pointing outside the spine are omitted. Empty if the book has neither.
+     */
+    public List<TocEntry> toc() {
+        return toc;
+    }
+
+    /**
+     * @return Number of spine items that reference a manifest entry.
+     */
+    public int spineSize() {
+        return spinePaths.size();
+    }
+
+    /**
+     * @param index Position in the spine.
+     * @return Uncompressed size of the spine item or -1 if the archive has no such entry.
+     */
+    public long chapterSize(int index) {
+        return archive.size(spinePaths.get(index));
+    }
+
+    /**
+     * Reads a spine item as UTF-8 text.
+     *
+     * @param index Position in the spine.
+     * @return Chapter content or null if the archive has no such entry.
+     * @throws SizeLimitException If the entry is larger than the configured limit.
+     * @throws IOException        If the entry cannot be read.
+     */
+    public String readChapter(int index) throws IOException {
+        String path = spinePaths.get(index);
+        long size = archive.size(path);
+        if (maxEntryBytes > 0 && size > maxEntryBytes) {
+            throw new SizeLimitException("Chapter " + path + " is " + size + " bytes, limit " + maxEntryBytes);
+        }
+        String text = archive.readText(path);
+        if (text != null) {
+            bytesRead += archive.size(path);
+        }
+        return text;
+    }
+
+    /**
+     * @return Uncompressed bytes of all chapters read so far.
+     */
+    public long bytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        archive.close();
+    }
+}
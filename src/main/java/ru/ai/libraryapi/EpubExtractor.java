@@ -1,63 +1,94 @@
 package ru.ai.libraryapi;
 
 import java.io.*;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 import java.util.zip.*;
-import javax.xml.parsers.*;
+import javax.xml.stream.*;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
-import org.w3c.dom.*;
+import ru.ai.libraryapi.config.BookCfg;
 
 @Service
 public class EpubExtractor {
     private static final Logger logger = LoggerFactory.getLogger(EpubExtractor.class);
 
-    public List<String> extractChaptersInReadingOrder(String epubPath) {
-        try (ZipFile zip = new ZipFile(epubPath)) {
-            // 1. container.xml
-            ZipEntry containerEntry = zip.getEntry("META-INF/container.xml");
-            Document containerXml = parseXml(zip.getInputStream(containerEntry));
-            String opfPath = containerXml.getElementsByTagName("rootfile")
-                    .item(0)
-                    .getAttributes()
-                    .getNamedItem("full-path")
-                    .getNodeValue();
-
-            // 2. content.opf
-            ZipEntry opfEntry = zip.getEntry(opfPath);
-            Document opf = parseXml(zip.getInputStream(opfEntry));
-
-            Map<String, String> manifest = new HashMap<>();
-
-            NodeList items = opf.getElementsByTagName("item");
-            for (int i = 0; i < items.getLength(); i++) {
-                Element item = (Element) items.item(i);
-                manifest.put(item.getAttribute("id"), item.getAttribute("href"));
-            }
+    private static final String DC_NAMESPACE = "http://purl.org/dc/elements/1.1/";
+    private static final String NCX_MEDIA_TYPE = "application/x-dtbncx+xml";
 
-            List<String> chapters = new ArrayList<>();
+    private final XMLInputFactory xmlInputFactory;
+    private final long maxEntryBytes;
+    private final long maxBookBytes;
+    private final Cache<FileKey, PackageDescriptor> packages;
+    private final Cache<FileKey, MappedZip> archives;
 
-            NodeList spine = opf.getElementsByTagName("itemref");
-            String basePath = opfPath.substring(0, opfPath.lastIndexOf("/") + 1);
+    /**
+     * Version of an EPUB file on disk.
+     */
+    private record FileKey(String path, long modified, long size) {
+    }
 
-            for (int i = 0; i < spine.getLength(); i++) {
-                Element itemref = (Element) spine.item(i);
-                String idref = itemref.getAttribute("idref");
-                String href = manifest.get(idref);
+    /**
+     * What the pipeline needs from {@code container.xml} and the OPF package document.
+     *
+     * @param spinePaths Archive paths of the spine items in reading order.
+     * @param title      Title ({@code dc:title}) or null.
+     * @param author     First author ({@code dc:creator}) or null.
+     * @param toc        Table of contents, possibly empty.
+     */
+    private record PackageDescriptor(List<String> spinePaths, String title, String author,
+                                     List<EpubBook.TocEntry> toc) {
+    }
 
-                if (href == null) continue;
+    /**
+     * Metadata of an EPUB file as listed in the library catalog.
+     *
+     * @param title     Title ({@code dc:title}) or null.
+     * @param author    First author ({@code dc:creator}) or null.
+     * @param spineSize Number of spine items.
+     */
+    public record Metadata(String title, String author, int spineSize) {
+    }
 
-                String fullPath = basePath + href;
-                ZipEntry chapterEntry = zip.getEntry(fullPath);
+    public EpubExtractor(BookCfg bookCfg) {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        this.xmlInputFactory = factory;
+        this.maxEntryBytes = bookCfg.MAX_ENTRY_BYTES;
+        this.maxBookBytes = bookCfg.MAX_BOOK_BYTES;
 
-                if (chapterEntry != null) {
-                    InputStream is = zip.getInputStream(chapterEntry);
-                    String text = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        this.packages = Caffeine.newBuilder()
+                .maximumSize(Math.max(bookCfg.PACKAGE_CACHE_MAX_ENTRIES, 0))
+                .build();
+        this.archives = Caffeine.newBuilder()
+                .maximumSize(Math.max(bookCfg.ARCHIVE_CACHE_MAX_ENTRIES, 0))
+                .build();
+    }
+
+    public List<String> extractChaptersInReadingOrder(String epubPath) {
+        try (EpubBook book = open(epubPath)) {
+            List<String> chapters = new ArrayList<>();
+
+            for (int i = 0; i < book.spineSize(); i++) {
+                String text = book.readChapter(i);
+                if (text != null) {
                     chapters.add(text);
                 }
+                if (maxBookBytes > 0 && book.bytesRead() > maxBookBytes) {
+                    throw new SizeLimitException("Book exceeds " + maxBookBytes + " decoded bytes");
+                }
             }
 
             return chapters;
@@ -68,9 +99,393 @@ public class EpubExtractor {
         return new ArrayList<>();
     }
 
-    private Document parseXml(InputStream is) throws Exception {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        factory.setNamespaceAware(false);
-        return factory.newDocumentBuilder().parse(is);
+    /**
+     * Opens an EPUB file and resolves its spine without reading any chapter.
+     * Chapters are then read one by one with {@link EpubBook#readChapter(int)}.
+     * <p>
+     * The package documents are parsed with StAX, keeping only the rootfile path, the manifest,
+     * the spine and the table of contents. The result is cached per file version, so opening
+     * the same file again does not parse any XML.
+     * <p>
+     * The archive itself is memory-mapped with its central directory parsed once per file
+     * version (see {@link MappedZip}); archives it cannot map are read through {@link ZipFile}.
+     *
+     * @param epubPath Path to the EPUB file.
+     * @return Opened book; must be closed by the caller.
+     * @throws Exception If the archive or its package document cannot be read.
+     */
+    public EpubBook open(String epubPath) throws Exception {
+        FileKey fileKey = fileKey(epubPath);
+        EpubArchive archive = openArchive(fileKey);
+        try {
+            PackageDescriptor descriptor = packages.getIfPresent(fileKey);
+            if (descriptor == null) {
+                descriptor = readPackage(archive, true);
+                packages.put(fileKey, descriptor);
+            }
+            return new EpubBook(archive, descriptor.spinePaths(), descriptor.title(), descriptor.author(),
+                    descriptor.toc(), maxEntryBytes);
+        } catch (Exception e) {
+            archive.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the title, author and spine size of an EPUB file.
+     * <p>
+     * Unlike {@link #open(String)}, this neither uses nor fills the archive and package caches,
+     * so a scan of the whole library does not evict the books being read. The archive is read
+     * through {@link ZipFile} and closed again, and the table of contents is not parsed.
+     *
+     * @param epubPath Path to the EPUB file.
+     * @return Metadata of the book.
+     * @throws Exception If the archive or its package document cannot be read.
+     */
+    public Metadata readMetadata(String epubPath) throws Exception {
+        try (EpubArchive archive = new ZipFileArchive(new ZipFile(epubPath))) {
+            PackageDescriptor descriptor = readPackage(archive, false);
+            return new Metadata(descriptor.title(), descriptor.author(), descriptor.spinePaths().size());
+        }
+    }
+
+    private EpubArchive openArchive(FileKey fileKey) throws IOException {
+        MappedZip mapped = archives.getIfPresent(fileKey);
+        if (mapped != null) {
+            return mapped;
+        }
+
+        try {
+            mapped = MappedZip.open(Paths.get(fileKey.path()));
+        } catch (MappedZip.UnsupportedArchiveException e) {
+            logger.info("Reading {} without memory mapping: {}", fileKey.path(), e.getMessage());
+            return new ZipFileArchive(new ZipFile(fileKey.path()));
+        }
+        archives.put(fileKey, mapped);
+        return mapped;
+    }
+
+    /**
+     * @param withToc Whether to read the table of contents; without it the descriptor has none.
+     */
+    private PackageDescriptor readPackage(EpubArchive archive, boolean withToc)
+            throws IOException, XMLStreamException {
+        // 1. container.xml
+        String opfPath = readRootfile(archive);
+
+        // 2. content.opf: manifest, spine and metadata
+        checkSize(archive, opfPath);
+        InputStream opf = archive.open(opfPath);
+        if (opf == null) {
+            throw new FileNotFoundException("Package document not found: " + opfPath);
+        }
+
+        Map<String, String> manifest = new HashMap<>();
+        List<String> spineIds = new ArrayList<>();
+        String title = null;
+        String author = null;
+        String navHref = null;
+        String ncxHref = null;
+        String tocId = "";
+
+        try (InputStream is = opf) {
+            XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(is);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                        continue;
+                    }
+                    switch (reader.getLocalName()) {
+                        case "item" -> {
+                            String href = attribute(reader, "href");
+                            manifest.put(attribute(reader, "id"), href);
+                            if (navHref == null
+                                    && List.of(attribute(reader, "properties").split("\\s+")).contains("nav")) {
+                                navHref = href;
+                            }
+                            if (ncxHref == null && NCX_MEDIA_TYPE.equals(attribute(reader, "media-type"))) {
+                                ncxHref = href;
+                            }
+                        }
+                        case "spine" -> tocId = attribute(reader, "toc");
+                        case "itemref" -> spineIds.add(attribute(reader, "idref"));
+                        case "title" -> {
+                            if (title == null && DC_NAMESPACE.equals(reader.getNamespaceURI())) {
+                                title = text(reader);
+                            }
+                        }
+                        case "creator" -> {
+                            if (author == null && DC_NAMESPACE.equals(reader.getNamespaceURI())) {
+                                author = text(reader);
+                            }
+                        }
+                        default -> {
+                            // Not needed
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        // 3. spine in reading order
+        List<String> spinePaths = new ArrayList<>(spineIds.size());
+        String basePath = opfPath.substring(0, opfPath.lastIndexOf("/") + 1);
+
+        for (String idref : spineIds) {
+            String href = manifest.get(idref);
+
+            if (href == null) continue;
+
+            spinePaths.add(basePath + href);
+        }
+
+        // 4. table of contents: EPUB 3 navigation document, else the NCX named by the spine
+        if (manifest.containsKey(tocId)) {
+            ncxHref = manifest.get(tocId);
+        }
+        List<EpubBook.TocEntry> toc = List.of();
+        if (!withToc) {
+            return new PackageDescriptor(List.copyOf(spinePaths), title, author, toc);
+        }
+        try {
+            if (navHref != null) {
+                toc = readNav(archive, basePath + navHref, spinePaths);
+            }
+            if (toc.isEmpty() && ncxHref != null) {
+                toc = readNcx(archive, basePath + ncxHref, spinePaths);
+            }
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+            // The table of contents is optional: the book is still readable without it
+            logger.warn("Failed to read table of contents of {}: {}", opfPath, e.getMessage());
+            toc = List.of();
+        }
+
+        return new PackageDescriptor(List.copyOf(spinePaths), title, author, toc);
+    }
+
+    /**
+     * Reads the {@code toc} nav element of an EPUB 3 navigation document.
+     * The document is XHTML that may use HTML entities, so it is parsed with Jsoup.
+     */
+    private List<EpubBook.TocEntry> readNav(EpubArchive archive, String navPath, List<String> spinePaths)
+            throws IOException {
+        checkSize(archive, navPath);
+        String html = archive.readText(navPath);
+        if (html == null) {
+            return List.of();
+        }
+
+        Document doc = Jsoup.parse(html);
+        Element nav = null;
+        for (Element candidate : doc.select("nav")) {
+            if (List.of(candidate.attr("epub:type").split("\\s+")).contains("toc")) {
+                nav = candidate;
+                break;
+            }
+        }
+        if (nav == null) {
+            nav = doc.selectFirst("nav");
+        }
+        Element list = nav != null ? nav.selectFirst("ol") : null;
+        if (list == null) {
+            return List.of();
+        }
+
+        List<EpubBook.TocEntry> toc = new ArrayList<>();
+        readNavList(list, 0, directoryOf(navPath), spineIndex(spinePaths), toc);
+        return toc;
+    }
+
+    private static void readNavList(Element list, int depth, String baseDir, Map<String, Integer> spine,
+                                    List<EpubBook.TocEntry> toc) {
+        for (Element item : list.children()) {
+            if (!item.tagName().equals("li")) {
+                continue;
+            }
+            for (Element child : item.children()) {
+                if (child.tagName().equals("a")) {
+                    addEntry(toc, child.text(), depth, baseDir, child.attr("href"), spine);
+                } else if (child.tagName().equals("ol")) {
+                    readNavList(child, depth + 1, baseDir, spine, toc);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the {@code navMap} of an EPUB 2 NCX document in document order.
+     */
+    private List<EpubBook.TocEntry> readNcx(EpubArchive archive, String ncxPath, List<String> spinePaths)
+            throws IOException, XMLStreamException {
+        checkSize(archive, ncxPath);
+        InputStream ncx = archive.open(ncxPath);
+        if (ncx == null) {
+            return List.of();
+        }
+
+        String baseDir = directoryOf(ncxPath);
+        Map<String, Integer> spine = spineIndex(spinePaths);
+        List<EpubBook.TocEntry> toc = new ArrayList<>();
+
+        try (InputStream is = ncx) {
+            XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(is);
+            try {
+                boolean inNavMap = false;
+                int depth = -1;
+                String label = null;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        switch (reader.getLocalName()) {
+                            case "navMap" -> inNavMap = true;
+                            case "navPoint" -> {
+                                depth++;
+                                label = null;
+                            }
+                            case "text" -> {
+                                if (inNavMap && depth >= 0 && label == null) {
+                                    label = reader.getElementText().trim();
+                                }
+                            }
+                            case "content" -> {
+                                if (inNavMap && depth >= 0) {
+                                    addEntry(toc, label != null ? label : "", depth, baseDir,
+                                            attribute(reader, "src"), spine);
+                                }
+                            }
+                            default -> {
+                                // Not needed
+                            }
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        switch (reader.getLocalName()) {
+                            case "navMap" -> inNavMap = false;
+                            case "navPoint" -> depth--;
+                            default -> {
+                                // Not needed
+                            }
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return toc;
+    }
+
+    /**
+     * Adds an entry if its target is a spine item. Fragments are dropped: the entry points to
+     * the beginning of its document.
+     */
+    private static void addEntry(List<EpubBook.TocEntry> toc, String title, int depth, String baseDir,
+                                 String href, Map<String, Integer> spine) {
+        int fragment = href.indexOf('#');
+        String target = fragment >= 0 ? href.substring(0, fragment) : href;
+        if (target.isEmpty()) {
+            return;
+        }
+        Integer chapter = spine.get(normalizePath(baseDir + decode(target)));
+        if (chapter != null) {
+            toc.add(new EpubBook.TocEntry(title.trim(), depth, chapter));
+        }
+    }
+
+    private static Map<String, Integer> spineIndex(List<String> spinePaths) {
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < spinePaths.size(); i++) {
+            index.putIfAbsent(normalizePath(decode(spinePaths.get(i))), i);
+        }
+        return index;
+    }
+
+    private static String directoryOf(String path) {
+        return path.substring(0, path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Decodes percent-escapes of an href; unlike form decoding, '+' stays as is.
+     */
+    private static String decode(String href) {
+        if (href.indexOf('%') < 0) {
+            return href;
+        }
+        try {
+            return URLDecoder.decode(href.replace("+", "%2B"), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return href;
+        }
+    }
+
+    /**
+     * Resolves {@code .} and {@code ..} segments of an archive path.
+     */
+    private static String normalizePath(String path) {
+        Deque<String> segments = new ArrayDeque<>();
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) {
+                continue;
+            }
+            if (segment.equals("..")) {
+                segments.pollLast();
+            } else {
+                segments.addLast(segment);
+            }
+        }
+        return String.join("/", segments);
+    }
+
+    private String readRootfile(EpubArchive archive) throws IOException, XMLStreamException {
+        checkSize(archive, "META-INF/container.xml");
+        InputStream container = archive.open("META-INF/container.xml");
+        if (container == null) {
+            throw new FileNotFoundException("META-INF/container.xml not found");
+        }
+
+        try (InputStream is = container) {
+            XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(is);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT
+                            && reader.getLocalName().equals("rootfile")) {
+                        String fullPath = attribute(reader, "full-path");
+                        if (!fullPath.isEmpty()) {
+                            return fullPath;
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        throw new IOException("No rootfile in META-INF/container.xml");
+    }
+
+    /**
+     * Rejects package documents larger than the entry limit before they are decompressed.
+     */
+    private void checkSize(EpubArchive archive, String name) throws SizeLimitException {
+        long size = archive.size(name);
+        if (maxEntryBytes > 0 && size > maxEntryBytes) {
+            throw new SizeLimitException("Entry " + name + " is " + size + " bytes, limit " + maxEntryBytes);
+        }
+    }
+
+    private static String attribute(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        return value != null ? value : "";
+    }
+
+    private static String text(XMLStreamReader reader) throws XMLStreamException {
+        String text = reader.getElementText().trim();
+        return text.isEmpty() ? null : text;
+    }
+
+    private static FileKey fileKey(String epubPath) throws IOException {
+        Path file = Paths.get(epubPath).toRealPath();
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        return new FileKey(file.toString(), attrs.lastModifiedTime().toMillis(), attrs.size());
     }
 }
@@ -0,0 +1,183 @@
+package ru.ai.libraryapi;
+
+/**
+ * Allocation-lean text passes around the Jsoup cleaning of a chapter.
+ * <p>
+ * Replaces the regular expressions previously applied to every chapter: body extraction runs
+ * as a plain scan, and whitespace collapsing and {@code <br>} folding share one reusable per-thread
+ * buffer, so normalizing a chapter allocates only the resulting string. The output is the same as
+ * that of the replaced expressions:
+ * <pre>
+ * (?is)&lt;body[^&gt;]*&gt;(.*?)&lt;/body&gt;        body extraction
+ * \s{2,}                       -&gt; " "
+ * (&lt;br\s*&#47;?&gt;\s*){2,}          -&gt; "&lt;br&gt;&lt;br&gt;"
+ * </pre>
+ */
+public final class HtmlNormalizer {
+
+    private static final char BOM = '\uFEFF';
+    private static final String FOLDED_BR = "<br><br>";
+
+    // Buffers that grew beyond this are not kept for reuse
+    private static final int MAX_RETAINED = 1 << 20;
+
+    private static final ThreadLocal<StringBuilder> BUFFERS =
+            ThreadLocal.withInitial(() -> new StringBuilder(16 << 10));
+
+    private HtmlNormalizer() {
+    }
+
+    /**
+     * Removes byte order marks.
+     *
+     * @param html Raw chapter.
+     * @return Chapter without BOM characters; the same instance if there are none.
+     */
+    public static String stripBom(String html) {
+        return html.indexOf(BOM) < 0 ? html : html.replace(String.valueOf(BOM), "");
+    }
+
+    /**
+     * Extracts the content of the first {@code <body>} element.
+     *
+     * @param html Chapter without BOM characters.
+     * @return Body content or null if the chapter has no complete body element.
+     */
+    public static String extractBody(String html) {
+        int start = indexOfIgnoreCase(html, "<body", 0);
+        if (start < 0) {
+            return null;
+        }
+        int open = html.indexOf('>', start + 5);
+        if (open < 0) {
+            return null;
+        }
+        // A later <body> cannot match either: its '>' and its "</body>" would come even later
+        int close = indexOfIgnoreCase(html, "</body>", open + 1);
+        if (close < 0) {
+            return null;
+        }
+        return html.substring(open + 1, close);
+    }
+
+    /**
+     * Trims the serialized body, collapses whitespace runs into a single space and folds runs of
+     * two or more {@code <br>} tags into exactly two.
+     *
+     * @param html Body HTML serialized by Jsoup.
+     * @return Normalized HTML.
+     */
+    public static String normalize(String html) {
+        int start = 0;
+        int end = html.length();
+        while (start < end && html.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && html.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        StringBuilder out = BUFFERS.get();
+        out.setLength(0);
+
+        // Whitespace: runs of two or more become one space, single characters are kept
+        boolean hasBr = false;
+        int i = start;
+        while (i < end) {
+            char c = html.charAt(i);
+            if (isSpace(c)) {
+                int run = i + 1;
+                while (run < end && isSpace(html.charAt(run))) {
+                    run++;
+                }
+                out.append(run - i >= 2 ? ' ' : c);
+                i = run;
+            } else {
+                if (c == '<' && !hasBr && html.startsWith("<br", i)) {
+                    hasBr = true;
+                }
+                out.append(c);
+                i++;
+            }
+        }
+
+        // A run of newlines can no longer be longer than one character here, so the former
+        // \n{3,} pass has nothing to do
+
+        if (hasBr) {
+            foldBreaks(out);
+        }
+
+        String result = out.toString();
+        if (out.capacity() > MAX_RETAINED) {
+            BUFFERS.remove();
+        }
+        return result;
+    }
+
+    /**
+     * Folds {@code (<br\s*\/?>\s*){2,}} into {@code <br><br>} in place; the result is never longer.
+     */
+    private static void foldBreaks(StringBuilder s) {
+        int n = s.length();
+        int w = 0;
+        int r = 0;
+        while (r < n) {
+            if (s.charAt(r) == '<') {
+                int p = r;
+                int count = 0;
+                int tagEnd;
+                while ((tagEnd = matchBr(s, p, n)) >= 0) {
+                    p = tagEnd;
+                    while (p < n && isSpace(s.charAt(p))) {
+                        p++;
+                    }
+                    count++;
+                }
+                if (count >= 2) {
+                    for (int k = 0; k < FOLDED_BR.length(); k++) {
+                        s.setCharAt(w++, FOLDED_BR.charAt(k));
+                    }
+                    r = p;
+                    continue;
+                }
+            }
+            s.setCharAt(w++, s.charAt(r++));
+        }
+        s.setLength(w);
+    }
+
+    /**
+     * @return Index after a {@code <br\s*\/?>} tag starting at {@code p}, or -1.
+     */
+    private static int matchBr(StringBuilder s, int p, int n) {
+        if (p + 3 > n || s.charAt(p) != '<' || s.charAt(p + 1) != 'b' || s.charAt(p + 2) != 'r') {
+            return -1;
+        }
+        int q = p + 3;
+        while (q < n && isSpace(s.charAt(q))) {
+            q++;
+        }
+        if (q < n && s.charAt(q) == '/') {
+            q++;
+        }
+        return q < n && s.charAt(q) == '>' ? q + 1 : -1;
+    }
+
+    /**
+     * Whitespace as matched by {@code \s} in Java regular expressions.
+     */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static int indexOfIgnoreCase(String s, String needle, int from) {
+        int last = s.length() - needle.length();
+        for (int i = s.indexOf('<', from); i >= 0 && i <= last; i = s.indexOf('<', i + 1)) {
+            if (s.regionMatches(true, i, needle, 0, needle.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,79 @@
+package ru.ai.libraryapi;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * In-memory cache of cleaned books, independent of the page size.
+ * <p>
+ * A layout is the sequence of cleaned chapters of a book in spine order, each with its block
+ * model (block HTML, text lengths and header flags), and null for spine items without content.
+ * Paginating a layout for another page size is a single linear pass over the chapters that
+ * neither opens the EPUB nor cleans any HTML again.
+ * Entries are weighted by the approximate heap size of their HTML.
+ */
+@Component
+public class LayoutCache {
+    private static final Logger logger = LoggerFactory.getLogger(LayoutCache.class);
+
+    private final Cache<BookKey, List<Chapter>> cache;
+
+    public LayoutCache(BookCfg bookCfg) {
+        if (bookCfg.LAYOUT_CACHE_MAX_BYTES > 0) {
+            this.cache = Caffeine.newBuilder()
+                    .maximumWeight(bookCfg.LAYOUT_CACHE_MAX_BYTES)
+                    .weigher((BookKey key, List<Chapter> chapters) -> weigh(chapters))
+                    .build();
+            logger.info("Layout cache enabled, budget {} bytes", bookCfg.LAYOUT_CACHE_MAX_BYTES);
+        } else {
+            this.cache = null;
+            logger.info("Layout cache disabled");
+        }
+    }
+
+    /**
+     * @return Whether layouts are kept; if not, the pipeline need not collect them.
+     */
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * Returns the layout of a book.
+     *
+     * @param key Book identity; the page size is ignored.
+     * @return Chapters in spine order, null for items without content, or null if not cached.
+     */
+    public List<Chapter> get(BookKey key) {
+        return cache != null ? cache.getIfPresent(key.source()) : null;
+    }
+
+    /**
+     * Stores the layout of a completely cleaned book.
+     *
+     * @param key      Book identity; the page size is ignored.
+     * @param chapters Chapters of every spine item in order, null for items without content.
+     */
+    public void put(BookKey key, List<Chapter> chapters) {
+        if (cache != null) {
+            cache.put(key.source(), Collections.unmodifiableList(chapters));
+        }
+    }
+
+    private static int weigh(List<Chapter> chapters) {
+        long bytes = 0;
+        for (Chapter chapter : chapters) {
+            if (chapter != null) {
+                bytes += chapter.footprint();
+            }
+        }
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+}
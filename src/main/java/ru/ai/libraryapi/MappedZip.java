@@ -0,0 +1,301 @@
+package ru.ai.libraryapi;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Memory-mapped ZIP archive with a parsed central directory.
+ * <p>
+ * The archive is mapped once and its central directory is parsed once; the instance is immutable
+ * and shared by all requests for the same file version. Reading an entry touches only the pages of
+ * the mapping that hold it. Stored entries are decoded straight from the mapping, deflated entries
+ * are inflated into a pooled buffer, so reading a chapter allocates little besides the resulting
+ * {@code String}. Buffers and inflaters are borrowed for one read and returned right after it:
+ * they are reused by platform and virtual threads alike, and the pool keeps a bounded number of
+ * them. Inflaters that do not fit back into the pool are ended at once, releasing their native
+ * memory.
+ * <p>
+ * ZIP64 archives and files over 2 GB are not supported; {@link #open(Path)} reports them with
+ * {@link UnsupportedArchiveException} so the caller can fall back to {@link ZipFileArchive}.
+ */
+class MappedZip implements EpubArchive {
+
+    /**
+     * Thrown for archives this reader does not handle.
+     */
+    static class UnsupportedArchiveException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedArchiveException(String message) {
+            super(message);
+        }
+    }
+
+    private record Entry(int method, long compressedSize, long size, int localHeaderOffset) {
+    }
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int MAX_COMMENT = 0xFFFF;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    // Largest array the JVM can allocate
+    private static final int MAX_ARRAY = Integer.MAX_VALUE - 8;
+
+    // Entries larger than this are read into a fresh array instead of a pooled one
+    private static final int MAX_POOLED = 1 << 20;
+    private static final int MIN_POOLED = 64 << 10;
+
+    // Idle buffers and inflaters kept for reuse; concurrent readers beyond this create their own
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+
+    private static final BlockingQueue<byte[]> BUFFERS = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final BlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private final ByteBuffer mapping;
+    private final Map<String, Entry> entries;
+
+    private MappedZip(ByteBuffer mapping, Map<String, Entry> entries) {
+        this.mapping = mapping;
+        this.entries = entries;
+    }
+
+    /**
+     * Maps an archive and parses its central directory.
+     *
+     * @param file ZIP file.
+     * @return Mapped archive.
+     * @throws UnsupportedArchiveException If the archive is ZIP64 or too large to map.
+     * @throws IOException                 If the file cannot be read or is not a ZIP archive.
+     */
+    static MappedZip open(Path file) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new UnsupportedArchiveException("Archive too large to map: " + size + " bytes");
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        ByteBuffer buf = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+        int eocd = findEndOfCentralDirectory(buf);
+        int count = u16(buf, eocd + 10);
+        long directoryOffset = u32(buf, eocd + 16);
+        if (count == 0xFFFF || directoryOffset == 0xFFFFFFFFL) {
+            throw new UnsupportedArchiveException("ZIP64 archive");
+        }
+
+        Map<String, Entry> entries = new HashMap<>(count * 2);
+        int pos = (int) directoryOffset;
+        for (int i = 0; i < count; i++) {
+            if (pos + 46 > buf.limit() || buf.getInt(pos) != CENTRAL_SIGNATURE) {
+                throw new ZipException("Corrupt central directory");
+            }
+            int method = u16(buf, pos + 10);
+            long compressedSize = u32(buf, pos + 20);
+            long size = u32(buf, pos + 24);
+            int nameLength = u16(buf, pos + 28);
+            int extraLength = u16(buf, pos + 30);
+            int commentLength = u16(buf, pos + 32);
+            long localHeaderOffset = u32(buf, pos + 42);
+            if (compressedSize == 0xFFFFFFFFL || size == 0xFFFFFFFFL || localHeaderOffset == 0xFFFFFFFFL) {
+                throw new UnsupportedArchiveException("ZIP64 entry");
+            }
+            // Sizes stay long: the decoded size is checked against the limits before any read
+            if (localHeaderOffset >= buf.limit() || compressedSize > buf.limit()) {
+                throw new ZipException("Corrupt central directory");
+            }
+
+            byte[] name = new byte[nameLength];
+            buf.get(pos + 46, name);
+            entries.put(new String(name, StandardCharsets.UTF_8),
+                    new Entry(method, compressedSize, size, (int) localHeaderOffset));
+
+            pos += 46 + nameLength + extraLength + commentLength;
+        }
+
+        return new MappedZip(buf, Map.copyOf(entries));
+    }
+
+    @Override
+    public long size(String name) {
+        Entry entry = entries.get(name);
+        return entry != null ? entry.size() : -1;
+    }
+
+    @Override
+    public String readText(String name) throws IOException {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+
+        int size = length(entry, name);
+        if (size > MAX_POOLED) {
+            byte[] buffer = new byte[size];
+            read(entry, name, buffer, size);
+            return new String(buffer, StandardCharsets.UTF_8);
+        }
+
+        byte[] buffer = acquireBuffer(size);
+        try {
+            read(entry, name, buffer, size);
+            return new String(buffer, 0, size, StandardCharsets.UTF_8);
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    @Override
+    public InputStream open(String name) throws IOException {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+
+        int size = length(entry, name);
+        byte[] content = new byte[size];
+        read(entry, name, content, size);
+        return new ByteArrayInputStream(content);
+    }
+
+    /**
+     * The mapping is released by the garbage collector once no reader references the archive.
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * @return Decoded size of an entry that fits into an array.
+     */
+    private static int length(Entry entry, String name) throws ZipException {
+        if (entry.size() > MAX_ARRAY) {
+            throw new ZipException("Entry too large to read: " + name + ", " + entry.size() + " bytes");
+        }
+        return (int) entry.size();
+    }
+
+    private void read(Entry entry, String name, byte[] target, int size) throws IOException {
+        try {
+            ByteBuffer data = data(entry, name);
+            switch (entry.method()) {
+                case STORED -> data.get(0, target, 0, size);
+                case DEFLATED -> inflate(data, target, size, name);
+                default -> throw new ZipException("Unsupported compression method " + entry.method() + ": " + name);
+            }
+        } catch (IndexOutOfBoundsException | InternalError e) {
+            // The file was truncated or is corrupt; an InternalError signals a fault in the mapping
+            throw new ZipException("Cannot read entry " + name + ": " + e.getMessage());
+        }
+    }
+
+    private ByteBuffer data(Entry entry, String name) throws ZipException {
+        int header = entry.localHeaderOffset();
+        if (mapping.getInt(header) != LOCAL_SIGNATURE) {
+            throw new ZipException("Corrupt local header: " + name);
+        }
+        int start = header + 30 + u16(mapping, header + 26) + u16(mapping, header + 28);
+        return mapping.slice(start, (int) entry.compressedSize());
+    }
+
+    private static void inflate(ByteBuffer data, byte[] target, int size, String name) throws ZipException {
+        Inflater inflater = INFLATERS.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        try {
+            inflate(inflater, data, target, size, name);
+        } finally {
+            inflater.reset();
+            if (!INFLATERS.offer(inflater)) {
+                inflater.end();
+            }
+        }
+    }
+
+    private static void inflate(Inflater inflater, ByteBuffer data, byte[] target, int size, String name)
+            throws ZipException {
+        inflater.setInput(data);
+
+        int n = 0;
+        boolean padded = false;
+        try {
+            while (n < size && !inflater.finished()) {
+                int read = inflater.inflate(target, n, size - n);
+                n += read;
+                if (read == 0 && inflater.needsInput()) {
+                    if (padded) {
+                        break;
+                    }
+                    // Raw deflate may need one extra byte after the data to complete
+                    inflater.setInput(new byte[1]);
+                    padded = true;
+                } else if (read == 0 && inflater.needsDictionary()) {
+                    throw new ZipException("Entry needs a preset dictionary: " + name);
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Corrupt entry " + name + ": " + e.getMessage());
+        }
+
+        if (n != size) {
+            throw new ZipException("Truncated entry " + name + ": " + n + " of " + size + " bytes");
+        }
+    }
+
+    /**
+     * Borrows a buffer of at least {@code size <= MAX_POOLED} bytes; return it with {@link #releaseBuffer}.
+     */
+    private static byte[] acquireBuffer(int size) {
+        byte[] buffer = BUFFERS.poll();
+        if (buffer == null || buffer.length < size) {
+            // A pooled buffer that is too small is dropped and replaced by a larger one
+            buffer = new byte[Math.max(MIN_POOLED, Integer.highestOneBit(Math.max(size - 1, 1)) << 1)];
+        }
+        return buffer;
+    }
+
+    private static void releaseBuffer(byte[] buffer) {
+        BUFFERS.offer(buffer);
+    }
+
+    private static int findEndOfCentralDirectory(ByteBuffer buf) throws ZipException {
+        int last = buf.limit() - EOCD_SIZE;
+        int first = Math.max(0, last - MAX_COMMENT);
+        for (int i = last; i >= first; i--) {
+            if (buf.getInt(i) == EOCD_SIGNATURE) {
+                return i;
+            }
+        }
+        throw new ZipException("Not a ZIP archive: end of central directory not found");
+    }
+
+    private static int u16(ByteBuffer buf, int index) {
+        return Short.toUnsignedInt(buf.getShort(index));
+    }
+
+    private static long u32(ByteBuffer buf, int index) {
+        return Integer.toUnsignedLong(buf.getInt(index));
+    }
+}
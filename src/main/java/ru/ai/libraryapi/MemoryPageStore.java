@@ -0,0 +1,87 @@
+package ru.ai.libraryapi;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Page store on the heap of this node, for deployments without a writable or shared disk.
+ * <p>
+ * Pages are kept as UTF-8 bytes, about half the size of the strings in {@link PageCache},
+ * and only the requested range is decoded. Entries are immutable and replaced as a whole,
+ * so readers never lock. The store is bounded by {@code app.library.store.memory-max-bytes}.
+ */
+public class MemoryPageStore implements PageStore {
+    private static final Logger logger = LoggerFactory.getLogger(MemoryPageStore.class);
+
+    private record Entry(byte[][] pages, int[] chapterStarts) {
+    }
+
+    private final Cache<BookKey, Entry> entries;
+    private final long maxBytes;
+
+    public MemoryPageStore(BookCfg bookCfg) {
+        this.maxBytes = bookCfg.STORE_MEMORY_MAX_BYTES;
+        this.entries = Caffeine.newBuilder()
+                .maximumWeight(bookCfg.STORE_MEMORY_MAX_BYTES)
+                .weigher((BookKey key, Entry entry) -> weigh(entry))
+                .build();
+        logger.info("In-memory page store, budget {} bytes", bookCfg.STORE_MEMORY_MAX_BYTES);
+    }
+
+    @Override
+    public Range read(BookKey key, int from, int to) {
+        Entry entry = entries.getIfPresent(key);
+        if (entry == null) {
+            return null;
+        }
+
+        int total = entry.pages().length;
+        int first = Math.min(from, total);
+        int end = Math.max(first, Math.min(to, total));
+
+        List<String> pages = new ArrayList<>(end - first);
+        for (int i = first; i < end; i++) {
+            pages.add(new String(entry.pages()[i], StandardCharsets.UTF_8));
+        }
+        return new Range(pages, total);
+    }
+
+    @Override
+    public ChapterStarts readChapterStarts(BookKey key) {
+        Entry entry = entries.getIfPresent(key);
+        return entry != null ? new ChapterStarts(entry.chapterStarts().clone(), entry.pages().length) : null;
+    }
+
+    @Override
+    public void write(BookKey key, List<String> pages, int[] chapterStarts) {
+        byte[][] bodies = new byte[pages.size()][];
+        for (int i = 0; i < bodies.length; i++) {
+            bodies[i] = pages.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        entries.put(key, new Entry(bodies, chapterStarts.clone()));
+    }
+
+    /**
+     * @return Whether the store has a memory budget to keep books in.
+     */
+    @Override
+    public boolean persists() {
+        return maxBytes > 0;
+    }
+
+    private static int weigh(Entry entry) {
+        // Array headers and slots are included roughly
+        long bytes = 16L + Integer.BYTES * (long) entry.chapterStarts().length;
+        for (byte[] page : entry.pages()) {
+            bytes += 24 + page.length;
+        }
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+}
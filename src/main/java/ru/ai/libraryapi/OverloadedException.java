@@ -0,0 +1,22 @@
+package ru.ai.libraryapi;
+
+/**
+ * Thrown when a request is shed because the service is saturated or the request missed its deadline.
+ */
+public class OverloadedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int retryAfterSeconds;
+
+    public OverloadedException(String message, int retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * @return Delay the client should wait before retrying.
+     */
+    public int retryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
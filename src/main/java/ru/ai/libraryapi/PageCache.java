@@ -0,0 +1,91 @@
+package ru.ai.libraryapi;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.util.List;
+
+/**
+ * In-memory cache of paginated books.
+ * Entries are weighted by the approximate heap size of their pages and evicted by Caffeine's
+ * frequency-aware LRU (W-TinyLFU) once the configured budget is exceeded.
+ */
+@Component
+public class PageCache {
+    private static final Logger logger = LoggerFactory.getLogger(PageCache.class);
+
+    // Approximate per-page overhead: String header, backing array header and list slot
+    private static final int PAGE_OVERHEAD = 56;
+
+    private final Cache<BookKey, Entry> cache;
+
+    /**
+     * Paginated book.
+     *
+     * @param pages         Pages of the whole book.
+     * @param chapterStarts Start page of every spine item.
+     */
+    private record Entry(List<String> pages, int[] chapterStarts) {
+    }
+
+    public PageCache(BookCfg bookCfg) {
+        if (bookCfg.CACHE_MAX_BYTES > 0) {
+            this.cache = Caffeine.newBuilder()
+                    .maximumWeight(bookCfg.CACHE_MAX_BYTES)
+                    .weigher((BookKey key, Entry entry) -> weigh(entry))
+                    .build();
+            logger.info("Page cache enabled, budget {} bytes", bookCfg.CACHE_MAX_BYTES);
+        } else {
+            this.cache = null;
+            logger.info("Page cache disabled");
+        }
+    }
+
+    /**
+     * Returns cached pages of the book.
+     *
+     * @param key Book identity.
+     * @return Pages or null if the book is not cached.
+     */
+    public List<String> get(BookKey key) {
+        Entry entry = cache != null ? cache.getIfPresent(key) : null;
+        return entry != null ? entry.pages() : null;
+    }
+
+    /**
+     * Returns the start page of every spine item of a cached book.
+     *
+     * @param key Book identity.
+     * @return Start pages indexed by spine position or null if the book is not cached.
+     */
+    public int[] chapterStarts(BookKey key) {
+        Entry entry = cache != null ? cache.getIfPresent(key) : null;
+        return entry != null ? entry.chapterStarts().clone() : null;
+    }
+
+    /**
+     * Stores pages of the book.
+     *
+     * @param key           Book identity.
+     * @param pages         Pages of the whole book.
+     * @param chapterStarts Start page of every spine item.
+     */
+    public void put(BookKey key, List<String> pages, int[] chapterStarts) {
+        if (cache != null) {
+            cache.put(key, new Entry(List.copyOf(pages), chapterStarts.clone()));
+        }
+    }
+
+    private static int weigh(Entry entry) {
+        long bytes = (long) Integer.BYTES * entry.chapterStarts().length;
+        for (String page : entry.pages()) {
+            // Worst case UTF-16 storage; Latin-1 pages take half of that
+            bytes += PAGE_OVERHEAD + 2L * page.length();
+        }
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,178 @@
+package ru.ai.libraryapi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Resumable pagination checkpoint of one book.
+ * <p>
+ * Holds the paginator state and the position of the next spine item to read, so a later
+ * request for a further range continues where the previous one stopped instead of starting
+ * the book over. Access must hold {@link #lock()}.
+ * <p>
+ * The lock is a fair {@link ReentrantLock} rather than the cursor's monitor: pagination reads
+ * files and waits for the decode budget and the cleaning pool while holding it, and on Java 21
+ * a virtual thread blocked inside {@code synchronized} pins its carrier thread.
+ */
+public class PageCursor {
+    private final BookKey key;
+    private final Paginator paginator;
+    private final ReentrantLock lock = new ReentrantLock(true);
+
+    private int spineSize = -1;
+    private int nextChapter;
+    private int rawChapters;
+    private int cleanedChapters;
+    private long decodedBytes;
+    private List<Chapter> layout;
+    private long layoutBytes;
+    private long layoutMaxBytes;
+
+    public PageCursor(BookKey key) {
+        this.key = key;
+        this.paginator = new Paginator(key.maxLength());
+    }
+
+    public BookKey key() {
+        return key;
+    }
+
+    /**
+     * @return Lock guarding the checkpoint; requests waiting for it are served in arrival order.
+     */
+    public ReentrantLock lock() {
+        return lock;
+    }
+
+    public Paginator paginator() {
+        return paginator;
+    }
+
+    /**
+     * @return Pages completed so far.
+     */
+    public List<String> pages() {
+        return paginator.pages();
+    }
+
+    /**
+     * @return True once every spine item has been paginated.
+     */
+    public boolean isComplete() {
+        return paginator.isFinished();
+    }
+
+    /**
+     * @return Index of the next spine item to read.
+     */
+    public int nextChapter() {
+        return nextChapter;
+    }
+
+    public void setSpineSize(int spineSize) {
+        this.spineSize = spineSize;
+    }
+
+    /**
+     * Moves past the current spine item.
+     *
+     * @param read    Whether the item was found in the archive.
+     * @param cleaned Whether it produced non-blank content.
+     */
+    public void chapterDone(boolean read, boolean cleaned) {
+        nextChapter++;
+        if (read) {
+            rawChapters++;
+        }
+        if (cleaned) {
+            cleanedChapters++;
+        }
+    }
+
+    /**
+     * Accounts for the text of the spine item being paginated. Called together with
+     * {@link #chapterDone(boolean, boolean)}, so chapters read by an attempt that failed
+     * before paginating them are not counted again when the attempt is retried.
+     *
+     * @param bytes Uncompressed size of the chapter.
+     */
+    public void chapterRead(long bytes) {
+        decodedBytes += bytes;
+    }
+
+    /**
+     * @return Uncompressed bytes of all chapters paginated for this book so far.
+     */
+    public long decodedBytes() {
+        return decodedBytes;
+    }
+
+    /**
+     * Starts collecting the cleaned chapters of the book, so that once complete they can be
+     * reused for other page sizes. Only meaningful before the first chapter is read.
+     * <p>
+     * The chapters are held for as long as the book is being paginated, so collecting stops
+     * and the chapters are let go as soon as they take more than {@code maxBytes}.
+     *
+     * @param maxBytes Largest footprint of the chapters worth keeping.
+     */
+    public void keepLayout(long maxBytes) {
+        if (nextChapter == 0 && layout == null) {
+            layout = new ArrayList<>();
+            layoutBytes = 0;
+            layoutMaxBytes = maxBytes;
+        }
+    }
+
+    /**
+     * Records the cleaned chapter of the spine item being paginated, if the layout is kept.
+     * Drops the layout once it exceeds its budget.
+     *
+     * @param chapter Cleaned chapter or null if the item has no content.
+     */
+    public void addToLayout(Chapter chapter) {
+        if (layout == null) {
+            return;
+        }
+        if (chapter != null) {
+            layoutBytes += chapter.footprint();
+        }
+        if (layoutBytes > layoutMaxBytes) {
+            layout = null;
+        } else {
+            layout.add(chapter);
+        }
+    }
+
+    /**
+     * @return Cleaned chapters of all spine items read so far, or null if the layout is not kept
+     *         or has been dropped for its size.
+     */
+    public List<Chapter> layout() {
+        return layout;
+    }
+
+    public int rawChapters() {
+        return rawChapters;
+    }
+
+    public int cleanedChapters() {
+        return cleanedChapters;
+    }
+
+    /**
+     * Returns the page count of the book: exact once complete, otherwise extrapolated
+     * from the pages produced per spine item read so far.
+     *
+     * @return Exact or estimated number of pages.
+     */
+    public int total() {
+        int produced = paginator.pages().size();
+        if (isComplete() || nextChapter == 0 || spineSize <= 0) {
+            return produced;
+        }
+        long estimate = ((long) produced * spineSize + nextChapter - 1) / nextChapter;
+        return (int) Math.max(produced, Math.min(estimate, Integer.MAX_VALUE));
+    }
+}
@@ -0,0 +1,53 @@
+package ru.ai.libraryapi;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.stereotype.Component;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.time.Duration;
+
+/**
+ * Holds pagination checkpoints of books that are being read but are not paginated completely yet.
+ * Idle checkpoints expire, so abandoned books do not keep their partial pages in memory.
+ */
+@Component
+public class PageCursors {
+    private final Cache<BookKey, PageCursor> cursors;
+
+    public PageCursors(BookCfg bookCfg) {
+        this.cursors = Caffeine.newBuilder()
+                .maximumSize(bookCfg.CURSOR_MAX_COUNT)
+                .expireAfterAccess(Duration.ofMinutes(bookCfg.CURSOR_TTL_MINUTES))
+                .build();
+    }
+
+    /**
+     * Returns the checkpoint of a book, creating an empty one if there is none.
+     *
+     * @param key Book identity.
+     * @return Checkpoint shared by all requests for the book.
+     */
+    public PageCursor get(BookKey key) {
+        return cursors.get(key, PageCursor::new);
+    }
+
+    /**
+     * Returns the checkpoint of a book without creating one.
+     *
+     * @param key Book identity.
+     * @return Checkpoint, or null if the book is not being paginated.
+     */
+    public PageCursor find(BookKey key) {
+        return cursors.getIfPresent(key);
+    }
+
+    /**
+     * Drops the checkpoint of a book once it is no longer needed.
+     *
+     * @param key Book identity.
+     */
+    public void remove(BookKey key) {
+        cursors.invalidate(key);
+    }
+}
@@ -0,0 +1,20 @@
+package ru.ai.libraryapi;
+
+import java.util.List;
+
+/**
+ * DTO одной страницы при потоковой выдаче.
+ *
+ * Каждая страница передаётся отдельной строкой NDJSON вместе с текущим числом
+ * страниц книги. Пока книга не разобрана до конца, {@code total} является оценкой
+ * и {@code totalEstimated} равен true; значение в последней строке самое точное.
+ * Если диапазон начинается за концом книги, передаётся одна строка с пустой
+ * страницей и индексом, равным числу страниц.
+ */
+public record PageDTO(
+        int index,
+        List<String> page,
+        int total,
+        boolean totalEstimated
+) {
+}
@@ -0,0 +1,184 @@
+package ru.ai.libraryapi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encodes page responses in the negotiated representation and keeps encoded bodies for reuse.
+ * <p>
+ * Besides JSON, responses can be sent in a compact binary form ({@link #BINARY}), big-endian:
+ * <pre>
+ * int  from, int to, int total, byte totalEstimated
+ * int  page count N
+ * N x (int length, byte[] UTF-8 page body)
+ * </pre>
+ * Either form can be gzip-compressed. Encoded bodies of exact responses are cached by entity tag
+ * and representation, so repeated reads of a range are neither serialized nor compressed again.
+ */
+@Component
+public class PageEncoder {
+    private static final Logger logger = LoggerFactory.getLogger(PageEncoder.class);
+
+    /**
+     * Media type of the binary representation.
+     */
+    public static final MediaType BINARY = new MediaType("application", "x-library-pages");
+
+    private final ObjectMapper objectMapper;
+    private final Cache<String, byte[]> cache;
+
+    public PageEncoder(BookCfg bookCfg, ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        if (bookCfg.ENCODED_CACHE_MAX_BYTES > 0) {
+            this.cache = Caffeine.newBuilder()
+                    .maximumWeight(bookCfg.ENCODED_CACHE_MAX_BYTES)
+                    .weigher((String key, byte[] body) -> body.length + key.length())
+                    .build();
+            logger.info("Encoded page cache enabled, budget {} bytes", bookCfg.ENCODED_CACHE_MAX_BYTES);
+        } else {
+            this.cache = null;
+        }
+    }
+
+    /**
+     * Representation of a page response.
+     *
+     * @param binary Binary instead of JSON.
+     * @param gzip   Gzip content encoding.
+     */
+    public record Variant(boolean binary, boolean gzip) {
+
+        /**
+         * @return True for uncompressed JSON, which is written by Spring as usual.
+         */
+        public boolean isPlainJson() {
+            return !binary && !gzip;
+        }
+
+        public MediaType contentType() {
+            return binary ? BINARY : MediaType.APPLICATION_JSON;
+        }
+
+        /**
+         * Entity tag of this representation: each representation has different bytes,
+         * so it gets its own strong tag derived from the tag of the content.
+         *
+         * @param etag Quoted entity tag of the content.
+         * @return Quoted entity tag of the representation.
+         */
+        public String etag(String etag) {
+            if (isPlainJson()) {
+                return etag;
+            }
+            String suffix = (binary ? "-bin" : "") + (gzip ? "-gzip" : "");
+            return etag.substring(0, etag.length() - 1) + suffix + '"';
+        }
+    }
+
+    /**
+     * Chooses the representation from the request headers.
+     *
+     * @param accept         Accept header or null.
+     * @param acceptEncoding Accept-Encoding header or null.
+     * @return Binary if it is explicitly accepted, gzip if gzip is accepted; JSON if the Accept
+     *         header is malformed.
+     */
+    public Variant negotiate(String accept, String acceptEncoding) {
+        boolean binary = false;
+        if (accept != null) {
+            try {
+                for (MediaType type : MediaType.parseMediaTypes(accept)) {
+                    if (BINARY.equalsTypeAndSubtype(type) && type.getQualityValue() > 0) {
+                        binary = true;
+                        break;
+                    }
+                }
+            } catch (InvalidMediaTypeException e) {
+                // A malformed header does not ask for the binary form: answer with JSON
+                logger.debug("Ignoring malformed Accept header '{}': {}", accept, e.getMessage());
+            }
+        }
+
+        boolean gzip = false;
+        if (acceptEncoding != null) {
+            for (String coding : acceptEncoding.split(",")) {
+                String[] parts = coding.trim().split(";");
+                if (parts[0].trim().toLowerCase(Locale.ROOT).equals("gzip")
+                        && !(parts.length > 1 && parts[1].replace(" ", "").matches("q=0(\\.0*)?"))) {
+                    gzip = true;
+                    break;
+                }
+            }
+        }
+
+        return new Variant(binary, gzip);
+    }
+
+    /**
+     * Returns a previously encoded body.
+     *
+     * @param etag    Entity tag of the content.
+     * @param variant Representation.
+     * @return Encoded body or null.
+     */
+    public byte[] cached(String etag, Variant variant) {
+        return cache != null ? cache.getIfPresent(variant.etag(etag)) : null;
+    }
+
+    /**
+     * Encodes a response.
+     *
+     * @param response Response to encode.
+     * @param variant  Representation.
+     * @param etag     Entity tag of the content if the response may be reused, otherwise null.
+     * @return Encoded body.
+     * @throws IOException If the response cannot be serialized.
+     */
+    public byte[] encode(ResDTO response, Variant variant, String etag) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (OutputStream out = variant.gzip() ? new GZIPOutputStream(buffer) : buffer) {
+            if (variant.binary()) {
+                writeBinary(response, out);
+            } else {
+                objectMapper.writeValue(out, response);
+            }
+        }
+
+        byte[] body = buffer.toByteArray();
+        if (etag != null && cache != null) {
+            cache.put(variant.etag(etag), body);
+        }
+        return body;
+    }
+
+    private static void writeBinary(ResDTO response, OutputStream os) throws IOException {
+        DataOutputStream out = new DataOutputStream(os);
+        out.writeInt(response.from());
+        out.writeInt(response.to());
+        out.writeInt(response.total());
+        out.writeBoolean(response.totalEstimated());
+        out.writeInt(response.pages().size());
+        for (List<String> page : response.pages()) {
+            byte[] body = String.join("", page).getBytes(StandardCharsets.UTF_8);
+            out.writeInt(body.length);
+            out.write(body);
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,345 @@
+package ru.ai.libraryapi;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Persistent sidecar index of paginated books: the file-system {@link PageStore}.
+ * <p>
+ * Each book is stored in its own file inside the index directory:
+ * <pre>
+ * int    magic, int version
+ * long   modified, long size, int maxLength, long rules   -- identity of the source, see {@link BookKey}
+ * int    path length, byte[] path (UTF-8)
+ * int    page count N
+ * long[] N + 1 offsets relative to the start of the page data
+ * byte[] UTF-8 page bodies
+ * int    spine item count M
+ * int[]  M start pages of the spine items
+ * </pre>
+ * Ranges are read by memory-mapping the file and decoding only the requested pages. Mappings of
+ * recently read books are kept, so a read maps the file only the first time. An index whose
+ * identity does not match the current {@link BookKey} is treated as missing, and so is a file
+ * that is truncated or corrupt: the book is paginated again and the file rewritten.
+ * <p>
+ * The directory may be a volume shared by several replicas. Every writer uses a temporary file
+ * of its own and renames it over the index, so readers on any node map either the previous
+ * file or the complete new one, without locks; a mapping stays valid after the file is replaced.
+ * Replicas that paginate the same book at once write identical files and the last rename wins.
+ * Identities compare the real path of the book, so replicas must mount the library at the
+ * same path. Temporary files left behind by a writer that crashed are removed on startup once
+ * they are older than any write could take. The file name covers the cleaning rules too, so
+ * replicas configured with different rules keep separate files instead of replacing each other's.
+ */
+public class PageIndex implements PageStore {
+    private static final Logger logger = LoggerFactory.getLogger(PageIndex.class);
+
+    private static final int MAGIC = 0x4C50_4958;  // "LPIX"
+    private static final int VERSION = 3;
+
+    // A temporary file older than this belongs to a writer that is gone
+    private static final Duration STALE_TEMP_AGE = Duration.ofHours(1);
+
+    /**
+     * Validated index of a book. Reads use absolute positions only, so one mapping is shared
+     * by concurrent readers.
+     *
+     * @param buf          Mapping of the whole file.
+     * @param total        Page count.
+     * @param offsetsStart Position of the page offsets.
+     * @param dataStart    Position of the page bodies.
+     * @param chaptersAt   Position of the spine item count.
+     */
+    private record Mapping(ByteBuffer buf, int total, int offsetsStart, int dataStart, int chaptersAt) {
+    }
+
+    private final Path indexDir;
+    private final Cache<BookKey, Mapping> mappings;
+
+    public PageIndex(BookCfg bookCfg) {
+        this.indexDir = bookCfg.getIndexPath();
+        this.mappings = Caffeine.newBuilder()
+                .maximumSize(Math.max(bookCfg.INDEX_MAPPED_MAX_ENTRIES, 0))
+                .build();
+        if (indexDir != null) {
+            logger.info("Page index directory: {}", indexDir);
+            removeStaleTempFiles();
+        } else {
+            logger.info("Page index disabled");
+        }
+    }
+
+    @Override
+    public Range read(BookKey key, int from, int to) throws IOException {
+        Mapping mapping = mapping(key);
+        if (mapping == null) {
+            return null;
+        }
+
+        ByteBuffer buf = mapping.buf();
+        int total = mapping.total();
+        int first = Math.min(from, total);
+        int end = Math.max(first, Math.min(to, total));
+
+        List<String> pages = new ArrayList<>(end - first);
+        for (int i = first; i < end; i++) {
+            int start = (int) buf.getLong(mapping.offsetsStart() + i * Long.BYTES);
+            int length = (int) buf.getLong(mapping.offsetsStart() + (i + 1) * Long.BYTES) - start;
+            byte[] body = new byte[length];
+            buf.get(mapping.dataStart() + start, body);
+            pages.add(new String(body, StandardCharsets.UTF_8));
+        }
+
+        return new Range(pages, total);
+    }
+
+    @Override
+    public ChapterStarts readChapterStarts(BookKey key) throws IOException {
+        Mapping mapping = mapping(key);
+        if (mapping == null) {
+            return null;
+        }
+
+        ByteBuffer buf = mapping.buf();
+        int chaptersAt = mapping.chaptersAt();
+        int[] starts = new int[buf.getInt(chaptersAt)];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = buf.getInt(chaptersAt + Integer.BYTES * (i + 1));
+        }
+        return new ChapterStarts(starts, mapping.total());
+    }
+
+    /**
+     * Returns the kept mapping of a book or maps its index.
+     *
+     * @return Mapping or null if there is no valid index.
+     */
+    private Mapping mapping(BookKey key) throws IOException {
+        if (indexDir == null) {
+            return null;
+        }
+
+        Mapping mapping = mappings.getIfPresent(key);
+        if (mapping == null) {
+            mapping = map(key);
+            if (mapping != null) {
+                mappings.put(key, mapping);
+            }
+        }
+        return mapping;
+    }
+
+    /**
+     * Maps the index of a book and checks its identity and structure.
+     *
+     * @return Mapping or null if there is no index, it is stale or it is truncated or corrupt.
+     */
+    private Mapping map(BookKey key) throws IOException {
+        Path file = fileFor(key);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        MappedByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize > Integer.MAX_VALUE) {
+                logger.warn("Page index too large to map: {}", file);
+                return null;
+            }
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        }
+
+        try {
+            return validate(key, file, buf);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            logger.warn("Ignoring truncated or corrupt page index: {}", file);
+            return null;
+        }
+    }
+
+    private Mapping validate(BookKey key, Path file, ByteBuffer buf) {
+        if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+            logger.warn("Ignoring page index with unknown format: {}", file);
+            return null;
+        }
+
+        long modified = buf.getLong();
+        long size = buf.getLong();
+        int maxLength = buf.getInt();
+        long rules = buf.getLong();
+        int pathLength = buf.getInt();
+        if (pathLength < 0 || pathLength > buf.remaining()) {
+            throw new IndexOutOfBoundsException("path length " + pathLength);
+        }
+        byte[] pathBytes = new byte[pathLength];
+        buf.get(pathBytes);
+
+        if (modified != key.modified() || size != key.size() || maxLength != key.maxLength()
+                || rules != key.rules()
+                || !key.path().equals(new String(pathBytes, StandardCharsets.UTF_8))) {
+            logger.info("Page index is stale: {}", file);
+            return null;
+        }
+
+        // Offsets must grow from 0 and the page data and spine starts must lie within the file
+        int total = buf.getInt();
+        int offsetsStart = buf.position();
+        if (total < 0 || total >= (buf.limit() - offsetsStart) / Long.BYTES) {
+            throw new IndexOutOfBoundsException("page count " + total);
+        }
+        int dataStart = offsetsStart + (total + 1) * Long.BYTES;
+        long previous = 0;
+        for (int i = 0; i <= total; i++) {
+            long offset = buf.getLong(offsetsStart + i * Long.BYTES);
+            if (offset < previous || (i == 0 && offset != 0) || offset > buf.limit() - dataStart) {
+                throw new IndexOutOfBoundsException("page offset " + offset);
+            }
+            previous = offset;
+        }
+        int chaptersAt = dataStart + (int) previous;
+        int chapters = buf.getInt(chaptersAt);
+        if (chapters < 0 || (long) chaptersAt + Integer.BYTES * (chapters + 1L) != buf.limit()) {
+            throw new IndexOutOfBoundsException("spine item count " + chapters);
+        }
+        return new Mapping(buf, total, offsetsStart, dataStart, chaptersAt);
+    }
+
+    /**
+     * Writes the index of a book. The file is published atomically, so concurrent readers
+     * see either the previous version or the complete new one.
+     */
+    @Override
+    public void write(BookKey key, List<String> pages, int[] chapterStarts) {
+        if (indexDir == null) {
+            return;
+        }
+
+        Path file = fileFor(key);
+        Path tmp = null;
+        try {
+            Files.createDirectories(indexDir);
+            tmp = Files.createTempFile(indexDir, file.getFileName().toString(), ".tmp");
+
+            List<byte[]> bodies = new ArrayList<>(pages.size());
+            for (String page : pages) {
+                bodies.add(page.getBytes(StandardCharsets.UTF_8));
+            }
+
+            try (OutputStream os = Files.newOutputStream(tmp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+                byte[] pathBytes = key.path().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(key.modified());
+                out.writeLong(key.size());
+                out.writeInt(key.maxLength());
+                out.writeLong(key.rules());
+                out.writeInt(pathBytes.length);
+                out.write(pathBytes);
+                out.writeInt(bodies.size());
+
+                long offset = 0;
+                out.writeLong(offset);
+                for (byte[] body : bodies) {
+                    offset += body.length;
+                    out.writeLong(offset);
+                }
+                for (byte[] body : bodies) {
+                    out.write(body);
+                }
+
+                out.writeInt(chapterStarts.length);
+                for (int start : chapterStarts) {
+                    out.writeInt(start);
+                }
+            }
+
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            mappings.invalidate(key);
+            logger.info("Wrote page index {} ({} pages)", file, pages.size());
+        } catch (IOException e) {
+            logger.warn("Failed to write page index {}: {}", file, e.getMessage());
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                    // Best effort cleanup
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Whether an index directory is configured.
+     */
+    @Override
+    public boolean persists() {
+        return indexDir != null;
+    }
+
+    /**
+     * Deletes temporary files of writes that never completed.
+     */
+    private void removeStaleTempFiles() {
+        if (!Files.isDirectory(indexDir)) {
+            return;
+        }
+        Instant cutoff = Instant.now().minus(STALE_TEMP_AGE);
+        int removed = 0;
+        try (DirectoryStream<Path> temps = Files.newDirectoryStream(indexDir, "*.tmp")) {
+            for (Path tmp : temps) {
+                try {
+                    if (Files.getLastModifiedTime(tmp).toInstant().isBefore(cutoff) && Files.deleteIfExists(tmp)) {
+                        removed++;
+                    }
+                } catch (IOException e) {
+                    logger.warn("Cannot remove temporary page index {}: {}", tmp, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Cannot list page index directory {}: {}", indexDir, e.getMessage());
+        }
+        if (removed > 0) {
+            logger.info("Removed {} stale temporary page index files", removed);
+        }
+    }
+
+    private Path fileFor(BookKey key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(key.path().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(ByteBuffer.allocate(Long.BYTES).putLong(key.rules()).array());
+            byte[] hash = digest.digest();
+            return indexDir.resolve(HexFormat.of().formatHex(hash, 0, 16) + "-" + key.maxLength() + ".idx");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package ru.ai.libraryapi;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Storage of completely paginated books, consulted by {@link BookServ} before running the pipeline.
+ * <p>
+ * The implementation is chosen with {@code app.library.store.type} when the application starts,
+ * see {@link ru.ai.libraryapi.config.StoreCfg}:
+ * <ul>
+ *     <li>{@code file} — {@link PageIndex}, one file per book in a directory that may be a volume
+ *     shared by several replicas, so a book paginated by one node is served by all of them
+ *     and a new node starts warm;</li>
+ *     <li>{@code memory} — {@link MemoryPageStore}, compact UTF-8 pages on the heap of this node.</li>
+ * </ul>
+ * Implementations publish a book atomically: readers never lock and see either no entry or
+ * the complete one. An entry whose identity does not match the current {@link BookKey} is
+ * treated as missing.
+ */
+public interface PageStore {
+
+    /**
+     * Pages of a requested range together with the total page count of the book.
+     *
+     * @param pages Pages of the range.
+     * @param total Total number of pages in the book.
+     */
+    record Range(List<String> pages, int total) {
+    }
+
+    /**
+     * Start pages of the spine items together with the total page count of the book.
+     *
+     * @param starts Start page of every spine item.
+     * @param total  Total number of pages in the book.
+     */
+    record ChapterStarts(int[] starts, int total) {
+    }
+
+    /**
+     * Reads a range of pages.
+     *
+     * @param key  Book identity.
+     * @param from First page (inclusive), clamped to the page count.
+     * @param to   Last page (exclusive), clamped to the page count.
+     * @return Range of pages or null if the book is not stored.
+     * @throws IOException If the entry exists but cannot be read.
+     */
+    Range read(BookKey key, int from, int to) throws IOException;
+
+    /**
+     * Reads the start pages of the spine items.
+     *
+     * @param key Book identity.
+     * @return Start pages or null if the book is not stored.
+     * @throws IOException If the entry exists but cannot be read.
+     */
+    ChapterStarts readChapterStarts(BookKey key) throws IOException;
+
+    /**
+     * Stores a completely paginated book. Failures are logged, not thrown: the book is then
+     * simply paginated again next time.
+     *
+     * @param key           Book identity.
+     * @param pages         Pages of the whole book.
+     * @param chapterStarts Start page of every spine item.
+     */
+    void write(BookKey key, List<String> pages, int[] chapterStarts);
+
+    /**
+     * Tells whether written books are kept at all. A store that is switched off accepts writes
+     * and discards them, so nothing can be prepared in it ahead of requests.
+     *
+     * @return True if a written book can later be read back.
+     */
+    boolean persists();
+}
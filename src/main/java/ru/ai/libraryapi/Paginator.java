@@ -0,0 +1,238 @@
+package ru.ai.libraryapi;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incremental pagination of cleaned chapters.
+ * <p>
+ * Chapters are fed one at a time in reading order. Header-only chapters are merged into the
+ * following chapter, the result is split into pages of at most {@code maxLength} characters,
+ * and every page becomes visible in {@link #pages()} as soon as it is complete.
+ * Feeding all chapters and calling {@link #finish()} yields the same pages as paginating
+ * the whole book at once.
+ * <p>
+ * All decisions are made on the block model of {@link Chapter}, so chapters are not parsed again.
+ * <p>
+ * Every spine item is reported in order, through {@link #accept(Chapter)} or {@link #skip()},
+ * and the paginator records the page on which each of them begins (see {@link #chapterStarts()}).
+ */
+public class Paginator {
+    private static final Logger logger = LoggerFactory.getLogger(Paginator.class);
+
+    private final int maxLength;
+    private final List<String> pages = new ArrayList<>();
+    // Start page of every spine item reported so far; -1 until the page is known
+    private final List<Integer> chapterStarts = new ArrayList<>();
+    private int resolvedStarts;
+
+    private StringBuilder pendingHeader = new StringBuilder();
+    private StringBuilder currentPage = new StringBuilder();
+    private boolean finished;
+    private int unsplittableChapters;
+
+    public Paginator(int maxLength) {
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Adds the next cleaned chapter.
+     *
+     * @param chapter Cleaned, non-blank chapter.
+     */
+    public void accept(Chapter chapter) {
+        if (finished) {
+            throw new IllegalStateException("Paginator is already finished");
+        }
+        chapterStarts.add(-1);
+
+        // Merge standalone headers into the next chapter
+        if (chapter.isPrimarilyHeader()) {
+            pendingHeader.append(chapter.html());
+        } else {
+            if (!pendingHeader.isEmpty()) {
+                split(Chapter.merge(pendingHeader.toString(), chapter));
+                pendingHeader = new StringBuilder();
+            } else {
+                split(chapter);
+            }
+        }
+    }
+
+    /**
+     * Records a spine item without content. It begins where the next chapter with content does.
+     */
+    public void skip() {
+        if (finished) {
+            throw new IllegalStateException("Paginator is already finished");
+        }
+        chapterStarts.add(-1);
+    }
+
+    /**
+     * Flushes pending headers and the last page. No chapters may be added afterwards.
+     */
+    public void finish() {
+        if (finished) {
+            return;
+        }
+
+        if (!pendingHeader.isEmpty()) {
+            split(Chapter.merge(pendingHeader.toString(), null));
+            pendingHeader = new StringBuilder();
+        }
+
+        if (!currentPage.isEmpty()) {
+            pages.add(currentPage.toString());
+            currentPage = new StringBuilder();
+        }
+
+        // Trailing spine items without content belong to the last page
+        resolveStarts(Math.max(pages.size() - 1, 0));
+        finished = true;
+    }
+
+    /**
+     * @return Pages completed so far; the list only grows.
+     */
+    public List<String> pages() {
+        return pages;
+    }
+
+    /**
+     * @return True once {@link #finish()} has been called.
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Returns the page on which each spine item begins. Header chapters merged into the next
+     * chapter and items without content begin on the page of the next chapter with content.
+     * Before {@link #finish()}, the items whose page is not known yet are omitted.
+     *
+     * @return Start pages indexed by spine position.
+     */
+    public int[] chapterStarts() {
+        int[] starts = new int[resolvedStarts];
+        for (int i = 0; i < resolvedStarts; i++) {
+            starts[i] = chapterStarts.get(i);
+        }
+        return starts;
+    }
+
+    /**
+     * @return Number of chapters larger than a page that had no blocks to split by.
+     */
+    public int unsplittableChapters() {
+        return unsplittableChapters;
+    }
+
+    private void split(Chapter chapter) {
+        String html = chapter.html();
+        String trimmedChapter = html.trim();
+        if (trimmedChapter.isEmpty()) {
+            return;
+        }
+
+        int minPageLength = chapter.minPageLength();  // Dynamic min length
+
+        if (chapter.length() > maxLength) {
+            if (!currentPage.isEmpty()) {
+                pages.add(currentPage.toString());
+                currentPage = new StringBuilder();
+            }
+            resolveStarts(pages.size());
+            pages.addAll(splitLargeChapter(chapter));
+            return;
+        }
+
+        boolean isHeader = chapter.isPrimarilyHeader();
+
+        if (chapter.length() < minPageLength || isHeader) {
+            // Merge with current or next by appending to current
+            resolveStarts(pages.size());
+            currentPage.append(html);
+            return;
+        }
+
+        if (currentPage.length() + chapter.length() > maxLength) {
+            if (!currentPage.isEmpty()) {
+                pages.add(currentPage.toString());
+            }
+            currentPage = new StringBuilder();
+        }
+
+        resolveStarts(pages.size());
+        currentPage.append(html);
+    }
+
+    /**
+     * Assigns a page to every spine item reported since the last content was placed.
+     * The current page is always the next one to be added to {@link #pages}.
+     */
+    private void resolveStarts(int page) {
+        for (; resolvedStarts < chapterStarts.size(); resolvedStarts++) {
+            chapterStarts.set(resolvedStarts, page);
+        }
+    }
+
+    private List<String> splitLargeChapter(Chapter chapter) {
+        List<String> subPages = new ArrayList<>();
+        // Blocks [start, end) of every sub-page, used to re-check headers without parsing
+        List<int[]> subRanges = new ArrayList<>();
+
+        StringBuilder current = new StringBuilder();
+        int start = 0;
+
+        for (int i = 0; i < chapter.blockCount(); i++) {
+            String subBlock = chapter.block(i).html();
+
+            if (current.length() + subBlock.length() > maxLength) {
+                String candidate = current.toString().trim();
+                if (!candidate.isEmpty()) {
+                    subPages.add(candidate);
+                    subRanges.add(new int[]{start, i});
+                }
+                current = new StringBuilder();
+                start = i;
+            }
+
+            current.append(subBlock);
+        }
+
+        if (!current.isEmpty()) {
+            String candidate = current.toString().trim();
+            if (!candidate.isEmpty()) {
+                subPages.add(candidate);
+                subRanges.add(new int[]{start, chapter.blockCount()});
+            }
+        }
+
+        // Fallback for unsplittable large elements
+        String trimmedChapter = chapter.html().trim();
+        if (subPages.isEmpty() && !trimmedChapter.isEmpty()) {
+            subPages.add(trimmedChapter);
+            subRanges.add(new int[]{0, chapter.blockCount()});
+            unsplittableChapters++;
+            logger.warn("Added unsplittable large chapter (length: {})", chapter.length());
+        }
+
+        // Post-process to merge standalone headers
+        for (int i = 0; i < subPages.size() - 1; i++) {
+            int[] range = subRanges.get(i);
+            if (chapter.isPrimarilyHeader(range[0], range[1])) {
+                subPages.set(i, subPages.get(i) + subPages.get(i + 1));
+                subRanges.set(i, new int[]{range[0], subRanges.get(i + 1)[1]});
+                subPages.remove(i + 1);
+                subRanges.remove(i + 1);
+                i--;  // Re-check the new merged subpage if needed
+            }
+        }
+
+        return subPages;
+    }
+}
@@ -0,0 +1,165 @@
+package ru.ai.libraryapi;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters of the book pipeline, exposed through Actuator and Prometheus.
+ * <p>
+ * Timers publish percentile histograms, so p99 per stage can be computed on the server side.
+ * Stage timers are recorded once per request with the time the request spent in the stage.
+ */
+@Component
+public class PipelineMetrics {
+
+    /**
+     * Stages of the pipeline.
+     */
+    public enum Stage {
+        /** Opening the archive, resolving the spine and reading chapter entries. */
+        EXTRACT,
+        /** Cleaning chapters and building their block models. */
+        CLEAN,
+        /** Merging header chapters and splitting pages. */
+        PAGINATE
+    }
+
+    /**
+     * Where a request was answered from.
+     */
+    public enum Source {
+        CACHE, INDEX, PIPELINE, ERROR
+    }
+
+    /**
+     * Why a request was shed with 503.
+     */
+    public enum Shed {
+        /** Every worker was busy and the queue was full. */
+        SATURATED,
+        /** The request was not answered within its deadline. */
+        DEADLINE
+    }
+
+    private final Map<Stage, Timer> stages = new EnumMap<>(Stage.class);
+    private final Map<Source, Timer> requests = new EnumMap<>(Source.class);
+    private final Map<Shed, Counter> shed = new EnumMap<>(Shed.class);
+
+    private final Counter bytesRead;
+    private final Counter blankChapters;
+    private final Counter reusedChapters;
+    private final Counter failedChapters;
+    private final Counter unsplittableChapters;
+    private final Counter prefetchScheduled;
+    private final Counter prefetchDropped;
+    private final DistributionSummary chapterBytes;
+    private final DistributionSummary bookPages;
+
+    public PipelineMetrics(MeterRegistry registry) {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, Timer.builder("book.pipeline.stage")
+                    .description("Time a request spent in a pipeline stage")
+                    .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        for (Source source : Source.values()) {
+            requests.put(source, Timer.builder("book.pipeline.total")
+                    .description("Total time of a pages request")
+                    .tag("source", source.name().toLowerCase(Locale.ROOT))
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        for (Shed reason : Shed.values()) {
+            shed.put(reason, Counter.builder("book.pipeline.requests.shed")
+                    .description("Page requests rejected with 503 under overload")
+                    .tag("reason", reason.name().toLowerCase(Locale.ROOT))
+                    .register(registry));
+        }
+
+        bytesRead = Counter.builder("book.pipeline.bytes.read")
+                .description("Uncompressed bytes of chapter entries read from EPUB archives")
+                .baseUnit("bytes")
+                .register(registry);
+        blankChapters = Counter.builder("book.pipeline.chapters.blank")
+                .description("Chapters dropped because they were blank after cleaning")
+                .register(registry);
+        reusedChapters = Counter.builder("book.pipeline.chapters.reused")
+                .description("Chapters taken from the content-addressed chapter cache instead of being cleaned")
+                .register(registry);
+        failedChapters = Counter.builder("book.pipeline.chapters.failed")
+                .description("Chapters dropped because cleaning failed")
+                .register(registry);
+        unsplittableChapters = Counter.builder("book.pipeline.chapters.unsplittable")
+                .description("Chapters larger than a page that could not be split into blocks")
+                .register(registry);
+        prefetchScheduled = Counter.builder("book.pipeline.prefetch")
+                .description("Background paginations of the next windows of sequentially read books")
+                .tag("result", "scheduled")
+                .register(registry);
+        prefetchDropped = Counter.builder("book.pipeline.prefetch")
+                .description("Background paginations of the next windows of sequentially read books")
+                .tag("result", "dropped")
+                .register(registry);
+        chapterBytes = DistributionSummary.builder("book.pipeline.chapter.size")
+                .description("Uncompressed size of chapter entries")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .register(registry);
+        bookPages = DistributionSummary.builder("book.pipeline.book.pages")
+                .description("Number of pages of completely paginated books")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public void recordStage(Stage stage, long nanos) {
+        stages.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordRequest(Source source, long nanos) {
+        requests.get(source).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void requestShed(Shed reason) {
+        shed.get(reason).increment();
+    }
+
+    public void chapterRead(long bytes) {
+        bytesRead.increment(bytes);
+        chapterBytes.record(bytes);
+    }
+
+    public void chapterBlank() {
+        blankChapters.increment();
+    }
+
+    public void chapterReused() {
+        reusedChapters.increment();
+    }
+
+    public void chapterFailed() {
+        failedChapters.increment();
+    }
+
+    public void chaptersUnsplittable(int count) {
+        if (count > 0) {
+            unsplittableChapters.increment(count);
+        }
+    }
+
+    public void prefetch(boolean scheduled) {
+        (scheduled ? prefetchScheduled : prefetchDropped).increment();
+    }
+
+    public void bookPaginated(int pages) {
+        bookPages.record(pages);
+    }
+}
@@ -0,0 +1,111 @@
+package ru.ai.libraryapi;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * Detects page-by-page reading and paginates the following windows of a book in the background.
+ * <p>
+ * The last range requested of every book is remembered. A range that starts inside or right at
+ * the end of the previous one and goes past it is sequential: the reader is turning pages, so
+ * the next {@code windows} ranges of the same size are prepared before they are asked for.
+ * <p>
+ * Prefetching is best effort and bounded for the whole service: it runs on {@code threads}
+ * threads of its own with a short queue, and work that does not fit into the queue is dropped
+ * rather than delayed. Prefetched chapters are cleaned on these threads rather than on the
+ * shared {@link CleanPool}, so prefetching never uses more than {@code threads} cores and
+ * readers' own requests keep every cleaning worker. Thread priority is not relied upon:
+ * Linux ignores it by default.
+ */
+@Component
+public class Prefetcher {
+    private static final Logger logger = LoggerFactory.getLogger(Prefetcher.class);
+
+    /**
+     * Last range requested of a book and how far ahead it has been prefetched.
+     */
+    private record Access(int from, int to, int prefetched) {
+    }
+
+    private final int windows;
+    private final Cache<BookKey, Access> accesses;
+    private final ThreadPoolExecutor executor;
+    private final PipelineMetrics metrics;
+
+    public Prefetcher(BookCfg bookCfg, PipelineMetrics metrics) {
+        this.metrics = metrics;
+        this.windows = bookCfg.PREFETCH_WINDOWS;
+        if (windows > 0 && bookCfg.PREFETCH_THREADS > 0) {
+            this.accesses = Caffeine.newBuilder()
+                    .maximumSize(bookCfg.CURSOR_MAX_COUNT)
+                    .expireAfterAccess(Duration.ofMinutes(bookCfg.CURSOR_TTL_MINUTES))
+                    .build();
+            this.executor = new ThreadPoolExecutor(bookCfg.PREFETCH_THREADS, bookCfg.PREFETCH_THREADS,
+                    0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(bookCfg.PREFETCH_QUEUE, 1)),
+                    Thread.ofPlatform().name("prefetch-", 0).daemon(true).factory(),
+                    new ThreadPoolExecutor.AbortPolicy());
+            logger.info("Prefetch of {} windows on {} threads", windows, bookCfg.PREFETCH_THREADS);
+        } else {
+            this.accesses = null;
+            this.executor = null;
+            logger.info("Prefetch disabled");
+        }
+    }
+
+    /**
+     * Records a requested range and, if the book is being read sequentially, schedules
+     * pagination of the following windows.
+     *
+     * @param key      Book identity.
+     * @param from     First requested page.
+     * @param to       End of the requested range.
+     * @param prefetch Paginates the book up to the given number of pages; must handle its own errors.
+     */
+    public void observe(BookKey key, int from, int to, IntConsumer prefetch) {
+        if (executor == null || to <= from) {
+            return;
+        }
+
+        int target = to + windows * (to - from);
+        int[] scheduled = {-1};
+        accesses.asMap().compute(key, (k, last) -> {
+            boolean sequential = last != null && from > last.from() && from <= last.to() && to > last.to();
+            if (!sequential || last.prefetched() >= target) {
+                return new Access(from, to, last != null ? last.prefetched() : 0);
+            }
+            scheduled[0] = target;
+            return new Access(from, to, target);
+        });
+
+        if (scheduled[0] < 0) {
+            return;
+        }
+        try {
+            executor.execute(() -> prefetch.accept(target));
+            metrics.prefetch(true);
+        } catch (RejectedExecutionException e) {
+            // Queue is full: forget the window so that the next page turn may try again
+            accesses.asMap().computeIfPresent(key, (k, access) -> new Access(access.from(), access.to(), 0));
+            metrics.prefetch(false);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
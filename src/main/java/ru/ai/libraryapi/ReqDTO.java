@@ -1,5 +1,6 @@
 package ru.ai.libraryapi;
 
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 
@@ -7,7 +8,7 @@ import jakarta.validation.constraints.NotBlank;
  * DTO для запроса страниц EPUB книги.
  * 
  * Содержит параметры для получения определенного диапазона страниц
- * из EPUB файла по указанному пути.
+ * из EPUB файла по указанному пути и, при необходимости, размер страницы.
  */
 public record ReqDTO(
         /**
@@ -29,5 +30,22 @@ public record ReqDTO(
          * Не может быть меньше 0.
          */
         @Min(value = 0, message = "Параметр to не может быть меньше 0")
-        int to
-) {}
+        int to,
+
+        /**
+         * Максимальный размер страницы в символах.
+         * Если не указан, используется app.library.max-length.
+         * Допустимы только размеры из app.library.page-sizes, это проверяет контроллер.
+         */
+        @Min(value = 100, message = "Параметр maxLength не может быть меньше 100")
+        @Max(value = 100000, message = "Параметр maxLength не может быть больше 100000")
+        Integer maxLength
+) {
+
+    /**
+     * Запрос с размером страницы по умолчанию.
+     */
+    public ReqDTO(String path, int from, int to) {
+        this(path, from, to, null);
+    }
+}
@@ -0,0 +1,170 @@
+package ru.ai.libraryapi;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Bounded executor for page requests, so that servlet threads are released while a book is
+ * being paginated and a burst of large books cannot queue without limit.
+ * <p>
+ * At most {@code threads} requests run at once and at most {@code queue} more wait for a worker.
+ * A request beyond that is rejected immediately with {@link OverloadedException}. A request that
+ * is not answered within the deadline fails the same way; if it is still queued by then it is
+ * dropped without running. A request already running is not interrupted: interrupting a thread
+ * closes the file channels the page index and the archives are mapped through.
+ * <p>
+ * Streamed responses run on the servlet container's async executor for as long as the client
+ * reads, so they are not queued here; they take one of the same {@code threads + queue}
+ * admission slots via {@link #admit()} instead, and are shed the same way.
+ * <p>
+ * In virtual-thread mode every admitted request gets a virtual thread of its own, so waiting on
+ * the page index, archives and the decode budget does not hold a platform thread; the book
+ * checkpoint is guarded by a {@link java.util.concurrent.locks.ReentrantLock} rather than
+ * a monitor, because on Java 21 blocking inside {@code synchronized} pins the carrier thread.
+ * CPU-heavy cleaning stays bounded by {@link CleanPool}. With 0 threads requests run
+ * synchronously on the servlet thread and nothing is shed.
+ */
+@Component
+public class RequestPool {
+    private static final Logger logger = LoggerFactory.getLogger(RequestPool.class);
+
+    private final ExecutorService executor;
+    private final Semaphore admission;
+    private final long timeoutMillis;
+    private final int retryAfterSeconds;
+    private final PipelineMetrics metrics;
+
+    public RequestPool(BookCfg bookCfg, PipelineMetrics metrics) {
+        this.metrics = metrics;
+        this.timeoutMillis = bookCfg.ASYNC_TIMEOUT_MILLIS;
+        this.retryAfterSeconds = Math.max(bookCfg.ASYNC_RETRY_AFTER_SECONDS, 1);
+
+        int threads = bookCfg.ASYNC_THREADS;
+        int queue = Math.max(bookCfg.ASYNC_QUEUE, 0);
+        if (threads <= 0) {
+            this.executor = null;
+            this.admission = null;
+            logger.info("Asynchronous page requests disabled");
+        } else if (bookCfg.ASYNC_VIRTUAL_THREADS) {
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("pages-", 0).factory());
+            this.admission = new Semaphore(threads + queue);
+            logger.info("Page requests on virtual threads, at most {} at once", threads + queue);
+        } else {
+            // The queue itself is bounded by the admission slots
+            this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(), Thread.ofPlatform().name("pages-", 0).factory(),
+                    new ThreadPoolExecutor.AbortPolicy());
+            this.admission = new Semaphore(threads + queue);
+            logger.info("Page requests on {} threads, queue {}", threads, queue);
+        }
+    }
+
+    /**
+     * Runs a request on the pool.
+     *
+     * @param task Request handler; must handle its own errors.
+     * @return Result of the task, or a future failed with {@link OverloadedException} if the pool
+     * is saturated or the deadline passes first.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        if (executor == null) {
+            return CompletableFuture.completedFuture(task.get());
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (!admission.tryAcquire()) {
+            return rejected(result);
+        }
+
+        Runnable job = () -> {
+            try {
+                // Completed by the deadline while still queued: nobody waits for the answer
+                if (!result.isDone()) {
+                    result.complete(task.get());
+                }
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                admission.release();
+            }
+        };
+
+        try {
+            executor.execute(job);
+        } catch (RejectedExecutionException e) {
+            admission.release();
+            return rejected(result);
+        }
+
+        if (timeoutMillis > 0) {
+            CompletableFuture.delayedExecutor(timeoutMillis, TimeUnit.MILLISECONDS).execute(() -> {
+                if (result.completeExceptionally(new OverloadedException(
+                        "Request deadline of " + timeoutMillis + " ms exceeded", retryAfterSeconds))) {
+                    metrics.requestShed(PipelineMetrics.Shed.DEADLINE);
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Slot taken by a request that runs outside the pool.
+     */
+    public interface Admission extends AutoCloseable {
+        /**
+         * Returns the slot; further calls do nothing.
+         */
+        @Override
+        void close();
+    }
+
+    /**
+     * Takes an admission slot for a request that runs elsewhere, such as a streamed response.
+     *
+     * @return Slot to close once the request is finished.
+     * @throws OverloadedException If every slot is taken.
+     */
+    public Admission admit() {
+        if (admission == null) {
+            return () -> {
+            };
+        }
+        if (!admission.tryAcquire()) {
+            metrics.requestShed(PipelineMetrics.Shed.SATURATED);
+            throw new OverloadedException("Too many requests in progress", retryAfterSeconds);
+        }
+        AtomicBoolean closed = new AtomicBoolean();
+        return () -> {
+            if (closed.compareAndSet(false, true)) {
+                admission.release();
+            }
+        };
+    }
+
+    private <T> CompletableFuture<T> rejected(CompletableFuture<T> result) {
+        metrics.requestShed(PipelineMetrics.Shed.SATURATED);
+        result.completeExceptionally(new OverloadedException("Too many requests in progress", retryAfterSeconds));
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
@@ -7,11 +7,14 @@ import java.util.List;
  *
  * Содержит список страниц, где каждая страница представляет собой
  * список HTML блоков с очищенным контентом.
+ * Если книга ещё не разобрана до конца, {@code total} является оценкой
+ * и {@code totalEstimated} равен true.
  */
 public record ResDTO(
         List<List<String>> pages,
         int from,
         int to,
-        int total
+        int total,
+        boolean totalEstimated
 ) {
 }
@@ -0,0 +1,53 @@
+package ru.ai.libraryapi;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Coalesces concurrent calls for the same key.
+ * <p>
+ * The first caller for a key runs the work; callers arriving while it is in flight wait for
+ * the same result instead of repeating it. Keys are tracked in a concurrent map without
+ * locks, so calls for different keys never wait for each other. Once the work completes the
+ * key is released and the next call starts a new flight.
+ *
+ * @param <K> Key type.
+ * @param <V> Result type.
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Runs the work for a key or joins the flight already running for it.
+     *
+     * @param key  Key identifying the work.
+     * @param work Work to run if no flight is in progress.
+     * @return Result of this or of the joined flight.
+     * @throws Exception Failure of the work, rethrown to every waiting caller.
+     */
+    public V run(K key, Callable<V> work) throws Exception {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> leader = inFlight.putIfAbsent(key, flight);
+        if (leader != null) {
+            try {
+                return leader.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+        }
+
+        try {
+            V value = work.call();
+            flight.complete(value);
+            return value;
+        } catch (Throwable e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+}
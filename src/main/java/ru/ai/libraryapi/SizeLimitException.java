@@ -0,0 +1,14 @@
+package ru.ai.libraryapi;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a book or one of its entries exceeds a configured size limit.
+ */
+public class SizeLimitException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public SizeLimitException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,73 @@
+package ru.ai.libraryapi;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes completely paginated books to the {@link PageStore} in the background.
+ * <p>
+ * A book is put into the page cache before it is written, so requests are served from memory
+ * meanwhile. Writing on the request thread would instead keep the reader, and every request
+ * waiting for the book's checkpoint, waiting for the disk. Writes run one at a time on a thread
+ * of their own. When they fall more than {@value #QUEUE} books behind, further books are not
+ * written: they stay in the page cache and are written the next time they are paginated.
+ */
+@Component
+public class StoreWriter {
+    private static final Logger logger = LoggerFactory.getLogger(StoreWriter.class);
+
+    private static final int QUEUE = 64;
+
+    // Time given to pending writes when the application stops
+    private static final long SHUTDOWN_SECONDS = 10;
+
+    private final PageStore pageStore;
+    private final ThreadPoolExecutor executor;
+
+    public StoreWriter(PageStore pageStore) {
+        this.pageStore = pageStore;
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(QUEUE),
+                Thread.ofPlatform().name("page-store-writer").daemon(true).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Schedules a book to be written to the page store. Returns at once.
+     *
+     * @param key           Book identity.
+     * @param pages         Pages of the whole book; must not change afterwards.
+     * @param chapterStarts Start page of every spine item.
+     */
+    public void write(BookKey key, List<String> pages, int[] chapterStarts) {
+        if (!pageStore.persists()) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    pageStore.write(key, pages, chapterStarts);
+                } catch (RuntimeException e) {
+                    logger.warn("Failed to store pages of {}: {}", key.path(), e.toString());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("Page store writes are behind, not storing {}", key.path());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(SHUTDOWN_SECONDS, TimeUnit.SECONDS)) {
+            logger.warn("Page store writes still pending at shutdown: {}", executor.getQueue().size());
+        }
+    }
+}
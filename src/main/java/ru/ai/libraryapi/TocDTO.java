@@ -0,0 +1,18 @@
+package ru.ai.libraryapi;
+
+import java.util.List;
+
+/**
+ * DTO для ответа с оглавлением EPUB книги.
+ *
+ * Для каждого раздела оглавления и каждого документа в порядке чтения (spine)
+ * указана страница, с которой он начинается, поэтому переход к главе требует
+ * одного запроса диапазона страниц. Число страниц всегда точное.
+ */
+public record TocDTO(
+        String title,
+        int total,
+        List<Integer> chapters,
+        List<TocEntryDTO> entries
+) {
+}
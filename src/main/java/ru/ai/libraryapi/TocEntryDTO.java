@@ -0,0 +1,17 @@
+package ru.ai.libraryapi;
+
+/**
+ * Элемент оглавления книги.
+ *
+ * @param title   Название раздела.
+ * @param depth   Уровень вложенности, 0 для разделов верхнего уровня.
+ * @param chapter Номер документа в порядке чтения (spine), на который указывает раздел.
+ * @param page    Номер страницы, с которой начинается раздел.
+ */
+public record TocEntryDTO(
+        String title,
+        int depth,
+        int chapter,
+        int page
+) {
+}
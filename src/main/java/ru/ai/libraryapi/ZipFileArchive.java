@@ -0,0 +1,51 @@
+package ru.ai.libraryapi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * {@link EpubArchive} over {@link ZipFile}, used for archives that {@link MappedZip} cannot map.
+ * Owns the file handle, which is released by {@link #close()}.
+ */
+class ZipFileArchive implements EpubArchive {
+    private final ZipFile zip;
+
+    ZipFileArchive(ZipFile zip) {
+        this.zip = zip;
+    }
+
+    @Override
+    public long size(String name) {
+        ZipEntry entry = zip.getEntry(name);
+        return entry != null ? entry.getSize() : -1;
+    }
+
+    @Override
+    public String readText(String name) throws IOException {
+        ZipEntry entry = zip.getEntry(name);
+        if (entry == null) {
+            return null;
+        }
+        try (InputStream is = zip.getInputStream(entry)) {
+            // Never decode more than the declared size, whatever the compressed stream expands to
+            byte[] content = entry.getSize() >= 0 && entry.getSize() < Integer.MAX_VALUE
+                    ? is.readNBytes((int) entry.getSize())
+                    : is.readAllBytes();
+            return new String(content, StandardCharsets.UTF_8);
+        }
+    }
+
+    @Override
+    public InputStream open(String name) throws IOException {
+        ZipEntry entry = zip.getEntry(name);
+        return entry != null ? zip.getInputStream(entry) : null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        zip.close();
+    }
+}
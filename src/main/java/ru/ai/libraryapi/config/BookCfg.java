@@ -1,10 +1,22 @@
 package ru.ai.libraryapi.config;
 
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
 
 /**
  * Конфигурация для работы с библиотекой книг.
@@ -12,8 +24,17 @@ import java.nio.file.Paths;
  * Содержит настройки путей к библиотеке и параметры
  * разбиения книг на страницы.
  */
+@Slf4j
 @Configuration
 public class BookCfg {
+
+    /**
+     * Версия алгоритма очистки глав. Увеличивается при любом изменении очистки, меняющем текст
+     * страниц, чтобы ранее разобранные книги не выдавались из индекса и кешей клиентов.
+     */
+    private static final int CLEAN_VERSION = 1;
+
+    private Long cleanRulesFingerprint;
     
     /**
      * Директория библиотеки относительно рабочей директории приложения.
@@ -22,11 +43,268 @@ public class BookCfg {
     public String LIBRARY_DIR;
 
     /**
-     * Максимальный размер страницы в символах.
+     * Максимальный размер страницы в символах по умолчанию, если он не указан в запросе.
      */
     @Value("${app.library.max-length}")
     public int LIBRARY_MAX_LENGTH;
 
+    /**
+     * Размеры страницы, которые клиент может указать в maxLength, через запятую.
+     * Размер по умолчанию допустим всегда. Для каждого размера книга разбирается и хранится
+     * отдельно, поэтому список ограничивает число копий одной книги в кешах и индексе.
+     */
+    @Value("${app.library.page-sizes:500, 1000, 2000, 4000}")
+    public String PAGE_SIZES;
+
+    private SortedSet<Integer> pageSizes;
+
+    /**
+     * Бюджет памяти кэша страниц в байтах (0 — кэш отключён, отрицательное значение —
+     * 15% максимального heap).
+     */
+    @Value("${app.library.cache.max-bytes:-1}")
+    public long CACHE_MAX_BYTES;
+
+    /**
+     * Бюджет памяти кэша очищенных глав в байтах, из которых книга разбивается
+     * на страницы другого размера без повторного разбора EPUB (0 — кэш отключён,
+     * отрицательное значение — 8% максимального heap).
+     */
+    @Value("${app.library.layout.max-bytes:-1}")
+    public long LAYOUT_CACHE_MAX_BYTES;
+
+    /**
+     * Максимальный объём очищенных глав одной книги в байтах, которые собираются для кэша глав
+     * во время разбора. Главы держатся в памяти до конца разбора книги, поэтому у книги
+     * большего объёма они отбрасываются и в кэш она не попадает.
+     */
+    @Value("${app.library.layout.max-book-bytes:16777216}")
+    public long LAYOUT_MAX_BOOK_BYTES;
+
+    /**
+     * Бюджет памяти кэша очищенных глав, адресуемых по содержимому исходного XHTML, в байтах.
+     * Одинаковые главы разных книг и изданий очищаются один раз (0 — кэш отключён,
+     * отрицательное значение — 5% максимального heap).
+     */
+    @Value("${app.library.chapter-cache.max-bytes:-1}")
+    public long CHAPTER_CACHE_MAX_BYTES;
+
+    /**
+     * Директория индекса страниц относительно рабочей директории или абсолютный путь,
+     * например общий том нескольких реплик (пусто — индекс отключён).
+     * Используется хранилищем страниц типа file.
+     */
+    @Value("${app.library.index.dir:}")
+    public String INDEX_DIR;
+
+    /**
+     * Число книг, файлы индекса которых остаются отображёнными в память между запросами.
+     */
+    @Value("${app.library.index.max-mapped:256}")
+    public int INDEX_MAPPED_MAX_ENTRIES;
+
+    /**
+     * Тип хранилища разобранных книг: file — файлы индекса в INDEX_DIR, memory — heap узла.
+     */
+    @Value("${app.library.store.type:file}")
+    public String STORE_TYPE;
+
+    /**
+     * Бюджет памяти хранилища страниц типа memory в байтах
+     * (отрицательное значение — 10% максимального heap).
+     */
+    @Value("${app.library.store.memory-max-bytes:-1}")
+    public long STORE_MEMORY_MAX_BYTES;
+
+    /**
+     * Максимальное число книг с незавершённой ленивой пагинацией.
+     */
+    @Value("${app.library.lazy.max-cursors}")
+    public int CURSOR_MAX_COUNT;
+
+    /**
+     * Время жизни неиспользуемой контрольной точки пагинации в минутах.
+     */
+    @Value("${app.library.lazy.cursor-ttl-minutes}")
+    public int CURSOR_TTL_MINUTES;
+
+    /**
+     * Число потоков параллельной очистки глав (0 — по числу ядер, 1 — последовательно).
+     */
+    @Value("${app.library.clean.parallelism:0}")
+    public int CLEAN_PARALLELISM;
+
+    /**
+     * CSS-селекторы элементов, удаляемых из глав вместе с содержимым (пусто — ничего не удалять).
+     */
+    @Value("${app.library.clean.remove:img, svg, meta, link, style}")
+    public String CLEAN_REMOVE_SELECTORS;
+
+    /**
+     * CSS-селекторы элементов, заменяемых своим содержимым (пусто — ничего не разворачивать).
+     */
+    @Value("${app.library.clean.unwrap:span, a, b, strong, i, em}")
+    public String CLEAN_UNWRAP_SELECTORS;
+
+    /**
+     * Число книг, для которых хранится разобранный пакет OPF (spine и метаданные).
+     */
+    @Value("${app.library.package-cache.max-entries:4096}")
+    public int PACKAGE_CACHE_MAX_ENTRIES;
+
+    /**
+     * Число книг, архивы которых остаются отображёнными в память вместе с центральным каталогом.
+     */
+    @Value("${app.library.archive-cache.max-entries:256}")
+    public int ARCHIVE_CACHE_MAX_ENTRIES;
+
+    /**
+     * Максимальный распакованный размер одного файла внутри EPUB в байтах (0 — без ограничения).
+     */
+    @Value("${app.library.limits.max-entry-bytes:33554432}")
+    public long MAX_ENTRY_BYTES;
+
+    /**
+     * Максимальный суммарный распакованный размер глав одной книги в байтах (0 — без ограничения).
+     */
+    @Value("${app.library.limits.max-book-bytes:536870912}")
+    public long MAX_BOOK_BYTES;
+
+    /**
+     * Бюджет памяти на главы, одновременно находящиеся в очистке, по всему сервису
+     * в байтах распакованного текста (0 — без ограничения, отрицательное значение —
+     * 15% максимального heap).
+     */
+    @Value("${app.library.limits.max-inflight-bytes:-1}")
+    public long MAX_INFLIGHT_BYTES;
+
+    /**
+     * Сканировать библиотеку при старте и отслеживать изменения файлов.
+     */
+    @Value("${app.library.catalog.enabled:true}")
+    public boolean CATALOG_ENABLED;
+
+    /**
+     * Число самых запрашиваемых книг для фоновой пагинации (0 — отключено).
+     */
+    @Value("${app.library.catalog.warm-top:0}")
+    public int CATALOG_WARM_TOP;
+
+    /**
+     * Интервал фоновой пагинации в минутах.
+     */
+    @Value("${app.library.catalog.warm-interval-minutes:10}")
+    public int CATALOG_WARM_INTERVAL_MINUTES;
+
+    /**
+     * Число книг, разбираемых фоновой пагинацией одновременно. Каждая занимает
+     * не больше одного ядра.
+     */
+    @Value("${app.library.catalog.warm-concurrency:1}")
+    public int CATALOG_WARM_CONCURRENCY;
+
+    /**
+     * Время жизни ответов GET /epub/pages в кэшах HTTP в секундах.
+     */
+    @Value("${app.library.http.max-age-seconds:3600}")
+    public long HTTP_MAX_AGE_SECONDS;
+
+    /**
+     * Бюджет памяти кэша закодированных ответов в байтах (0 — кэш отключён,
+     * отрицательное значение — 5% максимального heap).
+     */
+    @Value("${app.library.http.encoded-cache-bytes:-1}")
+    public long ENCODED_CACHE_MAX_BYTES;
+
+    /**
+     * Максимальное число элементов в одном пакетном запросе страниц.
+     */
+    @Value("${app.library.batch.max-items:100}")
+    public int BATCH_MAX_ITEMS;
+
+    /**
+     * Число книг пакетного запроса, обрабатываемых одновременно,
+     * и число общих вспомогательных потоков пакетных запросов.
+     */
+    @Value("${app.library.batch.parallelism:4}")
+    public int BATCH_PARALLELISM;
+
+    /**
+     * Число следующих окон (диапазонов того же размера), заранее разбираемых при
+     * последовательном чтении книги (0 — предзагрузка отключена).
+     */
+    @Value("${app.library.prefetch.windows:2}")
+    public int PREFETCH_WINDOWS;
+
+    /**
+     * Число потоков предзагрузки на весь сервис; главы предзагрузки очищаются
+     * в этих же потоках, а не в общем пуле очистки.
+     */
+    @Value("${app.library.prefetch.threads:1}")
+    public int PREFETCH_THREADS;
+
+    /**
+     * Число ожидающих задач предзагрузки; задачи сверх него отбрасываются.
+     */
+    @Value("${app.library.prefetch.queue:16}")
+    public int PREFETCH_QUEUE;
+
+    /**
+     * Число потоков, обрабатывающих запросы страниц вне потоков сервлет-контейнера
+     * (0 — запросы обрабатываются синхронно).
+     */
+    @Value("${app.library.async.threads:16}")
+    public int ASYNC_THREADS;
+
+    /**
+     * Число запросов страниц, ожидающих свободного потока; сверх него запросы отклоняются с 503.
+     */
+    @Value("${app.library.async.queue:64}")
+    public int ASYNC_QUEUE;
+
+    /**
+     * Срок ответа на запрос страниц в миллисекундах, после которого возвращается 503 (0 — без срока).
+     */
+    @Value("${app.library.async.timeout-ms:30000}")
+    public long ASYNC_TIMEOUT_MILLIS;
+
+    /**
+     * Значение заголовка Retry-After в секундах для отклонённых запросов.
+     */
+    @Value("${app.library.async.retry-after-seconds:1}")
+    public int ASYNC_RETRY_AFTER_SECONDS;
+
+    /**
+     * Обрабатывать каждый запрос страниц в отдельном виртуальном потоке.
+     * Одновременно принимается не более threads + queue запросов.
+     */
+    @Value("${app.library.async.virtual-threads:false}")
+    public boolean ASYNC_VIRTUAL_THREADS;
+
+    /**
+     * Заменяет незаданные (отрицательные) бюджеты памяти долями максимального heap, чтобы
+     * настройки по умолчанию помещались в heap любого размера. Вместе доли по умолчанию
+     * занимают не больше 58% heap (48% при хранилище file), остальное остаётся запросам.
+     */
+    @PostConstruct
+    void resolveHeapBudgets() {
+        long heap = Runtime.getRuntime().maxMemory();
+        CACHE_MAX_BYTES = heapShare(CACHE_MAX_BYTES, heap, 15);
+        LAYOUT_CACHE_MAX_BYTES = heapShare(LAYOUT_CACHE_MAX_BYTES, heap, 8);
+        CHAPTER_CACHE_MAX_BYTES = heapShare(CHAPTER_CACHE_MAX_BYTES, heap, 5);
+        ENCODED_CACHE_MAX_BYTES = heapShare(ENCODED_CACHE_MAX_BYTES, heap, 5);
+        MAX_INFLIGHT_BYTES = heapShare(MAX_INFLIGHT_BYTES, heap, 15);
+        STORE_MEMORY_MAX_BYTES = heapShare(STORE_MEMORY_MAX_BYTES, heap, 10);
+        log.info("Бюджеты памяти при heap {} байт: страницы {}, главы {}, главы по содержимому {}, "
+                        + "закодированные ответы {}, очистка {}, хранилище memory {}",
+                heap, CACHE_MAX_BYTES, LAYOUT_CACHE_MAX_BYTES, CHAPTER_CACHE_MAX_BYTES,
+                ENCODED_CACHE_MAX_BYTES, MAX_INFLIGHT_BYTES, STORE_MEMORY_MAX_BYTES);
+    }
+
+    private static long heapShare(long configured, long heap, int percent) {
+        return configured >= 0 ? configured : heap / 100 * percent;
+    }
+
     /**
      * Возвращает полный путь к библиотеке книг.
      * 
@@ -37,4 +315,82 @@ public class BookCfg {
         String baseDir = Paths.get(System.getProperty("user.dir")).toString();
         return Paths.get(baseDir, LIBRARY_DIR).toString();
     }
-}
\ No newline at end of file
+
+    /**
+     * Возвращает полный путь к директории индекса страниц.
+     *
+     * @return абсолютный путь к директории индекса или null, если индекс отключён
+     */
+    public Path getIndexPath() {
+        if (INDEX_DIR == null || INDEX_DIR.isBlank()) {
+            return null;
+        }
+        return Paths.get(System.getProperty("user.dir")).resolve(INDEX_DIR);
+    }
+
+    /**
+     * Возвращает размеры страницы, которые клиент может указать в maxLength.
+     *
+     * @return размер по умолчанию и размеры из PAGE_SIZES по возрастанию
+     */
+    public SortedSet<Integer> getPageSizes() {
+        SortedSet<Integer> sizes = pageSizes;
+        if (sizes == null) {
+            sizes = new TreeSet<>();
+            sizes.add(LIBRARY_MAX_LENGTH);
+            if (PAGE_SIZES != null) {
+                Arrays.stream(PAGE_SIZES.split(","))
+                        .map(String::strip)
+                        .filter(size -> !size.isEmpty())
+                        .map(Integer::valueOf)
+                        .forEach(sizes::add);
+            }
+            sizes = Collections.unmodifiableSortedSet(sizes);
+            pageSizes = sizes;
+        }
+        return sizes;
+    }
+
+    /**
+     * Проверяет, может ли клиент запросить страницы указанного размера.
+     *
+     * @param maxLength размер страницы из запроса или null для размера по умолчанию
+     * @return true, если размер не указан или входит в {@link #getPageSizes()}
+     */
+    public boolean isAllowedPageSize(Integer maxLength) {
+        return maxLength == null || getPageSizes().contains(maxLength);
+    }
+
+    /**
+     * Возвращает отпечаток правил очистки глав. Правила меняют текст страниц, поэтому отпечаток
+     * входит в идентичность разобранной книги: в ключ кешей, в файл индекса страниц и в ETag.
+     * Списки селекторов сравниваются без лишних пробелов и пустых элементов.
+     *
+     * @return первые 64 бита SHA-256 версии очистки и нормализованных списков селекторов
+     */
+    public long getCleanRulesFingerprint() {
+        Long fingerprint = cleanRulesFingerprint;
+        if (fingerprint == null) {
+            String rules = CLEAN_VERSION + "\0" + normalizeSelectors(CLEAN_REMOVE_SELECTORS)
+                    + '\0' + normalizeSelectors(CLEAN_UNWRAP_SELECTORS);
+            try {
+                byte[] hash = MessageDigest.getInstance("SHA-256").digest(rules.getBytes(StandardCharsets.UTF_8));
+                fingerprint = ByteBuffer.wrap(hash).getLong();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+            cleanRulesFingerprint = fingerprint;
+        }
+        return fingerprint;
+    }
+
+    private static String normalizeSelectors(String selectors) {
+        if (selectors == null) {
+            return "";
+        }
+        return Arrays.stream(selectors.split(","))
+                .map(selector -> selector.strip().replaceAll("\\s+", " "))
+                .filter(selector -> !selector.isEmpty())
+                .collect(Collectors.joining(","));
+    }
+}
@@ -1,11 +1,15 @@
 package ru.ai.libraryapi.config;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.server.ResponseStatusException;
+import ru.ai.libraryapi.OverloadedException;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -41,6 +45,53 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errors);
     }
 
+    /**
+     * Обработка исключений с явно заданным статусом ответа, например
+     * превышения числа элементов пакетного запроса (400).
+     *
+     * @param ex исключение со статусом
+     * @return ответ с этим статусом и описанием причины
+     */
+    @ExceptionHandler(ResponseStatusException.class)
+    public ResponseEntity<Map<String, String>> handleResponseStatus(ResponseStatusException ex) {
+        log.warn("Запрос отклонён со статусом {}: {}", ex.getStatusCode().value(), ex.getReason());
+
+        String reason = ex.getReason() != null ? ex.getReason() : ex.getStatusCode().toString();
+        return ResponseEntity.status(ex.getStatusCode())
+                .headers(ex.getHeaders())
+                .body(Map.of("error", reason));
+    }
+
+    /**
+     * Обработка перегрузки: запрос отклонён из-за заполненной очереди или истёк его срок.
+     * Клиенту возвращается 503 с заголовком Retry-After.
+     *
+     * @param ex исключение перегрузки
+     * @return ответ с описанием причины
+     */
+    @ExceptionHandler(OverloadedException.class)
+    public ResponseEntity<Map<String, String>> handleOverloaded(OverloadedException ex) {
+        log.warn("Запрос отклонён: {}", ex.getMessage());
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.retryAfterSeconds()))
+                .body(Map.of("error", ex.getMessage()));
+    }
+
+    /**
+     * Обработка запросов, заголовок Accept которых некорректен или не допускает ни одного
+     * из типов ответа. Тело не передаётся: его тип клиент не принимает.
+     *
+     * @param ex исключение согласования типа ответа
+     * @return ответ 406 без тела
+     */
+    @ExceptionHandler(HttpMediaTypeNotAcceptableException.class)
+    public ResponseEntity<Void> handleNotAcceptable(HttpMediaTypeNotAcceptableException ex) {
+        log.warn("Тип ответа не согласован: {}", ex.getMessage());
+
+        return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+    }
+
     /**
      * Обработка всех остальных исключений.
      * 
@@ -0,0 +1,36 @@
+package ru.ai.libraryapi.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.ai.libraryapi.MemoryPageStore;
+import ru.ai.libraryapi.PageIndex;
+import ru.ai.libraryapi.PageStore;
+
+import java.util.Locale;
+
+/**
+ * Конфигурация хранилища разобранных книг.
+ *
+ * Реализация выбирается по app.library.store.type при запуске приложения,
+ * а не условием на бин, поэтому настройку можно менять и в сборке
+ * с предварительной обработкой Spring AOT.
+ */
+@Configuration
+public class StoreCfg {
+
+    /**
+     * Хранилище страниц, к которому обращается сервис перед разбором книги.
+     *
+     * @param bookCfg конфигурация библиотеки
+     * @return хранилище страниц выбранного типа
+     */
+    @Bean
+    public PageStore pageStore(BookCfg bookCfg) {
+        return switch (bookCfg.STORE_TYPE.trim().toLowerCase(Locale.ROOT)) {
+            case "file" -> new PageIndex(bookCfg);
+            case "memory" -> new MemoryPageStore(bookCfg);
+            default -> throw new IllegalArgumentException(
+                    "Неизвестный тип хранилища app.library.store.type: " + bookCfg.STORE_TYPE);
+        };
+    }
+}
@@ -0,0 +1,54 @@
+package ru.ai.libraryapi;
+
+import org.junit.jupiter.api.Test;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тесты общего пула пакетных запросов.
+ */
+class BatchPoolTest {
+
+    private static BatchPool pool(int parallelism) {
+        BookCfg cfg = new BookCfg();
+        cfg.BATCH_PARALLELISM = parallelism;
+        return new BatchPool(cfg);
+    }
+
+    @Test
+    void processesEveryItemOnce() throws Exception {
+        BatchPool pool = pool(4);
+        try {
+            List<Integer> items = IntStream.range(0, 100).boxed().toList();
+            Set<Integer> seen = ConcurrentHashMap.newKeySet();
+            AtomicInteger calls = new AtomicInteger();
+
+            pool.forEach(items, item -> {
+                seen.add(item);
+                calls.incrementAndGet();
+            });
+
+            assertThat(seen).hasSize(100);
+            assertThat(calls).hasValue(100);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void sequentialWithoutParallelism() throws Exception {
+        BatchPool pool = pool(1);
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        pool.forEach(List.of(1, 2, 3), item -> threads.add(Thread.currentThread().getName()));
+
+        assertThat(threads).containsExactly(Thread.currentThread().getName());
+    }
+}
@@ -0,0 +1,394 @@
+package ru.ai.libraryapi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Тесты контроллера на библиотеке синтетических книг в target/test-library/cnt.
+ */
+@SpringBootTest(properties = {
+        "app.library.dir=" + BookCntTest.LIBRARY,
+        "app.library.index.dir=",
+        "app.library.catalog.enabled=false",
+        "app.library.batch.max-items=3",
+        "app.library.max-length=1000",
+        "app.library.page-sizes=500, 2000"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class BookCntTest {
+    static final String LIBRARY = "target/test-library/cnt";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @MockitoSpyBean
+    private RequestPool requestPool;
+
+    @BeforeAll
+    static void writeLibrary() throws IOException {
+        SyntheticEpub.write(SyntheticEpub.Shape.SMALL, 0, Path.of(LIBRARY, "small.epub"));
+        SyntheticEpub.write(SyntheticEpub.Shape.CALIBRE, 0, Path.of(LIBRARY, "calibre.epub"));
+        SyntheticEpub.write(SyntheticEpub.Shape.CALIBRE, 0, Path.of(LIBRARY, "toc.epub"));
+        SyntheticEpub.write(SyntheticEpub.Shape.CALIBRE, 0, Path.of(LIBRARY, "etag.epub"));
+    }
+
+    @Test
+    void batchReturnsResultsInRequestOrder() throws Exception {
+        String body = """
+                {"items": [
+                  {"path": "small.epub", "from": 0, "to": 2},
+                  {"path": "missing.epub", "from": 0, "to": 2},
+                  {"path": "small.epub", "from": 3, "to": 4}
+                ]}
+                """;
+
+        MvcResult result = mockMvc.perform(post("/epub/pages/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(3)))
+                .andExpect(jsonPath("$.items[0].result.from").value(0))
+                .andExpect(jsonPath("$.items[0].result.pages", hasSize(2)))
+                .andExpect(jsonPath("$.items[1].result").value(nullValue()))
+                .andExpect(jsonPath("$.items[1].error").value("Book not found"))
+                .andExpect(jsonPath("$.items[2].result.from").value(3))
+                .andExpect(jsonPath("$.items[2].result.pages", hasSize(1)));
+    }
+
+    @Test
+    void batchOverLimitIsBadRequest() throws Exception {
+        String item = "{\"path\": \"small.epub\", \"from\": 0, \"to\": 1}";
+        String body = "{\"items\": [" + String.join(",", item, item, item, item) + "]}";
+
+        mockMvc.perform(post("/epub/pages/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Не более 3 элементов в пакетном запросе"));
+    }
+
+    @Test
+    void emptyBatchIsBadRequest() throws Exception {
+        mockMvc.perform(post("/epub/pages/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"items\": []}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void pageSizeOutsideListIsBadRequest() throws Exception {
+        mockMvc.perform(post("/epub/pages")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"path\": \"small.epub\", \"from\": 0, \"to\": 1, \"maxLength\": 1001}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error")
+                        .value("Размер страницы 1001 не поддерживается, допустимые размеры: 500, 1000, 2000"));
+
+        mockMvc.perform(get("/epub/pages").param("path", "small.epub").param("from", "0").param("to", "1")
+                        .param("maxLength", "777"))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(get("/epub/toc").param("path", "small.epub").param("maxLength", "777"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void batchWithPageSizeOutsideListIsBadRequest() throws Exception {
+        String body = """
+                {"items": [
+                  {"path": "small.epub", "from": 0, "to": 1},
+                  {"path": "small.epub", "from": 0, "to": 1, "maxLength": 3000}
+                ]}
+                """;
+
+        mockMvc.perform(post("/epub/pages/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void listedPageSizeIsServed() throws Exception {
+        MvcResult result = mockMvc.perform(post("/epub/pages")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"path\": \"small.epub\", \"from\": 0, \"to\": 2, \"maxLength\": 500}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.pages", hasSize(2)));
+    }
+
+    @Test
+    void malformedAcceptFallsBackToJson() throws Exception {
+        MvcResult result = mockMvc.perform(get("/epub/pages").param("path", "small.epub")
+                        .param("from", "0").param("to", "2")
+                        .header(HttpHeaders.ACCEPT, "garbage;;;"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.pages", hasSize(2)));
+
+        mockMvc.perform(get("/epub/toc").param("path", "small.epub").header(HttpHeaders.ACCEPT, "garbage;;;"))
+                .andExpect(status().isNotAcceptable());
+    }
+
+    @Test
+    void binaryPagesMatchJson() throws Exception {
+        MvcResult json = mockMvc.perform(get("/epub/pages").param("path", "calibre.epub")
+                        .param("from", "1").param("to", "4"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        ResDTO expected = objectMapper.readValue(mockMvc.perform(asyncDispatch(json))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray(), ResDTO.class);
+
+        MvcResult binary = mockMvc.perform(get("/epub/pages").param("path", "calibre.epub")
+                        .param("from", "1").param("to", "4")
+                        .header(HttpHeaders.ACCEPT, "application/json;q=0.5, application/x-library-pages")
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MockHttpServletResponse response = mockMvc.perform(asyncDispatch(binary))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(PageEncoder.BINARY))
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn().getResponse();
+
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(
+                new ByteArrayInputStream(response.getContentAsByteArray())))) {
+            assertThat(in.readInt()).isEqualTo(expected.from());
+            assertThat(in.readInt()).isEqualTo(expected.to());
+            assertThat(in.readInt()).isEqualTo(expected.total());
+            assertThat(in.readBoolean()).isEqualTo(expected.totalEstimated());
+            assertThat(in.readInt()).isEqualTo(expected.pages().size());
+            for (List<String> page : expected.pages()) {
+                byte[] body = new byte[in.readInt()];
+                in.readFully(body);
+                assertThat(new String(body, StandardCharsets.UTF_8)).isEqualTo(String.join("", page));
+            }
+            assertThat(in.read()).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    void gzipRefusedWithZeroQuality() throws Exception {
+        MvcResult result = mockMvc.perform(get("/epub/pages").param("path", "small.epub")
+                        .param("from", "0").param("to", "1")
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, identity"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(jsonPath("$.pages", hasSize(1)));
+    }
+
+    @Test
+    void overloadedPagesAreServiceUnavailable() throws Exception {
+        doReturn(CompletableFuture.failedFuture(new OverloadedException("Too many requests in progress", 7)))
+                .when(requestPool).submit(any());
+
+        MvcResult result = mockMvc.perform(post("/epub/pages")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"path\": \"small.epub\", \"from\": 0, \"to\": 1}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "7"))
+                .andExpect(jsonPath("$.error").value("Too many requests in progress"));
+    }
+
+    @Test
+    void overloadedStreamIsServiceUnavailable() throws Exception {
+        doThrow(new OverloadedException("Too many requests in progress", 7)).when(requestPool).admit();
+
+        mockMvc.perform(post("/epub/pages/stream")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"path\": \"small.epub\", \"from\": 0, \"to\": 1}"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "7"));
+    }
+
+    @Test
+    void tocGivesStartPageOfEveryEntry() throws Exception {
+        // Книга ещё не разобрана: оглавление разбирает её целиком
+        TocDTO toc = objectMapper.readValue(mockMvc.perform(get("/epub/toc").param("path", "toc.epub"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title").value("Synthetic CALIBRE"))
+                .andReturn().getResponse().getContentAsByteArray(), TocDTO.class);
+
+        assertThat(toc.chapters()).hasSize(81).isSorted();
+        assertThat(toc.entries()).hasSize(80);
+        for (TocEntryDTO entry : toc.entries()) {
+            assertThat(entry.page()).as(entry.title()).isEqualTo(toc.chapters().get(entry.chapter()));
+        }
+
+        // Часть 2 начинается на своей странице, а число страниц совпадает с выдачей страниц
+        TocEntryDTO part = toc.entries().get(2);
+        assertThat(part.title()).isEqualTo("Часть 2");
+        assertThat(part.depth()).isZero();
+        MvcResult result = mockMvc.perform(get("/epub/pages").param("path", "toc.epub")
+                        .param("from", String.valueOf(part.page())).param("to", String.valueOf(part.page() + 1)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        ResDTO page = objectMapper.readValue(mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray(), ResDTO.class);
+
+        assertThat(page.total()).isEqualTo(toc.total());
+        assertThat(page.totalEstimated()).isFalse();
+        assertThat(String.join("", page.pages().get(0))).contains("Часть 2");
+    }
+
+    @Test
+    void tocOfMissingBookIsNotFound() throws Exception {
+        mockMvc.perform(get("/epub/toc").param("path", "missing.epub"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void streamSendsEveryPageOfRange() throws Exception {
+        MvcResult json = mockMvc.perform(post("/epub/pages")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"path\": \"small.epub\", \"from\": 2, \"to\": 6}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        ResDTO expected = objectMapper.readValue(mockMvc.perform(asyncDispatch(json))
+                .andReturn().getResponse().getContentAsByteArray(), ResDTO.class);
+
+        List<PageDTO> streamed = stream("{\"path\": \"small.epub\", \"from\": 2, \"to\": 6}");
+
+        assertThat(streamed).hasSize(4);
+        for (int i = 0; i < streamed.size(); i++) {
+            assertThat(streamed.get(i).index()).isEqualTo(2 + i);
+            assertThat(streamed.get(i).page()).isEqualTo(expected.pages().get(i));
+        }
+        assertThat(streamed.get(3).total()).isGreaterThanOrEqualTo(6);
+    }
+
+    @Test
+    void streamPastEndSendsEmptyFinalFrame() throws Exception {
+        List<PageDTO> streamed = stream("{\"path\": \"small.epub\", \"from\": 100000, \"to\": 100005}");
+
+        // Одна строка без страницы с точным числом страниц
+        assertThat(streamed).hasSize(1);
+        PageDTO last = streamed.get(0);
+        assertThat(last.page()).isEmpty();
+        assertThat(last.totalEstimated()).isFalse();
+        assertThat(last.total()).isPositive();
+        assertThat(last.index()).isEqualTo(last.total());
+    }
+
+    private List<PageDTO> stream(String body) throws Exception {
+        MvcResult result = mockMvc.perform(post("/epub/pages/stream")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String ndjson = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+        List<PageDTO> pages = new ArrayList<>();
+        for (String line : ndjson.lines().toList()) {
+            pages.add(objectMapper.readValue(line, PageDTO.class));
+        }
+        return pages;
+    }
+
+    @Test
+    void getPagesRevalidatesWithEtag() throws Exception {
+        // Книга ещё не разобрана до конца: число страниц оценочное, ответ не кэшируется
+        getPages("etag.epub", 0, 2)
+                .andExpect(jsonPath("$.totalEstimated").value(true))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-store"))
+                .andExpect(header().doesNotExist(HttpHeaders.ETAG));
+
+        getPages("etag.epub", 0, 100000)
+                .andExpect(jsonPath("$.totalEstimated").value(false));
+
+        String etag = getPages("etag.epub", 0, 2)
+                .andExpect(jsonPath("$.totalEstimated").value(false))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=3600, public"))
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // Версия клиента актуальна: 304 без тела
+        MvcResult revalidated = mockMvc.perform(get("/epub/pages").param("path", "etag.epub")
+                        .param("from", "0").param("to", "2")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"other\", " + etag))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(revalidated))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().string(""));
+
+        // Другой диапазон — другая версия
+        getPages("etag.epub", 2, 4)
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andExpect(result -> assertThat(result.getResponse().getHeader(HttpHeaders.ETAG)).isNotEqualTo(etag));
+    }
+
+    private ResultActions getPages(String path, int from, int to) throws Exception {
+        MvcResult result = mockMvc.perform(get("/epub/pages").param("path", path)
+                        .param("from", String.valueOf(from)).param("to", String.valueOf(to)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk());
+    }
+}
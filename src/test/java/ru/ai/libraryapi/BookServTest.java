@@ -0,0 +1,266 @@
+package ru.ai.libraryapi;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.endsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Тесты сервиса на библиотеке синтетических книг в target/test-library/serv. Каждая книга
+ * записана в нескольких копиях, чтобы каждый способ чтения начинал без кэшей и контрольных точек.
+ */
+@SpringBootTest(properties = {
+        "app.library.dir=" + BookServTest.LIBRARY,
+        "app.library.index.dir=",
+        "app.library.catalog.enabled=false",
+        "app.library.clean.parallelism=4",
+        "app.library.chapter-cache.max-bytes=0"
+})
+@ActiveProfiles("test")
+class BookServTest {
+    static final String LIBRARY = "target/test-library/serv";
+
+    private static final int WINDOW = 7;
+    private static final int[] PAGE_SIZES = {500, 1000, 2000, 4000};
+
+    @Autowired
+    private BookServ bookServ;
+
+    @Autowired
+    private BookCfg bookCfg;
+
+    @MockitoSpyBean
+    private EpubExtractor epubExtractor;
+
+    @BeforeAll
+    static void writeLibrary() throws IOException {
+        for (SyntheticEpub.Shape shape : SyntheticEpub.Shape.values()) {
+            for (String copy : List.of("full", "ranges", "flight", "limit", "retry", "preload", "layout", "lazy-500", "lazy-1000", "lazy-2000", "lazy-4000")) {
+                SyntheticEpub.write(shape, 0, Path.of(LIBRARY, book(shape, copy)));
+            }
+        }
+    }
+
+    private static String book(SyntheticEpub.Shape shape, String copy) {
+        return shape.name().toLowerCase(Locale.ROOT) + "-" + copy + ".epub";
+    }
+
+    /**
+     * Распакованный объём всех документов книги, который учитывается ограничением max-book-bytes.
+     */
+    private static long decodedBytes(SyntheticEpub.Shape shape) {
+        long bytes = 0;
+        for (String chapter : SyntheticEpub.chapters(shape, 0)) {
+            bytes += chapter.getBytes(StandardCharsets.UTF_8).length;
+        }
+        return bytes;
+    }
+
+    private static List<String> flatten(ResDTO res) {
+        List<String> pages = new ArrayList<>();
+        for (List<String> page : res.pages()) {
+            pages.add(String.join("", page));
+        }
+        return pages;
+    }
+
+    @ParameterizedTest
+    @EnumSource(SyntheticEpub.Shape.class)
+    void lazyWindowsMatchFullPagination(SyntheticEpub.Shape shape) {
+        for (int maxLength : PAGE_SIZES) {
+            ResDTO full = bookServ.getPages(new ReqDTO(book(shape, "full"), 0, Integer.MAX_VALUE, maxLength));
+            assertThat(full.totalEstimated()).isFalse();
+            assertThat(full.pages()).hasSize(full.total()).isNotEmpty();
+
+            // Окно за окном, как читает клиент; следующие окна могут готовиться в фоне. Своя копия
+            // для каждого размера, иначе книга разбивалась бы из уже очищенных глав за один проход
+            String lazy = book(shape, "lazy-" + maxLength);
+            List<String> read = new ArrayList<>();
+            ResDTO window = bookServ.getPages(new ReqDTO(lazy, 0, WINDOW, maxLength));
+            if (shape == SyntheticEpub.Shape.SMALL || shape == SyntheticEpub.Shape.CALIBRE) {
+                assertThat(window.totalEstimated()).as("first window of %s", shape).isTrue();
+            }
+            read.addAll(flatten(window));
+            while (window.totalEstimated() || read.size() < window.total()) {
+                window = bookServ.getPages(new ReqDTO(lazy, read.size(), read.size() + WINDOW, maxLength));
+                assertThat(window.from()).isEqualTo(read.size());
+                read.addAll(flatten(window));
+            }
+
+            assertThat(read).as("%s, max length %d", shape, maxLength).isEqualTo(flatten(full));
+            assertThat(window.total()).isEqualTo(full.total());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(SyntheticEpub.Shape.class)
+    void rangesInAnyOrderMatchFullPagination(SyntheticEpub.Shape shape) {
+        int maxLength = 1000;
+        List<String> full = flatten(bookServ.getPages(new ReqDTO(book(shape, "full"), 0, Integer.MAX_VALUE,
+                maxLength)));
+
+        // Дальний диапазон продолжает контрольную точку, ближний уже готов в ней
+        for (int[] range : new int[][]{{20, 25}, {0, 5}, {60, 70}, {10, 30}}) {
+            if (range[0] >= full.size()) {
+                continue;
+            }
+            ResDTO res = bookServ.getPages(new ReqDTO(book(shape, "ranges"), range[0], range[1], maxLength));
+
+            assertThat(flatten(res)).as("%s, pages %d–%d", shape, range[0], range[1])
+                    .isEqualTo(full.subList(range[0], Math.min(range[1], full.size())));
+            if (!res.totalEstimated()) {
+                assertThat(res.total()).isEqualTo(full.size());
+            }
+        }
+    }
+
+    @Test
+    void parallelCleaningKeepsSpineOrder() {
+        List<String> raws = new ArrayList<>(SyntheticEpub.chapters(SyntheticEpub.Shape.CALIBRE, 0));
+        raws.addAll(SyntheticEpub.chapters(SyntheticEpub.Shape.SMALL, 1));
+        // Пустая глава пропускается, не сдвигая остальные
+        raws.add(raws.size() / 2, "<html><body><div></div></body></html>");
+
+        List<String> sequential = new ArrayList<>();
+        for (String raw : raws) {
+            for (Chapter chapter : bookServ.cleanPages(List.of(raw))) {
+                sequential.add(chapter.html());
+            }
+        }
+
+        List<String> parallel = bookServ.cleanPages(raws).stream().map(Chapter::html).toList();
+
+        assertThat(parallel).hasSizeLessThan(raws.size()).isEqualTo(sequential);
+    }
+
+    @Test
+    void concurrentRequestsOpenBookOnce() throws Exception {
+        String book = book(SyntheticEpub.Shape.CALIBRE, "flight");
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<ResDTO>> results = new ArrayList<>();
+
+        try (ExecutorService readers = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < 8; i++) {
+                results.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return bookServ.getPages(new ReqDTO(book, 0, 5));
+                }, readers));
+            }
+            start.countDown();
+
+            List<String> first = flatten(results.get(0).get(30, TimeUnit.SECONDS));
+            assertThat(first).hasSize(5);
+            for (CompletableFuture<ResDTO> result : results) {
+                assertThat(flatten(result.get(30, TimeUnit.SECONDS))).isEqualTo(first);
+            }
+        }
+
+        // Одна пагинация на всех: остальные ждут её результата или берут страницы из контрольной точки
+        verify(epubExtractor, times(1)).open(anyString());
+    }
+
+    @Test
+    void preloadPaginatesWholeBook() throws Exception {
+        SyntheticEpub.Shape shape = SyntheticEpub.Shape.CALIBRE;
+        List<String> full = flatten(bookServ.getPages(new ReqDTO(book(shape, "full"), 0, Integer.MAX_VALUE)));
+
+        bookServ.preload(book(shape, "preload"));
+        ResDTO preloaded = bookServ.getPages(new ReqDTO(book(shape, "preload"), 0, Integer.MAX_VALUE));
+
+        assertThat(preloaded.totalEstimated()).isFalse();
+        assertThat(flatten(preloaded)).isEqualTo(full);
+    }
+
+    @Test
+    void secondPageSizeReusesLayout() throws Exception {
+        SyntheticEpub.Shape shape = SyntheticEpub.Shape.CALIBRE;
+        String book = book(shape, "layout");
+
+        ResDTO large = bookServ.getPages(new ReqDTO(book, 0, Integer.MAX_VALUE, 1000));
+        assertThat(large.totalEstimated()).isFalse();
+
+        // Второй размер разбивается из разметки в кэше, без повторного чтения и очистки глав
+        ResDTO small = bookServ.getPages(new ReqDTO(book, 0, Integer.MAX_VALUE, 500));
+        assertThat(small.totalEstimated()).isFalse();
+        assertThat(small.total()).isGreaterThan(large.total());
+        assertThat(flatten(small))
+                .isEqualTo(flatten(bookServ.getPages(new ReqDTO(book(shape, "full"), 0, Integer.MAX_VALUE, 500))));
+
+        verify(epubExtractor, times(1)).open(endsWith(book));
+    }
+
+    @Test
+    void bookOverSizeLimitFails() {
+        String book = book(SyntheticEpub.Shape.CALIBRE, "limit");
+        long limit = bookCfg.MAX_BOOK_BYTES;
+        bookCfg.MAX_BOOK_BYTES = decodedBytes(SyntheticEpub.Shape.CALIBRE) - 1;
+        try {
+            List<PageDTO> streamed = new ArrayList<>();
+
+            // Начало книги укладывается в предел и успевает уйти клиенту, последний пакет глав — нет
+            assertThatThrownBy(() -> bookServ.streamPages(new ReqDTO(book, 0, Integer.MAX_VALUE), streamed::add))
+                    .isInstanceOf(SizeLimitException.class)
+                    .hasMessageContaining(book);
+            assertThat(streamed).isNotEmpty();
+        } finally {
+            bookCfg.MAX_BOOK_BYTES = limit;
+        }
+    }
+
+    @Test
+    void retriedChaptersAreCountedOnce() throws Exception {
+        String book = book(SyntheticEpub.Shape.CALIBRE, "retry");
+        // Первое открытие книги падает на шестом документе, когда пятый уже прочитан
+        doAnswer(invocation -> {
+            EpubBook opened = spy((EpubBook) invocation.callRealMethod());
+            doThrow(new IOException("Simulated read failure")).doCallRealMethod().when(opened).readChapter(5);
+            return opened;
+        }).doCallRealMethod().when(epubExtractor).open(anyString());
+
+        long limit = bookCfg.MAX_BOOK_BYTES;
+        // Предел ровно по размеру книги: повторно учтённый пятый документ его превысил бы
+        bookCfg.MAX_BOOK_BYTES = decodedBytes(SyntheticEpub.Shape.CALIBRE);
+        try {
+            ResDTO failed = bookServ.getPages(new ReqDTO(book, 0, Integer.MAX_VALUE));
+            assertThat(failed.pages()).isEmpty();
+
+            ResDTO retried = bookServ.getPages(new ReqDTO(book, 0, Integer.MAX_VALUE));
+            assertThat(retried.totalEstimated()).isFalse();
+            assertThat(retried.pages()).hasSize(retried.total()).isNotEmpty();
+        } finally {
+            bookCfg.MAX_BOOK_BYTES = limit;
+        }
+        verify(epubExtractor, times(2)).open(anyString());
+    }
+}
@@ -0,0 +1,108 @@
+package ru.ai.libraryapi;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Тесты каталога библиотеки в target/test-library/catalog, открытой через символическую ссылку.
+ */
+class CatalogTest {
+    private static final Path LIBRARY = Path.of("target/test-library/catalog");
+    private static final Path LINK = Path.of("target/test-library/catalog-link");
+
+    private EpubExtractor extractor;
+    private Catalog catalog;
+
+    @BeforeEach
+    void writeLibrary() throws IOException {
+        deleteRecursively(LIBRARY);
+        Files.deleteIfExists(LINK);
+        SyntheticEpub.write(SyntheticEpub.Shape.SMALL, 0, LIBRARY.resolve("b.epub"));
+        SyntheticEpub.write(SyntheticEpub.Shape.CALIBRE, 0, LIBRARY.resolve("a/c.epub"));
+        SyntheticEpub.write(SyntheticEpub.Shape.SMALL, 1, LIBRARY.resolve("a.epub"));
+        Files.writeString(LIBRARY.resolve("notes.txt"), "не книга");
+        Files.createSymbolicLink(LINK, LIBRARY.toAbsolutePath());
+
+        BookCfg cfg = new BookCfg();
+        cfg.LIBRARY_DIR = LINK.toString();
+        cfg.CATALOG_ENABLED = true;
+        cfg.PACKAGE_CACHE_MAX_ENTRIES = 16;
+        cfg.ARCHIVE_CACHE_MAX_ENTRIES = 16;
+        extractor = spy(new EpubExtractor(cfg));
+        catalog = new Catalog(cfg, extractor);
+        catalog.start();
+    }
+
+    @AfterEach
+    void stop() {
+        catalog.stop();
+    }
+
+    @Test
+    void listsBooksByPathThroughSymlinkedRoot() throws Exception {
+        CatalogDTO first = await(CatalogDTO::complete);
+
+        assertThat(first.total()).isEqualTo(3);
+        assertThat(first.books()).extracting(CatalogEntry::path).containsExactly("a.epub", "a/c.epub", "b.epub");
+        assertThat(first.books().get(2).spineSize()).isEqualTo(12);
+        assertThat(first.books().get(1).title()).isEqualTo("Synthetic CALIBRE");
+
+        CatalogDTO page = catalog.list(1, 2);
+        assertThat(page.books()).extracting(CatalogEntry::path).containsExactly("b.epub");
+        assertThat(catalog.list(5, 2).books()).isEmpty();
+
+        // Сканирование не открывает книги через кеши архивов и пакетов
+        verify(extractor, never()).open(anyString());
+    }
+
+    @Test
+    void followsChanges() throws Exception {
+        await(CatalogDTO::complete);
+
+        SyntheticEpub.write(SyntheticEpub.Shape.SMALL, 2, LIBRARY.resolve("0.epub"));
+        CatalogDTO added = await(c -> c.total() == 4);
+        assertThat(added.books().getFirst().path()).isEqualTo("0.epub");
+
+        Files.delete(LIBRARY.resolve("b.epub"));
+        CatalogDTO removed = await(c -> c.total() == 3);
+        assertThat(removed.books()).extracting(CatalogEntry::path).containsExactly("0.epub", "a.epub", "a/c.epub");
+    }
+
+    private CatalogDTO await(Predicate<CatalogDTO> condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        CatalogDTO page = catalog.list(0, 50);
+        while (!condition.test(page) && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+            page = catalog.list(0, 50);
+        }
+        assertThat(condition).accepts(page);
+        return page;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
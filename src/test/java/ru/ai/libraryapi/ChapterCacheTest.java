@@ -0,0 +1,53 @@
+package ru.ai.libraryapi;
+
+import org.junit.jupiter.api.Test;
+import ru.ai.libraryapi.config.BookCfg;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тесты кеша очищенных глав, адресуемых содержимым.
+ */
+class ChapterCacheTest {
+
+    private static ChapterCache cache(long maxBytes) {
+        BookCfg cfg = new BookCfg();
+        cfg.CHAPTER_CACHE_MAX_BYTES = maxBytes;
+        return new ChapterCache(cfg);
+    }
+
+    @Test
+    void findsChapterBySameContent() {
+        ChapterCache cache = cache(1 << 20);
+        Chapter chapter = Chapter.parse("<p>один</p>");
+
+        cache.put(cache.keyOf(new String("<html><body><p>один</p></body></html>")), chapter);
+
+        assertThat(cache.get(cache.keyOf("<html><body><p>один</p></body></html>"))).isSameAs(chapter);
+        assertThat(cache.get(cache.keyOf("<html><body><p>два</p></body></html>"))).isNull();
+    }
+
+    @Test
+    void distinguishesContentBeyondFirstChunk() {
+        ChapterCache cache = cache(1 << 20);
+        String prefix = "a".repeat(10_000);
+
+        ChapterCache.Key first = cache.keyOf(prefix + "b");
+        ChapterCache.Key second = cache.keyOf(prefix + "c");
+
+        assertThat(first).isNotEqualTo(second);
+        assertThat(first).isEqualTo(cache.keyOf(prefix + "b"));
+        assertThat(first.length()).isEqualTo(10_001);
+    }
+
+    @Test
+    void disabledWithoutBudget() {
+        ChapterCache cache = cache(0);
+
+        ChapterCache.Key key = cache.keyOf("<p>один</p>");
+        cache.put(key, Chapter.parse("<p>один</p>"));
+
+        assertThat(key).isNull();
+        assertThat(cache.get(key)).isNull();
+    }
+}
@@ -0,0 +1,82 @@
+package ru.ai.libraryapi;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Тесты общего пула очистки глав: порядок результатов и ошибки.
+ */
+class CleanPoolTest {
+    private CleanPool pool;
+
+    @AfterEach
+    void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private CleanPool pool(int parallelism) {
+        BookCfg cfg = new BookCfg();
+        cfg.CLEAN_PARALLELISM = parallelism;
+        pool = new CleanPool(cfg);
+        return pool;
+    }
+
+    @Test
+    void keepsOrderOfItems() {
+        CleanPool pool = pool(4);
+        List<Integer> items = IntStream.range(0, 64).boxed().toList();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        // Первые элементы обрабатываются дольше последних
+        List<String> results = pool.map(items, (index, item) -> {
+            threads.add(Thread.currentThread().getName());
+            LockSupport.parkNanos((64 - item) * 100_000L);
+            return index + ":" + item;
+        });
+
+        assertThat(results).isEqualTo(items.stream().map(item -> item + ":" + item).toList());
+        assertThat(pool.parallelism()).isEqualTo(4);
+        assertThat(threads).doesNotContain(Thread.currentThread().getName());
+    }
+
+    @Test
+    void sequentialWithoutParallelism() {
+        CleanPool pool = pool(1);
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        List<Integer> results = pool.map(List.of(1, 2, 3), (index, item) -> {
+            threads.add(Thread.currentThread().getName());
+            return item * 10;
+        });
+
+        assertThat(results).containsExactly(10, 20, 30);
+        assertThat(threads).containsExactly(Thread.currentThread().getName());
+    }
+
+    @Test
+    void reportsFailureWithCause() {
+        CleanPool pool = pool(2);
+
+        assertThatThrownBy(() -> pool.map(List.of(1, 2, 3), (index, item) -> {
+            if (item == 2) {
+                throw new IllegalArgumentException("broken");
+            }
+            return item;
+        })).isInstanceOf(IllegalStateException.class)
+                .cause()
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("broken");
+    }
+}
@@ -0,0 +1,75 @@
+package ru.ai.libraryapi;
+
+import org.junit.jupiter.api.Test;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тесты общего бюджета распакованных глав: ожидание свободного объёма и крупные пакеты.
+ */
+class DecodeBudgetTest {
+
+    private static DecodeBudget budget(long bytes) {
+        BookCfg cfg = new BookCfg();
+        cfg.MAX_INFLIGHT_BYTES = bytes;
+        return new DecodeBudget(cfg);
+    }
+
+    @Test
+    void waitsUntilReservationIsReleased() throws Exception {
+        DecodeBudget budget = budget(64 * 1024);
+        int first = budget.acquire(48 * 1024);
+
+        // Второму пакету не хватает места, пока первый не вернёт свой объём
+        CompletableFuture<Integer> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return budget.acquire(32 * 1024);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertThat(second).isNotDone();
+
+        budget.release(first);
+        int reservation = second.get(10, TimeUnit.SECONDS);
+        assertThat(reservation).isEqualTo(32);
+        budget.release(reservation);
+    }
+
+    @Test
+    void oversizedBatchTakesWholeBudget() throws Exception {
+        DecodeBudget budget = budget(64 * 1024);
+        assertThat(budget.capacity()).isEqualTo(64 * 1024);
+
+        // Глава больше всего бюджета не ждёт вечно, а занимает его целиком
+        int whole = budget.acquire(1024 * 1024);
+        assertThat(whole).isEqualTo(64);
+
+        CompletableFuture<Integer> next = CompletableFuture.supplyAsync(() -> {
+            try {
+                return budget.acquire(1);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertThat(next).isNotDone();
+
+        budget.release(whole);
+        budget.release(next.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void disabledBudgetNeverWaits() throws Exception {
+        DecodeBudget budget = budget(0);
+
+        assertThat(budget.capacity()).isEqualTo(Long.MAX_VALUE);
+        assertThat(budget.acquire(Long.MAX_VALUE)).isZero();
+        assertThat(budget.acquire(Long.MAX_VALUE)).isZero();
+    }
+}
@@ -0,0 +1,291 @@
+package ru.ai.libraryapi;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тесты разбора пакетных документов EPUB: OPF, навигационный документ EPUB 3 и NCX EPUB 2.
+ */
+class EpubExtractorTest {
+    private static final String CONTAINER = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <container version="1.0" xmlns="urn:oasis:names:tc:opendocument:xmlns:container">
+              <rootfiles>
+                <rootfile full-path="OEBPS/content.opf" media-type="application/oebps-package+xml"/>
+              </rootfiles>
+            </container>
+            """;
+
+
+    private static final String NCX = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <ncx xmlns="http://www.daisy.org/z3986/2005/ncx/" version="2005-1">
+              <docTitle><text>Книга</text></docTitle>
+              <navMap>
+                <navPoint id="p1" playOrder="1">
+                  <navLabel><text> Часть 1 </text></navLabel>
+                  <content src="text/ch0.xhtml"/>
+                  <navPoint id="p2" playOrder="2">
+                    <navLabel><text>Раздел 1.1</text></navLabel>
+                    <content src="text/ch1.xhtml#s1"/>
+                  </navPoint>
+                </navPoint>
+                <navPoint id="p3" playOrder="3">
+                  <navLabel><text>Примечания</text></navLabel>
+                  <content src="notes.xhtml"/>
+                </navPoint>
+                <navPoint id="p4" playOrder="4">
+                  <navLabel><text>Часть 2</text></navLabel>
+                  <content src="text/ch2.xhtml"/>
+                </navPoint>
+              </navMap>
+              <pageList>
+                <pageTarget id="page1" type="normal" value="1">
+                  <navLabel><text>1</text></navLabel>
+                  <content src="text/ch0.xhtml#page1"/>
+                </pageTarget>
+              </pageList>
+            </ncx>
+            """;
+
+    @TempDir
+    Path dir;
+
+    private final EpubExtractor extractor = new EpubExtractor(new BookCfg());
+
+    private Path write(String name, Map<String, String> entries) throws IOException {
+        Path file = dir.resolve(name);
+        try (OutputStream os = Files.newOutputStream(file);
+             ZipOutputStream zip = new ZipOutputStream(os)) {
+            byte[] mimetype = "application/epub+zip".getBytes(StandardCharsets.US_ASCII);
+            ZipEntry mimetypeEntry = new ZipEntry("mimetype");
+            mimetypeEntry.setMethod(ZipEntry.STORED);
+            mimetypeEntry.setSize(mimetype.length);
+            CRC32 crc = new CRC32();
+            crc.update(mimetype);
+            mimetypeEntry.setCrc(crc.getValue());
+            zip.putNextEntry(mimetypeEntry);
+            zip.write(mimetype);
+            zip.closeEntry();
+
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    private static String chapter(int index) {
+        return """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <html xmlns="http://www.w3.org/1999/xhtml"><body><p>Документ %d</p></body></html>
+                """.formatted(index);
+    }
+
+    /**
+     * Книга из трёх документов text/ch0..ch2 и примечаний вне spine с заданными OPF и документами оглавления.
+     */
+    private Path book(String name, String opf, Map<String, String> tocDocuments) throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("META-INF/container.xml", CONTAINER);
+        entries.put("OEBPS/content.opf", opf);
+        entries.putAll(tocDocuments);
+        for (int i = 0; i < 3; i++) {
+            entries.put("OEBPS/text/ch" + i + ".xhtml", chapter(i));
+        }
+        entries.put("OEBPS/notes.xhtml", chapter(-1));
+        return write(name, entries);
+    }
+
+    private static String opf(String version, String navItem, String spineToc) {
+        return """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <package xmlns="http://www.idpf.org/2007/opf" version="%s" unique-identifier="id">
+                  <metadata xmlns:dc="http://purl.org/dc/elements/1.1/">
+                    <dc:identifier id="id">test</dc:identifier>
+                    <dc:title>Книга</dc:title>
+                  </metadata>
+                  <manifest>
+                    %s
+                    <item id="ncx" href="toc.ncx" media-type="application/x-dtbncx+xml"/>
+                    <item id="c0" href="text/ch0.xhtml" media-type="application/xhtml+xml"/>
+                    <item id="c1" href="text/ch1.xhtml" media-type="application/xhtml+xml"/>
+                    <item id="c2" href="text/ch2.xhtml" media-type="application/xhtml+xml"/>
+                    <item id="notes" href="notes.xhtml" media-type="application/xhtml+xml"/>
+                  </manifest>
+                  <spine%s>
+                    <itemref idref="c0"/>
+                    <itemref idref="c1"/>
+                    <itemref idref="c2"/>
+                  </spine>
+                </package>
+                """.formatted(version, navItem, spineToc);
+    }
+
+    @Test
+    void readsNestedNavRelativeToItsDirectory() throws Exception {
+        String nav = """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <html xmlns="http://www.w3.org/1999/xhtml" xmlns:epub="http://www.idpf.org/2007/ops">
+                <body>
+                  <nav epub:type="landmarks"><ol><li><a href="../text/ch2.xhtml">Начало</a></li></ol></nav>
+                  <nav epub:type="toc">
+                    <ol>
+                      <li><a href="../text/ch0.xhtml"> Часть 1 </a>
+                        <ol>
+                          <li><a href="../text/ch%31.xhtml#s1">Раздел 1.1</a></li>
+                          <li><a href="#local">Внутри оглавления</a></li>
+                        </ol>
+                      </li>
+                      <li><a href="../notes.xhtml">Примечания</a></li>
+                      <li><span>Без ссылки</span></li>
+                      <li><a href="../text/./ch2.xhtml">Часть 2</a></li>
+                    </ol>
+                  </nav>
+                </body>
+                </html>
+                """;
+        Path file = book("nav.epub", opf("3.0",
+                "<item id=\"nav\" href=\"nav/toc.xhtml\" media-type=\"application/xhtml+xml\" properties=\"nav\"/>",
+                ""), Map.of("OEBPS/nav/toc.xhtml", nav));
+
+        try (EpubBook book = extractor.open(file.toString())) {
+            assertThat(book.title()).isEqualTo("Книга");
+            assertThat(book.spineSize()).isEqualTo(3);
+            // Фрагменты отбрасываются, ссылки вне spine пропускаются
+            assertThat(book.toc()).containsExactly(
+                    new EpubBook.TocEntry("Часть 1", 0, 0),
+                    new EpubBook.TocEntry("Раздел 1.1", 1, 1),
+                    new EpubBook.TocEntry("Часть 2", 0, 2));
+        }
+    }
+
+    @Test
+    void readsNcxNamedBySpine() throws Exception {
+        Path file = book("ncx.epub", opf("2.0", "", " toc=\"ncx\""), Map.of("OEBPS/toc.ncx", NCX));
+
+        try (EpubBook book = extractor.open(file.toString())) {
+            // Метки страниц вне navMap в оглавление не попадают
+            assertThat(book.toc()).containsExactly(
+                    new EpubBook.TocEntry("Часть 1", 0, 0),
+                    new EpubBook.TocEntry("Раздел 1.1", 1, 1),
+                    new EpubBook.TocEntry("Часть 2", 0, 2));
+        }
+    }
+
+    @Test
+    void fallsBackToNcxWhenNavHasNoList() throws Exception {
+        String nav = """
+                <html xmlns="http://www.w3.org/1999/xhtml"><body><nav epub:type="toc"></nav></body></html>
+                """;
+        Path file = book("fallback.epub", opf("3.0",
+                "<item id=\"nav\" href=\"nav.xhtml\" media-type=\"application/xhtml+xml\" properties=\"nav\"/>",
+                ""), Map.of("OEBPS/nav.xhtml", nav, "OEBPS/toc.ncx", NCX));
+
+        try (EpubBook book = extractor.open(file.toString())) {
+            assertThat(book.toc()).extracting(EpubBook.TocEntry::title)
+                    .containsExactly("Часть 1", "Раздел 1.1", "Часть 2");
+        }
+    }
+
+    @Test
+    void brokenTocLeavesBookReadable() throws Exception {
+        Path file = book("broken.epub", opf("2.0", "", " toc=\"ncx\""),
+                Map.of("OEBPS/toc.ncx", "<ncx><navMap><navPoint>"));
+
+        try (EpubBook book = extractor.open(file.toString())) {
+            assertThat(book.toc()).isEmpty();
+            assertThat(book.spineSize()).isEqualTo(3);
+            assertThat(book.readChapter(0)).isEqualTo(chapter(0));
+        }
+    }
+
+    @Test
+    void readsPrefixedPackageDocument() throws Exception {
+        String opf = """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <opf:package xmlns:opf="http://www.idpf.org/2007/opf" xmlns:dc="http://purl.org/dc/elements/1.1/"
+                             version="2.0" unique-identifier="id">
+                  <opf:metadata>
+                    <dc:identifier id="id">test</dc:identifier>
+                    <opf:meta name="title" content="Не название"/>
+                    <dc:title> Книга с префиксами </dc:title>
+                    <dc:creator opf:role="aut">Автор</dc:creator>
+                    <dc:creator opf:role="aut">Второй автор</dc:creator>
+                  </opf:metadata>
+                  <opf:manifest>
+                    <opf:item id="ncx" href="toc.ncx" media-type="application/x-dtbncx+xml"/>
+                    <opf:item id="c0" href="text/ch0.xhtml" media-type="application/xhtml+xml"/>
+                    <opf:item id="c1" href="text/ch1.xhtml" media-type="application/xhtml+xml"/>
+                    <opf:item id="c2" href="text/ch2.xhtml" media-type="application/xhtml+xml"/>
+                  </opf:manifest>
+                  <opf:spine toc="ncx">
+                    <opf:itemref idref="c2"/>
+                    <opf:itemref idref="c0"/>
+                    <opf:itemref idref="c1"/>
+                  </opf:spine>
+                </opf:package>
+                """;
+        Path file = book("prefixed.epub", opf, Map.of("OEBPS/toc.ncx", NCX));
+
+        try (EpubBook book = extractor.open(file.toString())) {
+            assertThat(book.title()).isEqualTo("Книга с префиксами");
+            assertThat(book.author()).isEqualTo("Автор");
+            // Порядок чтения задаёт spine, а не manifest
+            assertThat(book.spineSize()).isEqualTo(3);
+            assertThat(book.readChapter(0)).isEqualTo(chapter(2));
+            assertThat(book.readChapter(1)).isEqualTo(chapter(0));
+            assertThat(book.toc()).extracting(EpubBook.TocEntry::chapter).containsExactly(1, 2, 0);
+        }
+
+        EpubExtractor.Metadata metadata = extractor.readMetadata(file.toString());
+        assertThat(metadata).isEqualTo(new EpubExtractor.Metadata("Книга с префиксами", "Автор", 3));
+    }
+
+    @Test
+    void manifestItemMissingFromArchiveReadsAsEmpty() throws Exception {
+        String opf = opf("2.0", "<item id=\"lost\" href=\"text/lost.xhtml\" media-type=\"application/xhtml+xml\"/>",
+                " toc=\"ncx\"").replace("<itemref idref=\"c1\"/>", "<itemref idref=\"lost\"/>\n    <itemref idref=\"c1\"/>");
+        Path file = book("lost.epub", opf, Map.of("OEBPS/toc.ncx", NCX));
+
+        try (EpubBook book = extractor.open(file.toString())) {
+            // Документ остаётся на своём месте в spine, но не читается
+            assertThat(book.spineSize()).isEqualTo(4);
+            assertThat(book.chapterSize(1)).isEqualTo(-1);
+            assertThat(book.readChapter(1)).isNull();
+            assertThat(book.readChapter(2)).isEqualTo(chapter(1));
+            assertThat(book.toc()).extracting(EpubBook.TocEntry::chapter).containsExactly(0, 2, 3);
+        }
+    }
+
+    @Test
+    void unresolvedIdrefIsSkipped() throws Exception {
+        String opf = opf("2.0", "", " toc=\"ncx\"")
+                .replace("<itemref idref=\"c1\"/>", "<itemref idref=\"nowhere\"/>\n    <itemref idref=\"c1\"/>");
+        Path file = book("unresolved.epub", opf, Map.of("OEBPS/toc.ncx", NCX));
+
+        try (EpubBook book = extractor.open(file.toString())) {
+            // Ссылка на отсутствующий в manifest элемент не занимает места в spine
+            assertThat(book.spineSize()).isEqualTo(3);
+            assertThat(book.readChapter(1)).isEqualTo(chapter(1));
+            assertThat(book.toc()).extracting(EpubBook.TocEntry::chapter).containsExactly(0, 1, 2);
+        }
+        assertThat(extractor.readMetadata(file.toString()).spineSize()).isEqualTo(3);
+    }
+}
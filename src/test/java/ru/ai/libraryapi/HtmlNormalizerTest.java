@@ -0,0 +1,96 @@
+package ru.ai.libraryapi;
+
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тесты текстовой нормализации глав: результат должен совпадать с результатом регулярных
+ * выражений, которые она заменила.
+ */
+class HtmlNormalizerTest {
+    private static final Pattern BODY_PATTERN = Pattern.compile("(?is)<body[^>]*>(.*?)</body>");
+
+    // Фрагменты, из которых собираются случайные строки: пробелы, переводы строк, варианты <br>,
+    // границы body в разном регистре, BOM и обрывки тегов
+    private static final String[] FRAGMENTS = {
+            " ", "  ", "\n", "\n\n\n", "\t", "\r\n", "\f", "\u000B", "\u00A0", "\uFEFF",
+            "<br>", "<br/>", "<br />", "<br\n/>", "<BR>", "<br", "br>", "<b>", "</b>", "<",
+            ">", "/", "<body>", "<BODY class=\"x\">", "</body>", "</BODY>", "<body", "<bodyx>",
+            "текст", "a", "<p>", "</p>", "&nbsp;"
+    };
+
+    /**
+     * Нормализация, которую выполнял прежний очиститель.
+     */
+    private static String normalizeByRegex(String html) {
+        String cleaned = html.trim();
+        cleaned = cleaned.replaceAll("\\s{2,}", " ");
+        cleaned = cleaned.replaceAll("(<br\\s*/?>\\s*){2,}", "<br><br>");
+        cleaned = cleaned.replaceAll("(\\n{3,})", "\n\n");
+        return cleaned;
+    }
+
+    private static String extractBodyByRegex(String html) {
+        Matcher matcher = BODY_PATTERN.matcher(html);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private static String random(Random random, int fragments) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < fragments; i++) {
+            s.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+        }
+        return s.toString();
+    }
+
+    @Test
+    void matchesRegexOnRandomInput() {
+        Random random = new Random(20240917L);
+        for (int n = 0; n < 20_000; n++) {
+            String html = random(random, random.nextInt(40));
+
+            String stripped = HtmlNormalizer.stripBom(html);
+            assertThat(stripped).as("BOM: %s", html).isEqualTo(html.replace("\uFEFF", ""));
+            assertThat(HtmlNormalizer.extractBody(stripped)).as("body: %s", html)
+                    .isEqualTo(extractBodyByRegex(stripped));
+            assertThat(HtmlNormalizer.normalize(html)).as("normalize: %s", html)
+                    .isEqualTo(normalizeByRegex(html));
+        }
+    }
+
+    @Test
+    void foldsBreakRuns() {
+        assertThat(HtmlNormalizer.normalize("a<br><br/>\n<br />b<br>c")).isEqualTo("a<br><br>b<br>c");
+        assertThat(HtmlNormalizer.normalize("  a \n\n\n b  ")).isEqualTo("a b");
+        assertThat(HtmlNormalizer.normalize("a\nb")).isEqualTo("a\nb");
+    }
+
+    @Test
+    void reusesInputWithoutBom() {
+        String html = "<body>a</body>";
+
+        assertThat(HtmlNormalizer.stripBom(html)).isSameAs(html);
+    }
+
+    @ParameterizedTest
+    @EnumSource(SyntheticEpub.Shape.class)
+    void matchesRegexOnSyntheticChapters(SyntheticEpub.Shape shape) {
+        for (int variant = 0; variant < 3; variant++) {
+            for (String chapter : SyntheticEpub.chapters(shape, variant)) {
+                String body = HtmlNormalizer.extractBody(HtmlNormalizer.stripBom(chapter));
+                assertThat(body).isEqualTo(extractBodyByRegex(chapter));
+
+                String serialized = Jsoup.parse(body).body().html();
+                assertThat(HtmlNormalizer.normalize(serialized)).isEqualTo(normalizeByRegex(serialized));
+            }
+        }
+    }
+}
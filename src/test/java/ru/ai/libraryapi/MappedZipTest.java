@@ -0,0 +1,192 @@
+package ru.ai.libraryapi;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Тесты чтения архивов через отображение в память: результат сверяется с java.util.zip.
+ */
+class MappedZipTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Записывает архив с хранимыми и сжатыми файлами разных размеров, в том числе
+     * больше пулового буфера.
+     */
+    private Path writeArchive() throws IOException {
+        Random random = new Random(42);
+        Path file = dir.resolve("mixed.zip");
+        try (OutputStream os = Files.newOutputStream(file);
+             ZipOutputStream zip = new ZipOutputStream(os)) {
+            int n = 0;
+            for (int size : new int[]{0, 1, 100, 70_000, 1 << 20, (1 << 20) + 1, 3 << 20}) {
+                byte[] content = text(random, size);
+                zip.putNextEntry(new ZipEntry("deflated/" + n + ".xhtml"));
+                zip.write(content);
+                zip.closeEntry();
+
+                ZipEntry stored = new ZipEntry("stored/" + n + ".xhtml");
+                stored.setMethod(ZipEntry.STORED);
+                stored.setSize(content.length);
+                CRC32 crc = new CRC32();
+                crc.update(content);
+                stored.setCrc(crc.getValue());
+                zip.putNextEntry(stored);
+                zip.write(content);
+                zip.closeEntry();
+                n++;
+            }
+        }
+        return file;
+    }
+
+    private static byte[] text(Random random, int size) {
+        String alphabet = "абвгд efgh <p></p>\n";
+        StringBuilder s = new StringBuilder(size);
+        while (s.length() < size) {
+            s.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return s.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void assertSameAsZipFile(Path file) throws Exception {
+        MappedZip mapped = MappedZip.open(file);
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                byte[] expected;
+                try (InputStream in = zip.getInputStream(entry)) {
+                    expected = in.readAllBytes();
+                }
+                assertThat(mapped.size(entry.getName())).as(entry.getName()).isEqualTo(entry.getSize());
+                assertThat(mapped.readText(entry.getName())).as(entry.getName())
+                        .isEqualTo(new String(expected, StandardCharsets.UTF_8));
+                try (InputStream in = mapped.open(entry.getName())) {
+                    assertThat(in.readAllBytes()).as(entry.getName()).isEqualTo(expected);
+                }
+            }
+        }
+        assertThat(mapped.size("missing")).isEqualTo(-1);
+        assertThat(mapped.readText("missing")).isNull();
+        assertThat(mapped.open("missing")).isNull();
+    }
+
+    @Test
+    void readsLikeZipFile() throws Exception {
+        assertSameAsZipFile(writeArchive());
+    }
+
+    @ParameterizedTest
+    @EnumSource(SyntheticEpub.Shape.class)
+    void readsSyntheticBooksLikeZipFile(SyntheticEpub.Shape shape) throws Exception {
+        Path file = dir.resolve(shape + ".epub");
+        SyntheticEpub.write(shape, file);
+
+        assertSameAsZipFile(file);
+    }
+
+    @Test
+    void readsConcurrentlyOnVirtualThreads() throws Exception {
+        Path file = writeArchive();
+        MappedZip mapped = MappedZip.open(file);
+        List<String> names = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                names.add(entry.getName());
+                try (InputStream in = zip.getInputStream(entry)) {
+                    expected.add(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                }
+            }
+        }
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int task = 0; task < 200; task++) {
+                int i = task % names.size();
+                results.add(executor.submit(() -> mapped.readText(names.get(i)).equals(expected.get(i))));
+            }
+            for (Future<Boolean> result : results) {
+                assertThat(result.get()).isTrue();
+            }
+        }
+    }
+
+    @Test
+    void keepsSizesAboveIntRangeForLimitChecks() throws Exception {
+        Path file = dir.resolve("huge.zip");
+        try (OutputStream os = Files.newOutputStream(file);
+             ZipOutputStream zip = new ZipOutputStream(os)) {
+            zip.putNextEntry(new ZipEntry("chapter.xhtml"));
+            zip.write("<p>текст</p>".getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+
+        // Центральный каталог объявляет распакованный размер 3 ГБ
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer buf = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        int central = -1;
+        for (int i = bytes.length - 4; i >= 0; i--) {
+            if (buf.getInt(i) == 0x02014b50) {
+                central = i;
+                break;
+            }
+        }
+        buf.putInt(central + 24, 0xC0000000);
+        Files.write(file, bytes);
+
+        MappedZip mapped = MappedZip.open(file);
+        assertThat(mapped.size("chapter.xhtml")).isEqualTo(0xC0000000L);
+        assertThatThrownBy(() -> mapped.readText("chapter.xhtml")).isInstanceOf(ZipException.class);
+    }
+
+    @Test
+    void rejectsDirectoryPointingOutsideArchive() throws Exception {
+        Path file = dir.resolve("corrupt.zip");
+        try (OutputStream os = Files.newOutputStream(file);
+             ZipOutputStream zip = new ZipOutputStream(os)) {
+            zip.putNextEntry(new ZipEntry("chapter.xhtml"));
+            zip.write("<p>текст</p>".getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer buf = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = bytes.length - 4; i >= 0; i--) {
+            if (buf.getInt(i) == 0x02014b50) {
+                buf.putInt(i + 42, 0x7FFF0000);
+                break;
+            }
+        }
+        Files.write(file, bytes);
+
+        assertThatThrownBy(() -> MappedZip.open(file)).isInstanceOf(ZipException.class);
+    }
+}
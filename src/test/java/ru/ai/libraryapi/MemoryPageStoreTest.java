@@ -0,0 +1,69 @@
+package ru.ai.libraryapi;
+
+import org.junit.jupiter.api.Test;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тесты хранилища страниц в памяти узла: диапазоны, выход за конец книги и идентичность.
+ */
+class MemoryPageStoreTest {
+    private static final BookKey BOOK = new BookKey("/library/book.epub", 1, 100, 1000, 7);
+    private static final List<String> PAGES = List.of("<p>один</p>", "<p>два</p>", "<p>три</p>");
+
+    private static MemoryPageStore store(long maxBytes) {
+        BookCfg cfg = new BookCfg();
+        cfg.STORE_MEMORY_MAX_BYTES = maxBytes;
+        return new MemoryPageStore(cfg);
+    }
+
+    @Test
+    void readsWrittenRanges() {
+        MemoryPageStore store = store(1024 * 1024);
+        store.write(BOOK, PAGES, new int[]{0, 2});
+
+        PageStore.Range range = store.read(BOOK, 1, 5);
+        assertThat(range.pages()).containsExactly("<p>два</p>", "<p>три</p>");
+        assertThat(range.total()).isEqualTo(3);
+        assertThat(store.read(BOOK, 0, 1).pages()).containsExactly("<p>один</p>");
+
+        PageStore.ChapterStarts starts = store.readChapterStarts(BOOK);
+        assertThat(starts.starts()).containsExactly(0, 2);
+        assertThat(starts.total()).isEqualTo(3);
+    }
+
+    @Test
+    void rangePastEndIsEmpty() {
+        MemoryPageStore store = store(1024 * 1024);
+        store.write(BOOK, PAGES, new int[]{0});
+
+        for (int from : new int[]{3, 10}) {
+            PageStore.Range range = store.read(BOOK, from, from + 5);
+            assertThat(range.pages()).isEmpty();
+            assertThat(range.total()).isEqualTo(3);
+        }
+        // Конец раньше начала даёт пустой диапазон, а не исключение
+        assertThat(store.read(BOOK, 2, 1).pages()).isEmpty();
+    }
+
+    @Test
+    void otherBookVersionIsNotFound() {
+        MemoryPageStore store = store(1024 * 1024);
+        store.write(BOOK, PAGES, new int[]{0});
+
+        BookKey modified = new BookKey(BOOK.path(), BOOK.modified() + 1, BOOK.size(), BOOK.maxLength(), BOOK.rules());
+        BookKey resized = new BookKey(BOOK.path(), BOOK.modified(), BOOK.size(), 2000, BOOK.rules());
+        assertThat(store.read(modified, 0, 1)).isNull();
+        assertThat(store.read(resized, 0, 1)).isNull();
+        assertThat(store.readChapterStarts(modified)).isNull();
+    }
+
+    @Test
+    void persistsOnlyWithBudget() {
+        assertThat(store(1024 * 1024).persists()).isTrue();
+        assertThat(store(0).persists()).isFalse();
+    }
+}
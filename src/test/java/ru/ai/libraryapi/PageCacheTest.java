@@ -0,0 +1,103 @@
+package ru.ai.libraryapi;
+
+import org.junit.jupiter.api.Test;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тесты кеша разобранных книг: вес записей по размеру страниц и вытеснение по бюджету.
+ */
+class PageCacheTest {
+    private static final int BUDGET = 64 * 1024;
+
+    private static PageCache cache(long maxBytes) {
+        BookCfg cfg = new BookCfg();
+        cfg.CACHE_MAX_BYTES = maxBytes;
+        return new PageCache(cfg);
+    }
+
+    private static BookKey key(String name) {
+        return new BookKey("/library/" + name + ".epub", 1, 100, 1000, 7);
+    }
+
+    /**
+     * Книга из страниц заданной длины; каждая страница весит не меньше двух байт на символ.
+     */
+    private static List<String> pages(int count, int length) {
+        return Collections.nCopies(count, "a".repeat(length));
+    }
+
+    /**
+     * Ждёт, пока в кеше останется заданное число книг: Caffeine вытесняет записи в фоне.
+     */
+    private static int awaitCached(PageCache cache, int expected, BookKey... keys) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        int cached;
+        do {
+            cached = 0;
+            for (BookKey key : keys) {
+                if (cache.get(key) != null) {
+                    cached++;
+                }
+            }
+            if (cached == expected) {
+                break;
+            }
+            Thread.sleep(10);
+        } while (System.nanoTime() < deadline);
+        return cached;
+    }
+
+    @Test
+    void smallBooksStayWithinBudget() throws Exception {
+        PageCache cache = cache(BUDGET);
+        BookKey[] keys = new BookKey[10];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = key("small-" + i);
+            cache.put(keys[i], pages(4, 500), new int[]{0, 2});
+        }
+
+        assertThat(awaitCached(cache, keys.length, keys)).isEqualTo(keys.length);
+        assertThat(cache.get(keys[0])).hasSize(4);
+        assertThat(cache.chapterStarts(keys[0])).containsExactly(0, 2);
+    }
+
+    @Test
+    void booksOverBudgetAreEvictedByWeight() throws Exception {
+        PageCache cache = cache(BUDGET);
+        BookKey first = key("first");
+        BookKey second = key("second");
+
+        // Каждая книга занимает больше половины бюджета: по числу записей поместились бы обе
+        cache.put(first, pages(2, 10_000), new int[]{0});
+        cache.put(second, pages(2, 10_000), new int[]{0});
+
+        assertThat(awaitCached(cache, 1, first, second)).isEqualTo(1);
+    }
+
+    @Test
+    void bookLargerThanBudgetIsNotKept() throws Exception {
+        PageCache cache = cache(BUDGET);
+        BookKey huge = key("huge");
+
+        cache.put(huge, pages(4, BUDGET / 4), new int[]{0});
+
+        assertThat(awaitCached(cache, 0, huge)).isZero();
+    }
+
+    @Test
+    void disabledWithoutBudget() {
+        PageCache cache = cache(0);
+        BookKey book = key("book");
+
+        cache.put(book, pages(1, 10), new int[]{0});
+
+        assertThat(cache.get(book)).isNull();
+        assertThat(cache.chapterStarts(book)).isNull();
+    }
+}
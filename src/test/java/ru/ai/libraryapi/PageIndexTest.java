@@ -0,0 +1,141 @@
+package ru.ai.libraryapi;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тесты файлового индекса страниц: идентичность, повреждённые файлы и временные файлы.
+ */
+class PageIndexTest {
+    private static final BookKey BOOK = new BookKey("/library/book.epub", 1, 100, 1000, 7);
+    private static final List<String> PAGES = List.of("<p>один</p>", "<p>два</p>", "<p>три</p>");
+
+    @TempDir
+    Path dir;
+
+    private PageIndex index() {
+        BookCfg cfg = new BookCfg();
+        cfg.INDEX_DIR = dir.toString();
+        cfg.INDEX_MAPPED_MAX_ENTRIES = 16;
+        return new PageIndex(cfg);
+    }
+
+    @Test
+    void readsWrittenRanges() throws Exception {
+        PageIndex index = index();
+        index.write(BOOK, PAGES, new int[]{0, 2});
+
+        PageStore.Range range = index.read(BOOK, 1, 5);
+        assertThat(range.pages()).containsExactly("<p>два</p>", "<p>три</p>");
+        assertThat(range.total()).isEqualTo(3);
+
+        PageStore.ChapterStarts starts = index.readChapterStarts(BOOK);
+        assertThat(starts.starts()).containsExactly(0, 2);
+        assertThat(starts.total()).isEqualTo(3);
+    }
+
+    @Test
+    void rangePastEndIsEmpty() throws Exception {
+        PageIndex index = index();
+        index.write(BOOK, PAGES, new int[]{0});
+
+        for (int from : new int[]{3, 10}) {
+            PageStore.Range range = index.read(BOOK, from, from + 5);
+            assertThat(range.pages()).isEmpty();
+            assertThat(range.total()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void otherCleaningRulesMiss() throws Exception {
+        PageIndex index = index();
+        index.write(BOOK, PAGES, new int[]{0});
+
+        BookKey otherRules = new BookKey(BOOK.path(), BOOK.modified(), BOOK.size(), BOOK.maxLength(), 8);
+        assertThat(index.read(otherRules, 0, 1)).isNull();
+
+        // Индекс с другими правилами пишется в свой файл и не вытесняет прежний
+        index.write(otherRules, List.of("<p>иначе</p>"), new int[]{0});
+        assertThat(index.read(BOOK, 0, 1).pages()).containsExactly("<p>один</p>");
+        assertThat(index.read(otherRules, 0, 1).pages()).containsExactly("<p>иначе</p>");
+    }
+
+    @Test
+    void changedFileMisses() throws Exception {
+        PageIndex index = index();
+        index.write(BOOK, PAGES, new int[]{0});
+
+        assertThat(index.read(new BookKey(BOOK.path(), 2, 100, 1000, 7), 0, 1)).isNull();
+        assertThat(index.read(new BookKey(BOOK.path(), 1, 101, 1000, 7), 0, 1)).isNull();
+    }
+
+    @Test
+    void truncatedOrCorruptIndexMisses() throws Exception {
+        index().write(BOOK, PAGES, new int[]{0, 2});
+        Path file = indexFile();
+        byte[] complete = Files.readAllBytes(file);
+
+        for (int length : new int[]{0, 7, 40, complete.length / 2, complete.length - 1}) {
+            Files.write(file, Arrays.copyOf(complete, length));
+            PageIndex index = index();
+            assertThat(index.read(BOOK, 0, 1)).as("length %d", length).isNull();
+            assertThat(index.readChapterStarts(BOOK)).as("length %d", length).isNull();
+        }
+
+        // Смещение страницы за пределами файла
+        byte[] corrupt = complete.clone();
+        int offsets = complete.length - (PAGES.size() + 1) * Long.BYTES
+                - String.join("", PAGES).getBytes(StandardCharsets.UTF_8).length - 3 * Integer.BYTES;
+        ByteBuffer.wrap(corrupt).putLong(offsets + Long.BYTES, 1L << 40);
+        Files.write(file, corrupt);
+        assertThat(index().read(BOOK, 0, 1)).isNull();
+
+        // Книга разбирается заново и файл перезаписывается
+        PageIndex index = index();
+        index.write(BOOK, PAGES, new int[]{0, 2});
+        assertThat(index.read(BOOK, 0, 3).pages()).isEqualTo(PAGES);
+    }
+
+    @Test
+    void rewriteReplacesKeptMapping() throws Exception {
+        PageIndex index = index();
+        index.write(BOOK, PAGES, new int[]{0});
+        assertThat(index.read(BOOK, 0, 1).pages()).containsExactly("<p>один</p>");
+
+        index.write(BOOK, List.of("<p>новая</p>"), new int[]{0});
+        assertThat(index.read(BOOK, 0, 5).pages()).containsExactly("<p>новая</p>");
+    }
+
+    @Test
+    void removesStaleTemporaryFiles() throws Exception {
+        Path stale = Files.writeString(dir.resolve("book.idx123.tmp"), "partial");
+        Files.setLastModifiedTime(stale, FileTime.from(Instant.now().minus(Duration.ofDays(1))));
+        Path fresh = Files.writeString(dir.resolve("book.idx456.tmp"), "in progress");
+
+        index();
+
+        assertThat(stale).doesNotExist();
+        assertThat(fresh).exists();
+    }
+
+    private Path indexFile() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.toString().endsWith(".idx")).findFirst().orElseThrow();
+        }
+    }
+}
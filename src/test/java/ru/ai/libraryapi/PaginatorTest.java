@@ -0,0 +1,237 @@
+package ru.ai.libraryapi;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тесты разбиения на страницы по блочной модели глав: страницы должны совпадать байт в байт
+ * со страницами прежнего разбиения, которое заново разбирало HTML главы при каждой проверке.
+ */
+class PaginatorTest {
+    private static final int[] PAGE_SIZES = {500, 1000, 2000, 4000};
+
+    // Блоки, из которых собираются случайные главы: заголовки, title/head/toc, короткие
+    // и длинные абзацы, вложенные div и текст вне элементов
+    private static final String[] BLOCKS = {
+            "<h1>%s</h1>", "<h3>%s</h3>", "<div class=\"chapter-title\">%s</div>", "<div class=\"head\">%s</div>",
+            "<p id=\"toc-1\">%s</p>", "<p>%s</p>", "<p>%s</p>", "<p>%s</p>", "<div><p>%s</p><p>%1$s</p></div>",
+            "<blockquote>%s</blockquote>", "%s", "<p><b>%s</b></p>", "<br>"
+    };
+
+    private static final String[] WORDS = {"книга", "страница", "глава", "reader", "текст", "слово", "море"};
+
+    /**
+     * Разбиение до блочной модели: каждая проверка заново разбирает HTML главы через Jsoup.
+     */
+    private static List<String> paginateByReparsing(List<String> chapters, int maxLength) {
+        List<String> pages = new ArrayList<>();
+        StringBuilder pendingHeader = new StringBuilder();
+        StringBuilder currentPage = new StringBuilder();
+
+        for (String chapter : chapters) {
+            if (isPrimarilyHeader(chapter)) {
+                pendingHeader.append(chapter);
+            } else if (!pendingHeader.isEmpty()) {
+                split("<div>" + pendingHeader + "</div>" + chapter, maxLength, pages, currentPage);
+                pendingHeader = new StringBuilder();
+            } else {
+                split(chapter, maxLength, pages, currentPage);
+            }
+        }
+        if (!pendingHeader.isEmpty()) {
+            split("<div>" + pendingHeader + "</div>", maxLength, pages, currentPage);
+        }
+        if (!currentPage.isEmpty()) {
+            pages.add(currentPage.toString());
+        }
+        return pages;
+    }
+
+    private static void split(String chapter, int maxLength, List<String> pages, StringBuilder currentPage) {
+        if (chapter.trim().isEmpty()) {
+            return;
+        }
+        int minPageLength = Jsoup.parseBodyFragment(chapter).body().children().size() <= 1 ? 500 : 60;
+
+        if (chapter.length() > maxLength) {
+            if (!currentPage.isEmpty()) {
+                pages.add(currentPage.toString());
+                currentPage.setLength(0);
+            }
+            pages.addAll(splitLargeChapter(chapter, maxLength));
+            return;
+        }
+
+        if (chapter.length() < minPageLength || isPrimarilyHeader(chapter)) {
+            currentPage.append(chapter);
+            return;
+        }
+
+        if (currentPage.length() + chapter.length() > maxLength) {
+            if (!currentPage.isEmpty()) {
+                pages.add(currentPage.toString());
+            }
+            currentPage.setLength(0);
+        }
+        currentPage.append(chapter);
+    }
+
+    private static boolean isPrimarilyHeader(String chapter) {
+        Elements children = Jsoup.parseBodyFragment(chapter).body().children();
+        if (children.size() <= 2) {
+            Element first = children.first();
+            if (first != null) {
+                String tag = first.tagName();
+                String className = first.attr("class");
+                String id = first.attr("id");
+                String text = first.text().trim();
+                return tag.matches("h[1-6]") ||
+                        (tag.equals("div") && className.matches(".*(title|head).*")) ||
+                        (!id.isEmpty() && id.matches(".*toc.*")) ||
+                        (text.length() < 200 && children.size() == 1);
+            }
+        }
+        return false;
+    }
+
+    private static List<String> splitLargeChapter(String chapter, int maxLength) {
+        List<String> subPages = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+
+        for (Element el : Jsoup.parseBodyFragment(chapter).body().children()) {
+            String subBlock = el.outerHtml();
+            if (current.length() + subBlock.length() > maxLength) {
+                String candidate = current.toString().trim();
+                if (!candidate.isEmpty()) {
+                    subPages.add(candidate);
+                }
+                current = new StringBuilder();
+            }
+            current.append(subBlock);
+        }
+        if (!current.isEmpty()) {
+            String candidate = current.toString().trim();
+            if (!candidate.isEmpty()) {
+                subPages.add(candidate);
+            }
+        }
+        if (subPages.isEmpty() && !chapter.trim().isEmpty()) {
+            subPages.add(chapter.trim());
+        }
+
+        for (int i = 0; i < subPages.size() - 1; i++) {
+            if (isPrimarilyHeader(subPages.get(i))) {
+                subPages.set(i, subPages.get(i) + subPages.get(i + 1));
+                subPages.remove(i + 1);
+                i--;
+            }
+        }
+        return subPages;
+    }
+
+    /**
+     * Разбивает главы по блочной модели и проверяет, что уже готовые страницы не меняются.
+     */
+    private static List<String> paginate(List<String> chapters, int maxLength) {
+        Paginator paginator = new Paginator(maxLength);
+        List<String> seen = new ArrayList<>();
+        for (String chapter : chapters) {
+            paginator.accept(Chapter.parse(chapter));
+            assertThat(paginator.pages().subList(0, seen.size())).isEqualTo(seen);
+            seen = List.copyOf(paginator.pages());
+        }
+        paginator.finish();
+        assertThat(paginator.pages().subList(0, seen.size())).isEqualTo(seen);
+        return paginator.pages();
+    }
+
+    /**
+     * Очистка, близкая к очистке сервиса: тело главы, сериализованное Jsoup и нормализованное.
+     */
+    private static String clean(String xhtml) {
+        String body = HtmlNormalizer.extractBody(HtmlNormalizer.stripBom(xhtml));
+        return HtmlNormalizer.normalize(Jsoup.parse(body).body().html());
+    }
+
+    private static String randomChapter(Random random) {
+        StringBuilder html = new StringBuilder();
+        int blocks = random.nextInt(12);
+        for (int i = 0; i < blocks; i++) {
+            StringBuilder text = new StringBuilder();
+            int words = random.nextInt(4) == 0 ? 50 + random.nextInt(400) : 1 + random.nextInt(30);
+            for (int w = 0; w < words; w++) {
+                text.append(w > 0 ? " " : "").append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            html.append(String.format(BLOCKS[random.nextInt(BLOCKS.length)], text));
+        }
+        return HtmlNormalizer.normalize(Jsoup.parseBodyFragment(html.toString()).body().html());
+    }
+
+    @ParameterizedTest
+    @EnumSource(SyntheticEpub.Shape.class)
+    void matchesReparsingOnSyntheticBooks(SyntheticEpub.Shape shape) {
+        for (int variant = 0; variant < 2; variant++) {
+            List<String> chapters = new ArrayList<>();
+            for (String xhtml : SyntheticEpub.chapters(shape, variant)) {
+                String cleaned = clean(xhtml);
+                if (!cleaned.isBlank()) {
+                    chapters.add(cleaned);
+                }
+            }
+
+            for (int maxLength : PAGE_SIZES) {
+                assertThat(paginate(chapters, maxLength))
+                        .as("%s-%d, max length %d", shape, variant, maxLength)
+                        .isEqualTo(paginateByReparsing(chapters, maxLength));
+            }
+        }
+    }
+
+    @Test
+    void matchesReparsingOnRandomChapters() {
+        Random random = new Random(20240917L);
+        for (int book = 0; book < 300; book++) {
+            List<String> chapters = new ArrayList<>();
+            int count = 1 + random.nextInt(20);
+            while (chapters.size() < count) {
+                String chapter = randomChapter(random);
+                if (!chapter.isBlank()) {
+                    chapters.add(chapter);
+                }
+            }
+
+            int maxLength = PAGE_SIZES[random.nextInt(PAGE_SIZES.length)];
+            assertThat(paginate(chapters, maxLength))
+                    .as("book %d, max length %d: %s", book, maxLength, chapters)
+                    .isEqualTo(paginateByReparsing(chapters, maxLength));
+        }
+    }
+
+    @Test
+    void recordsChapterStarts() {
+        Paginator paginator = new Paginator(1000);
+        String paragraph = "<p>" + "слово ".repeat(30).trim() + "</p>";
+
+        paginator.accept(Chapter.parse("<h1>Глава 1</h1>"));
+        paginator.accept(Chapter.parse(paragraph + paragraph));
+        paginator.skip();
+        paginator.accept(Chapter.parse(paragraph.repeat(4)));
+        paginator.accept(Chapter.parse(paragraph.repeat(4)));
+        paginator.skip();
+        paginator.finish();
+
+        // Заголовок объединяется со следующей главой, пустая глава начинается там же, где следующая
+        assertThat(paginator.pages()).hasSize(3);
+        assertThat(paginator.chapterStarts()).containsExactly(0, 0, 1, 1, 2, 2);
+    }
+}
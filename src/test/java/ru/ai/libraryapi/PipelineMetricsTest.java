@@ -0,0 +1,76 @@
+package ru.ai.libraryapi;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тесты метрик конвейера: таймеры этапов и запросов попадают в реестр Micrometer.
+ */
+@SpringBootTest(properties = {
+        "app.library.dir=" + PipelineMetricsTest.LIBRARY,
+        "app.library.index.dir=",
+        "app.library.catalog.enabled=false"
+})
+@ActiveProfiles("test")
+class PipelineMetricsTest {
+    static final String LIBRARY = "target/test-library/metrics";
+    private static final String BOOK = "calibre.epub";
+
+    @Autowired
+    private BookServ bookServ;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @BeforeAll
+    static void writeLibrary() throws IOException {
+        SyntheticEpub.write(SyntheticEpub.Shape.CALIBRE, 0, Path.of(LIBRARY, BOOK));
+    }
+
+    private Timer stage(String stage) {
+        return registry.get("book.pipeline.stage").tag("stage", stage).timer();
+    }
+
+    private Timer total(String source) {
+        return registry.get("book.pipeline.total").tag("source", source).timer();
+    }
+
+    @Test
+    void paginationRecordsStageAndRequestTimers() {
+        long pipeline = total("pipeline").count();
+        long cache = total("cache").count();
+        long extract = stage("extract").count();
+        long clean = stage("clean").count();
+        long paginate = stage("paginate").count();
+        double bytesRead = registry.get("book.pipeline.bytes.read").counter().count();
+
+        ResDTO res = bookServ.getPages(new ReqDTO(BOOK, 0, Integer.MAX_VALUE));
+        assertThat(res.totalEstimated()).isFalse();
+
+        // Разбор книги проходит все этапы и засчитывается как ответ конвейера
+        assertThat(stage("extract").count()).isGreaterThan(extract);
+        assertThat(stage("clean").count()).isGreaterThan(clean);
+        assertThat(stage("paginate").count()).isGreaterThan(paginate);
+        assertThat(stage("clean").totalTime(TimeUnit.NANOSECONDS)).isPositive();
+        assertThat(total("pipeline").count()).isEqualTo(pipeline + 1);
+        assertThat(registry.get("book.pipeline.bytes.read").counter().count()).isGreaterThan(bytesRead);
+        assertThat(registry.get("book.pipeline.book.pages").summary().max()).isEqualTo(res.total());
+
+        // Повторный запрос отвечает из кеша страниц, не проходя этапы заново
+        long extracted = stage("extract").count();
+        bookServ.getPages(new ReqDTO(BOOK, 0, 5));
+        assertThat(total("cache").count()).isEqualTo(cache + 1);
+        assertThat(stage("extract").count()).isEqualTo(extracted);
+    }
+}
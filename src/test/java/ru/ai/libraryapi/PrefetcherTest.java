@@ -0,0 +1,81 @@
+package ru.ai.libraryapi;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тесты распознавания последовательного чтения.
+ */
+class PrefetcherTest {
+    private static final BookKey BOOK = new BookKey("book.epub", 1, 1, 1000, 0);
+
+    private final BlockingQueue<Integer> targets = new LinkedBlockingQueue<>();
+    private Prefetcher prefetcher;
+
+    @AfterEach
+    void shutdown() {
+        if (prefetcher != null) {
+            prefetcher.shutdown();
+        }
+    }
+
+    private Prefetcher prefetcher(int windows) {
+        BookCfg cfg = new BookCfg();
+        cfg.PREFETCH_WINDOWS = windows;
+        cfg.PREFETCH_THREADS = 1;
+        cfg.PREFETCH_QUEUE = 16;
+        cfg.CURSOR_MAX_COUNT = 16;
+        cfg.CURSOR_TTL_MINUTES = 10;
+        prefetcher = new Prefetcher(cfg, new PipelineMetrics(new SimpleMeterRegistry()));
+        return prefetcher;
+    }
+
+    @Test
+    void prefetchesFollowingWindowsOfSequentialReader() throws Exception {
+        Prefetcher prefetcher = prefetcher(2);
+
+        prefetcher.observe(BOOK, 0, 10, targets::add);
+        assertThat(targets.poll(200, TimeUnit.MILLISECONDS)).isNull();
+
+        prefetcher.observe(BOOK, 10, 20, targets::add);
+        assertThat(targets.poll(5, TimeUnit.SECONDS)).isEqualTo(40);
+
+        // Каждое следующее окно продлевает предзагрузку на одно окно
+        prefetcher.observe(BOOK, 20, 30, targets::add);
+        assertThat(targets.poll(5, TimeUnit.SECONDS)).isEqualTo(50);
+
+        // Повторное чтение внутри предыдущего окна ничего не планирует
+        prefetcher.observe(BOOK, 25, 30, targets::add);
+        assertThat(targets.poll(200, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    void ignoresRandomAccess() throws Exception {
+        Prefetcher prefetcher = prefetcher(2);
+
+        for (int from : List.of(50, 0, 200, 30, 10)) {
+            prefetcher.observe(BOOK, from, from + 10, targets::add);
+        }
+
+        assertThat(targets.poll(200, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    void disabledWithoutWindows() throws Exception {
+        Prefetcher prefetcher = prefetcher(0);
+
+        prefetcher.observe(BOOK, 0, 10, targets::add);
+        prefetcher.observe(BOOK, 10, 20, targets::add);
+
+        assertThat(targets.poll(200, TimeUnit.MILLISECONDS)).isNull();
+    }
+}
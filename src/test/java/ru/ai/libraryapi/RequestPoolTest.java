@@ -0,0 +1,146 @@
+package ru.ai.libraryapi;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Тесты пула запросов страниц: отклонение при перегрузке, срок ответа и места потоковой выдачи.
+ */
+class RequestPoolTest {
+    private final CountDownLatch release = new CountDownLatch(1);
+    private RequestPool pool;
+
+    @AfterEach
+    void shutdown() {
+        release.countDown();
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private RequestPool pool(int threads, int queue, long timeoutMillis, boolean virtualThreads) {
+        BookCfg cfg = new BookCfg();
+        cfg.ASYNC_THREADS = threads;
+        cfg.ASYNC_QUEUE = queue;
+        cfg.ASYNC_TIMEOUT_MILLIS = timeoutMillis;
+        cfg.ASYNC_RETRY_AFTER_SECONDS = 3;
+        cfg.ASYNC_VIRTUAL_THREADS = virtualThreads;
+        pool = new RequestPool(cfg, new PipelineMetrics(new SimpleMeterRegistry()));
+        return pool;
+    }
+
+    private String blocked() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "done";
+    }
+
+    @Test
+    void runsTasks() throws Exception {
+        RequestPool pool = pool(2, 2, 0, false);
+
+        assertThat(pool.submit(() -> "ok").get(5, TimeUnit.SECONDS)).isEqualTo("ok");
+    }
+
+    @Test
+    void shedsBeyondThreadsAndQueue() throws Exception {
+        RequestPool pool = pool(1, 1, 0, false);
+        CompletableFuture<String> running = pool.submit(this::blocked);
+        CompletableFuture<String> queued = pool.submit(this::blocked);
+
+        assertOverloaded(pool.submit(() -> "rejected"));
+
+        release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS)).isEqualTo("done");
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isEqualTo("done");
+        assertThat(submitWhenFree(pool).get(5, TimeUnit.SECONDS)).isEqualTo("ok");
+    }
+
+    @Test
+    void shedsOnVirtualThreads() throws Exception {
+        RequestPool pool = pool(1, 0, 0, true);
+        CompletableFuture<String> running = pool.submit(this::blocked);
+
+        assertOverloaded(pool.submit(() -> "rejected"));
+
+        release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS)).isEqualTo("done");
+    }
+
+    @Test
+    void failsAfterDeadlineAndSkipsQueuedTask() throws Exception {
+        RequestPool pool = pool(1, 1, 100, false);
+        CompletableFuture<String> running = pool.submit(this::blocked);
+        AtomicBoolean ran = new AtomicBoolean();
+        CompletableFuture<String> queued = pool.submit(() -> {
+            ran.set(true);
+            return "late";
+        });
+
+        assertOverloaded(running);
+        assertOverloaded(queued);
+
+        // Места освобождаются, когда задачи покидают пул, а не по истечении срока
+        release.countDown();
+        assertThat(submitWhenFree(pool).get(5, TimeUnit.SECONDS)).isEqualTo("ok");
+        assertThat(ran).isFalse();
+    }
+
+    @Test
+    void streamsTakeAdmissionSlots() throws Exception {
+        RequestPool pool = pool(1, 1, 0, false);
+
+        RequestPool.Admission first = pool.admit();
+        RequestPool.Admission second = pool.admit();
+        assertThatThrownBy(pool::admit).isInstanceOf(OverloadedException.class);
+        assertOverloaded(pool.submit(() -> "rejected"));
+
+        first.close();
+        first.close();
+        assertThat(pool.submit(() -> "ok").get(5, TimeUnit.SECONDS)).isEqualTo("ok");
+        second.close();
+        pool.admit().close();
+    }
+
+    @Test
+    void synchronousWithoutThreads() throws Exception {
+        RequestPool pool = pool(0, 0, 0, false);
+
+        assertThat(pool.submit(() -> Thread.currentThread()).get()).isSameAs(Thread.currentThread());
+        pool.admit().close();
+    }
+
+    /**
+     * Место возвращается после завершения будущего результата, поэтому повторяем попытку.
+     */
+    private static CompletableFuture<String> submitWhenFree(RequestPool pool) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        CompletableFuture<String> next;
+        do {
+            next = pool.submit(() -> "ok");
+        } while (next.isCompletedExceptionally() && System.nanoTime() < deadline);
+        return next;
+    }
+
+    private static void assertOverloaded(CompletableFuture<?> future) {
+        assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .cause()
+                .isInstanceOf(OverloadedException.class)
+                .satisfies(e -> assertThat(((OverloadedException) e).retryAfterSeconds()).isEqualTo(3));
+    }
+}
@@ -0,0 +1,123 @@
+package ru.ai.libraryapi;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Тесты объединения одновременных запросов по ключу.
+ */
+class SingleFlightTest {
+    private final SingleFlight<String, String> flights = new SingleFlight<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger calls = new AtomicInteger();
+    private final List<Thread> threads = new ArrayList<>();
+
+    @AfterEach
+    void join() throws InterruptedException {
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    private String blocked(String value) throws InterruptedException {
+        calls.incrementAndGet();
+        release.await();
+        return value;
+    }
+
+    private CompletableFuture<String> start(String key, Callable<String> work) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        threads.add(Thread.ofPlatform().start(() -> {
+            try {
+                result.complete(flights.run(key, work));
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        }));
+        return result;
+    }
+
+    /**
+     * Ждёт, пока все потоки не остановятся: ведущий в работе, остальные в ожидании её результата.
+     */
+    private void awaitParked() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (threads.stream().anyMatch(thread -> thread.getState() != Thread.State.WAITING)) {
+            assertThat(System.nanoTime()).as("threads parked in time").isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void concurrentCallersShareOneCall() throws Exception {
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            String value = "result-" + i;
+            results.add(start("book", () -> blocked(value)));
+        }
+        awaitParked();
+        assertThat(calls).hasValue(1);
+
+        release.countDown();
+        String shared = results.get(0).get(5, TimeUnit.SECONDS);
+        for (CompletableFuture<String> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo(shared);
+        }
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void otherKeysAreNotBlocked() throws Exception {
+        CompletableFuture<String> first = start("first", () -> blocked("first"));
+        awaitParked();
+
+        assertThat(flights.run("second", () -> "second")).isEqualTo("second");
+        assertThat(first).isNotDone();
+
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("first");
+    }
+
+    @Test
+    void failureReachesEveryCaller() throws Exception {
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(start("book", () -> {
+                blocked("unused");
+                throw new IOException("Book not found");
+            }));
+        }
+        awaitParked();
+
+        release.countDown();
+        for (CompletableFuture<String> result : results) {
+            assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+                    .cause()
+                    .isInstanceOf(IOException.class)
+                    .hasMessage("Book not found");
+        }
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void completedFlightIsNotReused() throws Exception {
+        assertThat(flights.run("book", () -> "first")).isEqualTo("first");
+        assertThatThrownBy(() -> flights.run("book", () -> {
+            throw new IOException("Book not found");
+        })).isInstanceOf(IOException.class);
+        assertThat(flights.run("book", () -> "third")).isEqualTo("third");
+    }
+}
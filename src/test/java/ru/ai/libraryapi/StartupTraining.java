@@ -0,0 +1,171 @@
+package ru.ai.libraryapi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Training run for the class-data sharing archive of the fast-start image.
+ * <p>
+ * Starts the extracted JAR of the {@code fast-start} build under {@code -XX:ArchiveClassesAtExit},
+ * sends it the requests of a typical client for every book of the library — JSON, binary and gzip
+ * pages, cacheable pages, batch and table of contents — and stops it. The JVM writes the archive
+ * on exit, so it holds the classes of the web stack, Jackson, the XML parsers and Jsoup along with
+ * those of startup, and a new instance serves its first request without loading them again.
+ * <p>
+ * The application itself is not changed for training: the driver lives outside the production
+ * artifact and only needs this class, the extracted JAR and its {@code lib} directory on the
+ * classpath. Options are {@code name=value} arguments: {@code dir=target/fast-start},
+ * {@code library=target/training-library} and {@code archive=app.jsa} (relative to {@code dir}).
+ */
+public final class StartupTraining {
+    private static final Duration TIMEOUT = Duration.ofMinutes(2);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private StartupTraining() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected name=value, got: " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        Path dir = Paths.get(options.getOrDefault("dir", "target/fast-start")).toAbsolutePath();
+        Path library = Paths.get(options.getOrDefault("library", "target/training-library")).toAbsolutePath();
+        Path archive = dir.resolve(options.getOrDefault("archive", "app.jsa"));
+
+        List<String> books = books(library);
+        if (books.isEmpty()) {
+            throw new IllegalStateException("No books in " + library);
+        }
+        Files.deleteIfExists(archive);
+
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-XX:ArchiveClassesAtExit=" + archive);
+        command.add("-Dspring.aot.enabled=true");
+        command.add("-jar");
+        command.add(jar(dir).toString());
+        command.add("--server.port=" + port);
+        // The library path is resolved against the working directory of the application
+        command.add("--app.library.dir=" + dir.relativize(library));
+        command.add("--app.library.index.dir=");
+
+        String base = "http://localhost:" + port + "/api/";
+        Process process = new ProcessBuilder(command).directory(dir.toFile()).inheritIO().start();
+        try (HttpClient client = HttpClient.newHttpClient()) {
+            awaitReady(client, process, base);
+            System.out.printf("Training run over %d books at %s%n", books.size(), base);
+            for (String book : books) {
+                exercise(client, base + "epub/", book);
+            }
+        } catch (Exception e) {
+            process.destroyForcibly().waitFor();
+            throw e;
+        }
+
+        // SIGTERM shuts the application down normally, and the JVM writes the archive on exit
+        process.destroy();
+        if (!process.waitFor(TIMEOUT.toSeconds(), TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+            throw new IllegalStateException("Application did not stop within " + TIMEOUT);
+        }
+        if (!Files.isRegularFile(archive)) {
+            throw new IllegalStateException("No AppCDS archive written to " + archive);
+        }
+        System.out.println("Training run finished, archive written to " + archive);
+    }
+
+    private static Path jar(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.toString().endsWith(".jar")).findFirst()
+                    .orElseThrow(() -> new IllegalStateException("No extracted JAR in " + dir
+                            + ", see README: fast start"));
+        }
+    }
+
+    private static List<String> books(Path library) throws IOException {
+        try (Stream<Path> files = Files.walk(library)) {
+            return files.filter(file -> file.toString().endsWith(".epub"))
+                    .map(file -> library.relativize(file).toString().replace('\\', '/'))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static void awaitReady(HttpClient client, Process process, String base) throws Exception {
+        HttpRequest health = HttpRequest.newBuilder(URI.create(base + "actuator/health"))
+                .timeout(Duration.ofSeconds(10))
+                .build();
+        long started = System.nanoTime();
+        while (System.nanoTime() - started < TIMEOUT.toNanos()) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Application exited with " + process.exitValue());
+            }
+            try {
+                if (client.send(health, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                // Not listening yet
+            }
+            Thread.sleep(50);
+        }
+        throw new IllegalStateException("Application not ready within " + TIMEOUT);
+    }
+
+    private static void exercise(HttpClient client, String base, String book) throws Exception {
+        ReqDTO range = new ReqDTO(book, 0, 10);
+        String query = "path=" + URLEncoder.encode(book, StandardCharsets.UTF_8);
+
+        send(client, post(base + "pages", range).build());
+        send(client, post(base + "pages", range)
+                .header("Accept", "application/x-library-pages")
+                .header("Accept-Encoding", "gzip")
+                .build());
+        send(client, HttpRequest.newBuilder(URI.create(base + "pages?" + query + "&from=5&to=15")).build());
+        send(client, post(base + "pages/batch", new BatchReqDTO(List.of(range))).build());
+        send(client, HttpRequest.newBuilder(URI.create(base + "toc?" + query)).build());
+    }
+
+    private static HttpRequest.Builder post(String uri, Object body) throws IOException {
+        return HttpRequest.newBuilder(URI.create(uri))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(MAPPER.writeValueAsBytes(body)));
+    }
+
+    private static void send(HttpClient client, HttpRequest request) throws Exception {
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(request.method() + " " + request.uri() + " returned "
+                    + response.statusCode());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package ru.ai.libraryapi;
+
+import org.junit.jupiter.api.Test;
+import ru.ai.libraryapi.config.BookCfg;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тесты фоновой записи разобранных книг в хранилище страниц.
+ */
+class StoreWriterTest {
+    private static final BookKey BOOK = new BookKey("/library/book.epub", 1, 100, 1000, 7);
+    private static final List<String> PAGES = List.of("<p>один</p>", "<p>два</p>");
+
+    /**
+     * Хранилище, которое считает записи и может задерживать их до сигнала.
+     */
+    private static class SlowStore implements PageStore {
+        final AtomicInteger writes = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final boolean persists;
+
+        SlowStore(boolean persists) {
+            this.persists = persists;
+        }
+
+        @Override
+        public Range read(BookKey key, int from, int to) {
+            return null;
+        }
+
+        @Override
+        public ChapterStarts readChapterStarts(BookKey key) {
+            return null;
+        }
+
+        @Override
+        public void write(BookKey key, List<String> pages, int[] chapterStarts) {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writes.incrementAndGet();
+        }
+
+        @Override
+        public boolean persists() {
+            return persists;
+        }
+    }
+
+    @Test
+    void writesReachStore() throws Exception {
+        BookCfg cfg = new BookCfg();
+        cfg.STORE_MEMORY_MAX_BYTES = 1024 * 1024;
+        MemoryPageStore store = new MemoryPageStore(cfg);
+        StoreWriter writer = new StoreWriter(store);
+
+        writer.write(BOOK, PAGES, new int[]{0, 1});
+        // Остановка дожидается начатых записей
+        writer.shutdown();
+
+        assertThat(store.read(BOOK, 0, 2).pages()).isEqualTo(PAGES);
+        assertThat(store.readChapterStarts(BOOK).starts()).containsExactly(0, 1);
+    }
+
+    @Test
+    void slowStoreDoesNotBlockCaller() throws Exception {
+        SlowStore store = new SlowStore(true);
+        StoreWriter writer = new StoreWriter(store);
+
+        long started = System.nanoTime();
+        writer.write(BOOK, PAGES, new int[]{0});
+        writer.write(BOOK, PAGES, new int[]{0});
+        assertThat(System.nanoTime() - started).isLessThan(TimeUnit.SECONDS.toNanos(5));
+        assertThat(store.writes).hasValue(0);
+
+        store.release.countDown();
+        writer.shutdown();
+        assertThat(store.writes).hasValue(2);
+    }
+
+    @Test
+    void storeWithoutPersistenceIsSkipped() throws Exception {
+        SlowStore store = new SlowStore(false);
+        store.release.countDown();
+        StoreWriter writer = new StoreWriter(store);
+
+        writer.write(BOOK, PAGES, new int[]{0});
+        writer.shutdown();
+
+        assertThat(store.writes).hasValue(0);
+    }
+}
@@ -0,0 +1,263 @@
+package ru.ai.libraryapi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Deterministic generator of synthetic EPUB files for tests, benchmarks and load tests.
+ * The same shape and variant always produce byte-identical content, so results are comparable
+ * between runs. Different variants of a shape share its structure but not its text.
+ */
+public final class SyntheticEpub {
+
+    /**
+     * Shapes of generated books.
+     */
+    public enum Shape {
+        /** A dozen ordinary chapters of a few kilobytes each. */
+        SMALL,
+        /** One chapter of about two megabytes that has to be split block by block. */
+        HUGE_SINGLE_CHAPTER,
+        /** A thousand chapters of a single short paragraph, mostly merged into shared pages. */
+        MANY_TINY_CHAPTERS,
+        /** Calibre-style output: title-only files, calibre classes, inline spans, styles, images and a TOC list. */
+        CALIBRE
+    }
+
+    private static final long SEED = 20240917L;
+
+    private static final String[] WORDS = {
+            "книга", "страница", "глава", "library", "reader", "текст", "слово", "paragraph",
+            "история", "время", "дорога", "город", "light", "night", "море", "ветер"
+    };
+
+    private SyntheticEpub() {
+    }
+
+    /**
+     * Writes a sample library with every shape, e.g. for the training run of the fast-start build.
+     *
+     * @param args Target directory and, optionally, the number of variants of each shape.
+     * @throws IOException If a file cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        Path dir = Path.of(args[0]);
+        int variants = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        for (Shape shape : Shape.values()) {
+            for (int variant = 0; variant < variants; variant++) {
+                String name = shape.name().toLowerCase(Locale.ROOT) + "-" + variant + ".epub";
+                write(shape, variant, dir.resolve(name));
+            }
+        }
+    }
+
+    /**
+     * Writes a book of the given shape.
+     *
+     * @param shape Shape of the book.
+     * @param file  Target EPUB file.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(Shape shape, Path file) throws IOException {
+        write(shape, 0, file);
+    }
+
+    /**
+     * Writes one of the variants of a book of the given shape.
+     *
+     * @param shape   Shape of the book.
+     * @param variant Variant number; variant 0 is the book written by {@link #write(Shape, Path)}.
+     * @param file    Target EPUB file.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(Shape shape, int variant, Path file) throws IOException {
+        List<String> chapters = chapters(shape, variant);
+
+        Files.createDirectories(file.getParent());
+        try (OutputStream os = Files.newOutputStream(file);
+             ZipOutputStream zip = new ZipOutputStream(os)) {
+            byte[] mimetype = "application/epub+zip".getBytes(StandardCharsets.US_ASCII);
+            ZipEntry mimetypeEntry = new ZipEntry("mimetype");
+            mimetypeEntry.setMethod(ZipEntry.STORED);
+            mimetypeEntry.setSize(mimetype.length);
+            CRC32 crc = new CRC32();
+            crc.update(mimetype);
+            mimetypeEntry.setCrc(crc.getValue());
+            zip.putNextEntry(mimetypeEntry);
+            zip.write(mimetype);
+            zip.closeEntry();
+
+            put(zip, "META-INF/container.xml", """
+                    <?xml version="1.0" encoding="UTF-8"?>
+                    <container version="1.0" xmlns="urn:oasis:names:tc:opendocument:xmlns:container">
+                      <rootfiles>
+                        <rootfile full-path="OEBPS/content.opf" media-type="application/oebps-package+xml"/>
+                      </rootfiles>
+                    </container>
+                    """);
+
+            StringBuilder manifest = new StringBuilder("    <item id=\"nav\" href=\"nav.xhtml\" "
+                    + "media-type=\"application/xhtml+xml\" properties=\"nav\"/>\n");
+            StringBuilder spine = new StringBuilder();
+            for (int i = 0; i < chapters.size(); i++) {
+                manifest.append("    <item id=\"c").append(i).append("\" href=\"text/ch").append(i)
+                        .append(".xhtml\" media-type=\"application/xhtml+xml\"/>\n");
+                spine.append("    <itemref idref=\"c").append(i).append("\"/>\n");
+            }
+            put(zip, "OEBPS/content.opf", """
+                    <?xml version="1.0" encoding="UTF-8"?>
+                    <package xmlns="http://www.idpf.org/2007/opf" version="3.0" unique-identifier="id">
+                      <metadata xmlns:dc="http://purl.org/dc/elements/1.1/">
+                        <dc:identifier id="id">synthetic-%s</dc:identifier>
+                        <dc:title>Synthetic %s</dc:title>
+                        <dc:creator>Benchmark</dc:creator>
+                      </metadata>
+                      <manifest>
+                    %s  </manifest>
+                      <spine>
+                    %s  </spine>
+                    </package>
+                    """.formatted(shape, shape, manifest, spine));
+
+            put(zip, "OEBPS/nav.xhtml", nav(shape, chapters.size()));
+            for (int i = 0; i < chapters.size(); i++) {
+                put(zip, "OEBPS/text/ch" + i + ".xhtml", chapters.get(i));
+            }
+        }
+    }
+
+    /**
+     * Generates the EPUB 3 navigation document: a chapter per spine item, or for the Calibre shape
+     * a part per title file with its text as a nested entry.
+     */
+    private static String nav(Shape shape, int chapters) {
+        StringBuilder list = new StringBuilder();
+        if (shape == Shape.CALIBRE) {
+            for (int i = 1; i + 1 < chapters; i += 2) {
+                list.append("      <li><a href=\"text/ch").append(i).append(".xhtml\">Часть ").append(i / 2 + 1)
+                        .append("</a>\n        <ol><li><a href=\"text/ch").append(i + 1)
+                        .append(".xhtml#n0\">Текст</a></li></ol>\n      </li>\n");
+            }
+        } else {
+            for (int i = 0; i < chapters; i++) {
+                list.append("      <li><a href=\"text/ch").append(i).append(".xhtml\">Глава ").append(i + 1)
+                        .append("</a></li>\n");
+            }
+        }
+        return """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <html xmlns="http://www.w3.org/1999/xhtml" xmlns:epub="http://www.idpf.org/2007/ops">
+                <head><title>Contents</title></head>
+                <body>
+                  <nav epub:type="toc">
+                    <ol>
+                %s    </ol>
+                  </nav>
+                </body>
+                </html>
+                """.formatted(list);
+    }
+
+    /**
+     * Generates the XHTML documents of the spine items of a book.
+     *
+     * @param shape   Shape of the book.
+     * @param variant Variant number, as in {@link #write(Shape, int, Path)}.
+     * @return Documents in spine order.
+     */
+    static List<String> chapters(Shape shape, int variant) {
+        Random random = new Random(SEED + shape.ordinal() + 31L * variant);
+        return switch (shape) {
+            case SMALL -> chapters(random, 12, 20);
+            case HUGE_SINGLE_CHAPTER -> chapters(random, 1, 6000);
+            case MANY_TINY_CHAPTERS -> chapters(random, 1000, 1);
+            case CALIBRE -> calibreChapters(random, 40);
+        };
+    }
+
+    private static List<String> chapters(Random random, int count, int paragraphs) {
+        List<String> chapters = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder body = new StringBuilder();
+            body.append("<h2>Глава ").append(i + 1).append("</h2>\n");
+            for (int p = 0; p < paragraphs; p++) {
+                body.append("<p>").append(sentence(random, 20 + random.nextInt(40))).append("</p>\n");
+            }
+            chapters.add(xhtml(body));
+        }
+        return chapters;
+    }
+
+    private static List<String> calibreChapters(Random random, int count) {
+        List<String> chapters = new ArrayList<>(count * 2 + 1);
+
+        StringBuilder toc = new StringBuilder("<ul class=\"calibre_toc\">\n");
+        for (int i = 0; i < count; i++) {
+            toc.append("<li><a href=\"ch").append(i * 2 + 2).append(".xhtml\">Часть ").append(i + 1)
+                    .append("</a></li>\n");
+        }
+        toc.append("</ul>\n<hr class=\"calibre1\"/>\n");
+        chapters.add(xhtml(toc));
+
+        for (int i = 0; i < count; i++) {
+            chapters.add(xhtml(new StringBuilder("<div class=\"calibre_title\"><span class=\"calibre2\">Часть ")
+                    .append(i + 1).append("</span></div>\n")));
+
+            StringBuilder body = new StringBuilder();
+            body.append("<h3 class=\"calibre3\">Часть ").append(i + 1).append("</h3>\n");
+            body.append("<h3 class=\"calibre3\">Часть ").append(i + 1).append("</h3>\n");
+            body.append("<style>.calibre4 { margin: 0 }</style>\n");
+            int paragraphs = 10 + random.nextInt(30);
+            for (int p = 0; p < paragraphs; p++) {
+                body.append("<p class=\"calibre4\" style=\"text-indent: 1em\"><span class=\"calibre5\">")
+                        .append(sentence(random, 15 + random.nextInt(30)))
+                        .append("</span> <b>").append(sentence(random, 3)).append("</b>")
+                        .append(" <a href=\"#n").append(p).append("\">").append(p).append("</a></p>\n");
+                if (p % 7 == 0) {
+                    body.append("<div class=\"calibre6\"><img src=\"images/i").append(p)
+                            .append(".jpg\" alt=\"\"/></div>\n<p>&nbsp;</p>\n<br/><br/><br/>\n");
+                }
+            }
+            chapters.add(xhtml(body));
+        }
+        return chapters;
+    }
+
+    private static String sentence(Random random, int words) {
+        StringBuilder sentence = new StringBuilder();
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                sentence.append(' ');
+            }
+            sentence.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sentence.append('.').toString();
+    }
+
+    private static String xhtml(CharSequence body) {
+        return """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <html xmlns="http://www.w3.org/1999/xhtml">
+                <head><title>Chapter</title><link rel="stylesheet" href="../style.css"/></head>
+                <body>
+                %s</body>
+                </html>
+                """.formatted(body);
+    }
+
+    private static void put(ZipOutputStream zip, String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+}
@@ -0,0 +1,70 @@
+package ru.ai.libraryapi.config;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тесты вычисляемых настроек: бюджетов памяти, допустимых размеров страницы и отпечатка
+ * правил очистки глав.
+ */
+class BookCfgTest {
+
+    private static long fingerprint(String remove, String unwrap) {
+        BookCfg cfg = new BookCfg();
+        cfg.CLEAN_REMOVE_SELECTORS = remove;
+        cfg.CLEAN_UNWRAP_SELECTORS = unwrap;
+        return cfg.getCleanRulesFingerprint();
+    }
+
+    @Test
+    void ignoresFormatting() {
+        assertThat(fingerprint("img, svg", "span, a"))
+                .isEqualTo(fingerprint(" img ,svg, ", "span,\n  a"));
+    }
+
+    @Test
+    void changesWithRules() {
+        long rules = fingerprint("img, svg", "span, a");
+
+        assertThat(fingerprint("img", "span, a")).isNotEqualTo(rules);
+        assertThat(fingerprint("img, svg", "span")).isNotEqualTo(rules);
+        // Селектор не переходит из одного списка в другой незаметно
+        assertThat(fingerprint("img, svg, span", "a")).isNotEqualTo(rules);
+        assertThat(fingerprint("", "")).isEqualTo(fingerprint(null, " "));
+    }
+
+    @Test
+    void allowsDefaultAndListedPageSizes() {
+        BookCfg cfg = new BookCfg();
+        cfg.LIBRARY_MAX_LENGTH = 1000;
+        cfg.PAGE_SIZES = " 2000, 500 ,";
+
+        assertThat(cfg.getPageSizes()).containsExactly(500, 1000, 2000);
+        assertThat(cfg.isAllowedPageSize(null)).isTrue();
+        assertThat(cfg.isAllowedPageSize(1000)).isTrue();
+        assertThat(cfg.isAllowedPageSize(500)).isTrue();
+        assertThat(cfg.isAllowedPageSize(501)).isFalse();
+    }
+
+    @Test
+    void unsetBudgetsAreSharesOfHeap() {
+        BookCfg cfg = new BookCfg();
+        cfg.CACHE_MAX_BYTES = -1;
+        cfg.LAYOUT_CACHE_MAX_BYTES = -1;
+        cfg.CHAPTER_CACHE_MAX_BYTES = 0;
+        cfg.ENCODED_CACHE_MAX_BYTES = 1234;
+        cfg.MAX_INFLIGHT_BYTES = -1;
+        cfg.STORE_MEMORY_MAX_BYTES = -1;
+
+        cfg.resolveHeapBudgets();
+
+        long heap = Runtime.getRuntime().maxMemory();
+        assertThat(cfg.CACHE_MAX_BYTES).isEqualTo(heap / 100 * 15);
+        assertThat(cfg.LAYOUT_CACHE_MAX_BYTES).isEqualTo(heap / 100 * 8);
+        assertThat(cfg.CHAPTER_CACHE_MAX_BYTES).isZero();
+        assertThat(cfg.ENCODED_CACHE_MAX_BYTES).isEqualTo(1234);
+        assertThat(cfg.CACHE_MAX_BYTES + cfg.LAYOUT_CACHE_MAX_BYTES + cfg.MAX_INFLIGHT_BYTES
+                + cfg.STORE_MEMORY_MAX_BYTES).isLessThan(heap);
+    }
+}